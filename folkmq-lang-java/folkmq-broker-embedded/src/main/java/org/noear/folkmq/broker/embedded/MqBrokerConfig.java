@@ -32,10 +32,19 @@ public class MqBrokerConfig {
 
     public static final long streamTimeout;
 
+    public static final boolean timingWheel;
+    public static final int distributeThreads;
+    public static final int distributeBatchSize;
+    public static final String consumerSelector;
+    public static final int sequenceShards;
+    public static final boolean bodyStoreEnable;
+
     public static final boolean saveEnable;
     public static final long save900;
     public static final long save300;
     public static final long save100;
+    public static final boolean saveLazyLoad;
+    public static final String saveCompression;
 
 
     public static final String proxyServer;
@@ -62,6 +71,8 @@ public class MqBrokerConfig {
         save900 = Solon.cfg().getLong(MqConfigNames.folkmq_snapshot_save900, 0);
         save300 = Solon.cfg().getLong(MqConfigNames.folkmq_snapshot_save300, 0);
         save100 = Solon.cfg().getLong(MqConfigNames.folkmq_snapshot_save100, 0);
+        saveLazyLoad = Solon.cfg().getBool(MqConfigNames.folkmq_snapshot_lazyLoad, false);
+        saveCompression = Solon.cfg().get(MqConfigNames.folkmq_snapshot_compression, "none");
 
         accessAk = Solon.cfg().get(MqConfigNames.folkmq_access_ak);
         accessSk = Solon.cfg().get(MqConfigNames.folkmq_access_sk);
@@ -74,6 +85,13 @@ public class MqBrokerConfig {
         exchangeThreads = Solon.cfg().getInt(MqConfigNames.folkmq_exchangeThreads, 1);
 
         streamTimeout = Solon.cfg().getLong(MqConfigNames.folkmq_streamTimeout, MqConstants.SERVER_STREAM_TIMEOUT_DEFAULT);
+
+        timingWheel = Solon.cfg().getBool(MqConfigNames.folkmq_timingWheel, true);
+        distributeThreads = Solon.cfg().getInt(MqConfigNames.folkmq_distributeThreads, 1);
+        distributeBatchSize = Solon.cfg().getInt(MqConfigNames.folkmq_distributeBatchSize, 32);
+        consumerSelector = Solon.cfg().get(MqConfigNames.folkmq_consumerSelector, "poll");
+        sequenceShards = Solon.cfg().getInt(MqConfigNames.folkmq_sequenceShards, 16);
+        bodyStoreEnable = Solon.cfg().getBool(MqConfigNames.folkmq_bodyStore_enable, false);
     }
 
     public static Map<String, String> getAccessMap() {
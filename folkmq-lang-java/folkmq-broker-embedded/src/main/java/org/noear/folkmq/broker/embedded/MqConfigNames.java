@@ -26,12 +26,29 @@ public interface MqConfigNames {
     //传输端口
     String folkmq_transport_port = "folkmq.transport.port";
 
+    //派发时间轮
+    String folkmq_timingWheel = "folkmq.timingWheel";
+    //派发线程数
+    String folkmq_distributeThreads = "folkmq.distributeThreads";
+    //每轮派发数量
+    String folkmq_distributeBatchSize = "folkmq.distributeBatchSize";
+    //消费者选择器（poll, least_inflight, latency）
+    String folkmq_consumerSelector = "folkmq.consumerSelector";
+    //顺序分片数
+    String folkmq_sequenceShards = "folkmq.sequenceShards";
+    //消息体存储（内存映射文件）
+    String folkmq_bodyStore_enable = "folkmq.bodyStore.enable";
+
 
     //快照相关
     String folkmq_snapshot_enable = "folkmq.snapshot.enable";
     String folkmq_snapshot_save900 = "folkmq.snapshot.save900";
     String folkmq_snapshot_save300 = "folkmq.snapshot.save300";
     String folkmq_snapshot_save100 = "folkmq.snapshot.save100";
+    //快照延后加载队列（先打开端口，队列在后台加载）
+    String folkmq_snapshot_lazyLoad = "folkmq.snapshot.lazyLoad";
+    //快照压缩方式（none, gzip, lz4）
+    String folkmq_snapshot_compression = "folkmq.snapshot.compression";
 
     //访问账号(ak:sk) //弃用（改为单账号，用户好接受）
     String folkmq_access_x = "folkmq.access.";
@@ -7,9 +7,12 @@ import org.noear.folkmq.broker.embedded.admin.model.ServerInfoVo;
 import org.noear.folkmq.common.MqConstants;
 import org.noear.folkmq.broker.embedded.MqConfigNames;
 import org.noear.folkmq.broker.embedded.MqBrokerConfig;
+import org.noear.folkmq.broker.MqBodyStore;
 import org.noear.folkmq.broker.MqBorker;
 import org.noear.folkmq.broker.MqBorkerInternal;
 import org.noear.folkmq.broker.MqBorkerListener;
+import org.noear.folkmq.broker.MqConsumerSelector;
+import org.noear.folkmq.broker.watcher.MqSnapshotCompression;
 import org.noear.folkmq.broker.watcher.MqWatcherSnapshotPlus;
 import org.noear.snack.ONode;
 import org.noear.socketd.SocketD;
@@ -62,6 +65,8 @@ public class FolkmqLifecycleBean implements LifecycleBean {
         snapshotPlus.save900Condition(MqBrokerConfig.save900);
         snapshotPlus.save300Condition(MqBrokerConfig.save300);
         snapshotPlus.save100Condition(MqBrokerConfig.save100);
+        snapshotPlus.lazyLoad(MqBrokerConfig.saveLazyLoad);
+        snapshotPlus.compression(MqSnapshotCompression.valueOf(MqBrokerConfig.saveCompression));
 
         appContext.wrapAndPut(MqWatcherSnapshotPlus.class, snapshotPlus);
 
@@ -96,7 +101,13 @@ public class FolkmqLifecycleBean implements LifecycleBean {
 
                     EventBus.publish(c);
                 })
-                .addAccessAll(MqBrokerConfig.getAccessMap());
+                .addAccessAll(MqBrokerConfig.getAccessMap())
+                .timingWheel(MqBrokerConfig.timingWheel)
+                .distributeThreads(MqBrokerConfig.distributeThreads)
+                .distributeBatchSize(MqBrokerConfig.distributeBatchSize)
+                .consumerSelector(MqConsumerSelector.of(MqBrokerConfig.consumerSelector))
+                .sequenceShards(MqBrokerConfig.sequenceShards)
+                .bodyStore(MqBrokerConfig.bodyStoreEnable ? new MqBodyStore() : null);
 
         if (MqBrokerConfig.saveEnable) {
             localServer.watcher(snapshotPlus);
@@ -120,7 +131,13 @@ public class FolkmqLifecycleBean implements LifecycleBean {
     }
 
     private void startBrokerSession(String brokerServers, MqWatcherSnapshotPlus snapshotPlus) throws Exception {
-        brokerServiceListener = new MqBorkerListener(true);
+        brokerServiceListener = new MqBorkerListener(true)
+                .timingWheel(MqBrokerConfig.timingWheel)
+                .distributeThreads(MqBrokerConfig.distributeThreads)
+                .distributeBatchSize(MqBrokerConfig.distributeBatchSize)
+                .consumerSelector(MqConsumerSelector.of(MqBrokerConfig.consumerSelector))
+                .sequenceShards(MqBrokerConfig.sequenceShards)
+                .bodyStore(MqBrokerConfig.bodyStoreEnable ? new MqBodyStore() : null);
 
         //允许控制台获取队列看板
         brokerServiceListener.doOn(MqConstants.ADMIN_VIEW_QUEUE, (s, m) -> {
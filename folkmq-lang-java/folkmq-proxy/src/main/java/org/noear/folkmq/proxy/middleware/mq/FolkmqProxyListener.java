@@ -1,9 +1,12 @@
 package org.noear.folkmq.proxy.middleware.mq;
 
 import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.common.MqBatchUtils;
 import org.noear.folkmq.common.MqConstants;
 import org.noear.folkmq.common.MqMetasResolver;
+import org.noear.folkmq.common.MqMetasResolverV4;
 import org.noear.folkmq.common.MqMetasV2;
+import org.noear.folkmq.common.MqTopicMatcher;
 import org.noear.folkmq.common.MqUtils;
 import org.noear.folkmq.broker.MqNextTime;
 import org.noear.folkmq.broker.MqQps;
@@ -11,6 +14,7 @@ import org.noear.snack.ONode;
 import org.noear.socketd.broker.BrokerListener;
 import org.noear.socketd.transport.core.*;
 import org.noear.socketd.transport.core.entity.EntityDefault;
+import org.noear.socketd.transport.core.entity.MessageBuilder;
 import org.noear.socketd.transport.core.entity.StringEntity;
 import org.noear.socketd.utils.RunUtils;
 import org.noear.socketd.utils.SessionUtils;
@@ -21,6 +25,7 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -49,6 +54,8 @@ public class FolkmqProxyListener extends BrokerListener implements Lifecycle {
     //订阅关系表(topic=>topicConsumerGroup[])
     private final Map<String, Set<String>> subscribeMap = new ConcurrentHashMap<>();
     private final ReentrantLock subscribeLock = new ReentrantLock(true);
+    //通配订阅的主题匹配器
+    private final MqTopicMatcher topicMatcher = new MqTopicMatcher();
 
     public Map<String, Set<String>> getSubscribeMap() {
         return subscribeMap;
@@ -80,11 +87,15 @@ public class FolkmqProxyListener extends BrokerListener implements Lifecycle {
         Set<String> tmp = subscribeMap.get(topic);
         if (tmp != null) {
             tmp.remove(queueName);
+
+            if (tmp.isEmpty() && MqTopicMatcher.isPattern(topic)) {
+                topicMatcher.remove(topic);
+            }
         }
     }
 
     public boolean hasSubscribe(String topic) {
-        return subscribeMap.containsKey(topic);
+        return subscribeMap.containsKey(topic) || topicMatcher.match(topic).length > 0;
     }
 
     /**
@@ -212,6 +223,9 @@ public class FolkmqProxyListener extends BrokerListener implements Lifecycle {
         } else if (MqConstants.MQ_EVENT_REQUEST.equals(message.event())) {
             onRequest(requester, message);
             return;
+        } else if (MqConstants.MQ_EVENT_PUBLISH_BATCH.equals(message.event())) {
+            onPublishBatch(requester, message);
+            return;
         }
 
         if (MqConstants.MQ_API.equals(message.event())) {
@@ -273,6 +287,7 @@ public class FolkmqProxyListener extends BrokerListener implements Lifecycle {
         if (responder != null && responder.isValid()) {
             //转发消息
             try {
+                adaptTo(responder, message);
                 forwardToSession(requester, message, responder, MqNextTime.maxConsumeMillis());
             } catch (Throwable e) {
                 requester.sendAlarm(message, "Broker forward '@" + atName + "' error: " + e.getMessage());
@@ -282,12 +297,90 @@ public class FolkmqProxyListener extends BrokerListener implements Lifecycle {
         }
     }
 
+    /**
+     * 收到批量发布指令时（由 client 发起；客户端按代理的版本决定批量，老版本的 broker 不认识）
+     */
+    private void onPublishBatch(Session requester, Message message) throws IOException {
+        String atName = message.atName();
+
+        Session responder = getPlayerAny(atName, requester, message);
+        if (SessionUtils.isActive(responder) == false) {
+            requester.sendAlarm(message, "Broker don't have '@" + atName + "' session");
+            return;
+        }
+
+        if (MqUtils.versionOf(responder) >= MqConstants.FOLKMQ_VERSION_METAS_V4) {
+            //新版本的 broker，原样转发
+            forwardToSession(requester, message, responder);
+            return;
+        }
+
+        //老版本的 broker，拆成单条发布（并展开元信息）；全部确认后，再一次确认
+        List<Entity> entities = MqBatchUtils.decode(message);
+        List<Message> messages = new ArrayList<>(entities.size());
+        for (Entity entity : entities) {
+            Message m1 = new MessageBuilder()
+                    .flag(Flags.Message)
+                    .sid(StrUtils.guid())
+                    .event(MqConstants.MQ_EVENT_PUBLISH)
+                    .entity(entity)
+                    .build();
+
+            adaptTo(responder, m1);
+            messages.add(m1);
+        }
+
+        if (message.isRequest() == false) {
+            for (Message m1 : messages) {
+                responder.send(MqConstants.MQ_EVENT_PUBLISH, m1);
+            }
+            return;
+        }
+
+        AtomicInteger remaining = new AtomicInteger(messages.size());
+        AtomicInteger failed = new AtomicInteger();
+        for (Message m1 : messages) {
+            responder.sendAndRequest(MqConstants.MQ_EVENT_PUBLISH, m1).thenReply(r -> {
+                if ("1".equals(r.meta(MqConstants.MQ_META_CONFIRM)) == false) {
+                    failed.incrementAndGet();
+                }
+                publishBatchConfirm(requester, message, remaining, failed);
+            }).thenError(err -> {
+                failed.incrementAndGet();
+                publishBatchConfirm(requester, message, remaining, failed);
+            });
+        }
+    }
+
+    /**
+     * 批量发布确认（拆分的单条都有结果后）
+     */
+    private void publishBatchConfirm(Session requester, Message message, AtomicInteger remaining, AtomicInteger failed) {
+        if (remaining.decrementAndGet() > 0) {
+            return;
+        }
+
+        if (requester.isValid()) {
+            try {
+                if (failed.get() > 0) {
+                    requester.replyEnd(message, new StringEntity("Broker publish failed: " + failed.get())
+                            .metaPut(MqConstants.MQ_META_CONFIRM, "0"));
+                } else {
+                    requester.replyEnd(message, new StringEntity("")
+                            .metaPut(MqConstants.MQ_META_CONFIRM, "1"));
+                }
+            } catch (Throwable e) {
+                log.warn("Proxy: publish batch confirm error, sessionId={}", requester.sessionId(), e);
+            }
+        }
+    }
+
     /**
      * 收到派发指令时（由 broker 发起）
      */
     private void onDistribute(Session requester, Message message) throws IOException {
         String atName = message.atName();
-        boolean isBroadcast = MqUtils.getLast().isBroadcast(message.entity());
+        boolean isBroadcast = MqUtils.getOf(message).isBroadcast(message);
 
         if (isBroadcast) {
             //广播模式
@@ -298,6 +391,7 @@ public class FolkmqProxyListener extends BrokerListener implements Lifecycle {
             for (Session s0 : getPlayerAll(atName)) {
                 if (SessionUtils.isActive(s0)) {
                     try {
+                        adaptTo(s0, message);
                         forwardToSession(requester, message, s0, MqNextTime.maxConsumeMillis());
                     } catch (Throwable e) {
                         acknowledgeAsNo(requester, message);
@@ -310,6 +404,7 @@ public class FolkmqProxyListener extends BrokerListener implements Lifecycle {
             if (SessionUtils.isActive(responder)) {
                 //转发消息
                 try {
+                    adaptTo(responder, message);
                     forwardToSession(requester, message, responder, MqNextTime.maxConsumeMillis());
                 } catch (Throwable e) {
                     acknowledgeAsNo(requester, message);
@@ -320,6 +415,15 @@ public class FolkmqProxyListener extends BrokerListener implements Lifecycle {
         }
     }
 
+    /**
+     * 按玩家的版本适配消息（老版本的玩家不认识 v4 紧凑元信息，展开后再转发；展开后新版本也认识）
+     */
+    private void adaptTo(Session responder, Message message) {
+        if (MqMetasResolverV4.isCompact(message) && MqUtils.versionOf(responder) < MqConstants.FOLKMQ_VERSION_METAS_V4) {
+            MqMetasResolverV4.expand(message);
+        }
+    }
+
     /**
      * 收到订阅指令时（由 client 发起）
      */
@@ -362,6 +466,10 @@ public class FolkmqProxyListener extends BrokerListener implements Lifecycle {
             //以身份进行订阅(topic=>[topicConsumerGroup])
             Set<String> topicConsumerSet = subscribeMap.computeIfAbsent(topic, n -> Collections.newSetFromMap(new ConcurrentHashMap<>()));
             topicConsumerSet.add(queueName);
+
+            if (MqTopicMatcher.isPattern(topic)) {
+                topicMatcher.add(topic);
+            }
         } finally {
             subscribeLock.unlock();
         }
@@ -0,0 +1,89 @@
+package benchmark;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.broker.MqBorker;
+import org.noear.folkmq.broker.MqBorkerInternal;
+import org.noear.folkmq.broker.MqBorkerListenerBase;
+import org.noear.folkmq.client.MqMessage;
+import org.noear.folkmq.common.MqConstants;
+import org.noear.folkmq.common.MqMetasResolver;
+import org.noear.folkmq.common.MqUtils;
+import org.noear.socketd.transport.core.Flags;
+import org.noear.socketd.transport.core.Message;
+import org.noear.socketd.transport.core.entity.MessageBuilder;
+import org.noear.socketd.transport.core.entity.StringEntity;
+import org.noear.socketd.utils.StrUtils;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * 发布路由：每条消息的内存分配（字节/条）
+ */
+public class BenchmarkRoutingTest {
+    public static void main(String[] args) throws Exception {
+        int groupCount = 20;
+
+        MqBorker server = FolkMQ.createBorker()
+                .start(18604);
+
+        MqBorkerInternal serverInternal = server.getServerInternal();
+        for (int i = 0; i < groupCount; i++) {
+            serverInternal.subscribeDo("test", "g" + i, null);
+        }
+
+        MqMetasResolver mr = MqUtils.getLast();
+
+        //取消路由（只有路由查找，不产生消息）
+        Message unMessage = new MessageBuilder()
+                .sid(StrUtils.guid())
+                .flag(Flags.Message)
+                .entity(new StringEntity("")
+                        .metaPut(MqConstants.MQ_META_TOPIC, "test")
+                        .metaPut(MqConstants.MQ_META_KEY, StrUtils.guid()))
+                .build();
+        int count = 1_000_000;
+        for (int i = 0; i < count; i++) {
+            ((MqBorkerListenerBase) serverInternal).unRoutingDo(unMessage);
+        }
+
+        long start_bytes = allocatedBytes();
+        long start_time = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            ((MqBorkerListenerBase) serverInternal).unRoutingDo(unMessage);
+        }
+        long time = System.currentTimeMillis() - start_time;
+
+        System.out.println("unRouting: " + ((allocatedBytes() - start_bytes) / count) + " bytes/msg, " + time + "ms, queues: " + groupCount);
+
+        //路由（含消息持有人）
+        count = 20_000;
+        Message[] messages = new Message[count];
+        for (int i = 0; i < count; i++) {
+            messages[i] = buildMessage(mr);
+        }
+
+        start_bytes = allocatedBytes();
+        start_time = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            serverInternal.routingDo(mr, messages[i]);
+        }
+        time = System.currentTimeMillis() - start_time;
+
+        System.out.println("routing: " + ((allocatedBytes() - start_bytes) / count) + " bytes/msg, " + time + "ms, queues: " + groupCount);
+
+        server.stop();
+    }
+
+    private static Message buildMessage(MqMetasResolver mr) {
+        return new MessageBuilder()
+                .sid(StrUtils.guid())
+                .flag(Flags.Message)
+                .entity(mr.publishEntityBuild("test", new MqMessage("hello").scheduled(new java.util.Date(System.currentTimeMillis() + 3600_000))))
+                .build();
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -11,8 +11,12 @@ import java.util.concurrent.CountDownLatch;
 public class BenchmarkScheduledTest {
     public static void main(String[] args) throws Exception {
         //服务端
+        //对比时间轮：-DtimingWheel=false
+        boolean timingWheel = Boolean.parseBoolean(System.getProperty("timingWheel", "true"));
+
         MqBorker server = FolkMQ.createBorker()
                 .addAccess("folkmq", "YapLHTx19RlsEE16")
+                .timingWheel(timingWheel)
                 .start(18602);
 
         Thread.sleep(1000);
@@ -51,6 +55,9 @@ public class BenchmarkScheduledTest {
         long consumeTime = System.currentTimeMillis() - start_time;
 
         System.out.println("sendTime: " + sendTime + "ms");
-        System.out.println("consumeTime: " + consumeTime + "ms, count: " + (count - countDownLatch.getCount()));
+        System.out.println("consumeTime: " + consumeTime + "ms, count: " + (count - countDownLatch.getCount()) + ", timingWheel: " + timingWheel);
+
+        client.disconnect();
+        server.stop();
     }
 }
@@ -0,0 +1,129 @@
+package benchmark;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.broker.MqBorker;
+import org.noear.folkmq.broker.MqBorkerInternal;
+import org.noear.folkmq.broker.MqDraft;
+import org.noear.folkmq.broker.MqQueue;
+import org.noear.folkmq.broker.watcher.MqSnapshotCompression;
+import org.noear.folkmq.broker.watcher.MqWatcherSnapshot;
+import org.noear.folkmq.client.MqMessage;
+import org.noear.folkmq.common.MqMetasResolver;
+import org.noear.folkmq.common.MqUtils;
+import org.noear.socketd.transport.core.Entity;
+import org.noear.socketd.transport.core.Flags;
+import org.noear.socketd.transport.core.Message;
+import org.noear.socketd.transport.core.entity.MessageBuilder;
+import org.noear.socketd.utils.StrUtils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * 快照持久化：json 行（v2）与二进制（v3），及压缩方式的保存、加载对比
+ */
+public class BenchmarkSnapshotTest {
+    public static void main(String[] args) throws Exception {
+        int count = 1_000_000;
+
+        if (args.length > 0) {
+            //内存有限时，可以分开跑（参数为：格式版本 [压缩方式] [text|binary]）
+            MqSnapshotCompression compression = (args.length > 1 ? MqSnapshotCompression.valueOf(args[1]) : MqSnapshotCompression.none);
+            boolean textBody = (args.length > 2 && "text".equals(args[2]));
+            benchmark(Integer.parseInt(args[0]), compression, textBody, count);
+        } else {
+            //二进制内容
+            for (int formatVersion : new int[]{2, 3}) {
+                benchmark(formatVersion, MqSnapshotCompression.none, false, count);
+                System.gc();
+            }
+
+            //json 文本内容
+            for (MqSnapshotCompression compression : MqSnapshotCompression.values()) {
+                benchmark(3, compression, true, count);
+                System.gc();
+            }
+        }
+    }
+
+    private static void benchmark(int formatVersion, MqSnapshotCompression compression, boolean textBody, int count) throws Exception {
+        String dataPath = "./data/benchmark_fdb_v" + formatVersion + "_" + compression + "/";
+        deleteDir(new File(dataPath));
+
+        //服务端
+        MqBorker server = FolkMQ.createBorker()
+                .watcher(new MqWatcherSnapshot(dataPath).formatVersion(formatVersion).compression(compression))
+                .start(18603);
+
+        MqBorkerInternal serverInternal = server.getServerInternal();
+        serverInternal.subscribeDo("test", "a", null);
+        MqQueue queue = serverInternal.getQueue("test#a");
+
+        //准备数据
+        Random random = new Random(1);
+        MqMetasResolver mr = MqUtils.getLast();
+        for (int i = 0; i < count; i++) {
+            byte[] body;
+            if (textBody == false) {
+                body = new byte[128];
+                random.nextBytes(body);
+            } else {
+                body = ("{\"orderId\":" + (100000 + i) + ",\"userId\":" + random.nextInt(10000)
+                        + ",\"status\":\"paid\",\"amount\":" + random.nextInt(1000) + ".00,\"items\":[{\"sku\":\"sku-"
+                        + random.nextInt(100) + "\",\"count\":1}]}").getBytes(StandardCharsets.UTF_8);
+            }
+
+            Entity entity = mr.publishEntityBuild("test", new MqMessage(body));
+            Message message = new MessageBuilder()
+                    .sid(StrUtils.guid())
+                    .flag(Flags.Message)
+                    .entity(entity)
+                    .build();
+
+            serverInternal.routingToQueueDo(new MqDraft(mr, message), queue);
+        }
+
+        //保存
+        long start_time = System.currentTimeMillis();
+        serverInternal.save();
+        long saveTime = System.currentTimeMillis() - start_time;
+
+        long fileSize = new File(dataPath, "test/a.fdb").length();
+
+        server.stop();
+
+        //加载（相当于服务器重启了）
+        start_time = System.currentTimeMillis();
+        server = FolkMQ.createBorker()
+                .watcher(new MqWatcherSnapshot(dataPath).formatVersion(formatVersion).compression(compression))
+                .start(18603);
+        long loadTime = System.currentTimeMillis() - start_time;
+
+        int loadCount = server.getServerInternal().getQueue("test#a").messageTotal();
+
+        System.out.println("v" + formatVersion + "/" + compression + (textBody ? "/text" : "/binary")
+                + " saveTime: " + saveTime + "ms"
+                + ", loadTime: " + loadTime + "ms"
+                + ", fileSize: " + (fileSize / 1024 / 1024) + "MB"
+                + ", count: " + loadCount);
+
+        server.stop();
+        deleteDir(new File(dataPath));
+    }
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    deleteDir(file);
+                } else {
+                    file.delete();
+                }
+            }
+        }
+
+        dir.delete();
+    }
+}
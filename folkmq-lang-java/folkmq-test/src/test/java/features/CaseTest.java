@@ -227,4 +227,186 @@ public class CaseTest {
         testCase.start();
         testCase.stop();
     }
+
+    @Test
+    public void TestCase36_publish_linger() throws Exception {
+        BaseTestCase testCase = new TestCase36_publish_linger(2036);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase37_publish_batch() throws Exception {
+        BaseTestCase testCase = new TestCase37_publish_batch(2037);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase38_persistent_wal() throws Exception {
+        BaseTestCase testCase = new TestCase38_persistent_wal(2038);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase39_body_store() throws Exception {
+        BaseTestCase testCase = new TestCase39_body_store(2039);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase40_persistent_incremental() throws Exception {
+        BaseTestCase testCase = new TestCase40_persistent_incremental(2040);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase41_persistent_format() throws Exception {
+        BaseTestCase testCase = new TestCase41_persistent_format(2041);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase42_persistent_lazy() throws Exception {
+        BaseTestCase testCase = new TestCase42_persistent_lazy(2042);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase43_persistent_compression() throws Exception {
+        BaseTestCase testCase = new TestCase43_persistent_compression(2043);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase44_metas_v4() throws Exception {
+        BaseTestCase testCase = new TestCase44_metas_v4(2044);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase45_fanout_shared() throws Exception {
+        BaseTestCase testCase = new TestCase45_fanout_shared(2045);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase46_routing_snapshot() throws Exception {
+        BaseTestCase testCase = new TestCase46_routing_snapshot(2046);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase47_subscribe_wildcard() throws Exception {
+        BaseTestCase testCase = new TestCase47_subscribe_wildcard(2047);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase48_prefetch() throws Exception {
+        BaseTestCase testCase = new TestCase48_prefetch(2048);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase49_consumer_selector() throws Exception {
+        BaseTestCase testCase = new TestCase49_consumer_selector(2049);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase50_sequence_shards() throws Exception {
+        BaseTestCase testCase = new TestCase50_sequence_shards(2050);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase51_sequence_executor() throws Exception {
+        BaseTestCase testCase = new TestCase51_sequence_executor(2051);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase52_consume_virtual() throws Exception {
+        BaseTestCase testCase = new TestCase52_consume_virtual(2052);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase53_holder_queue() throws Exception {
+        BaseTestCase testCase = new TestCase53_holder_queue(2053);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase54_timing_wheel() throws Exception {
+        BaseTestCase testCase = new TestCase54_timing_wheel(2054);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase55_distribute_batch() throws Exception {
+        BaseTestCase testCase = new TestCase55_distribute_batch(2055);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase56_distribute_scheduled_wakeup() throws Exception {
+        BaseTestCase testCase = new TestCase56_distribute_scheduled_wakeup(2056);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase57_distribute_threads() throws Exception {
+        BaseTestCase testCase = new TestCase57_distribute_threads(2057);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase58_distribute_batch_size() throws Exception {
+        BaseTestCase testCase = new TestCase58_distribute_batch_size(2058);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase59_persistent_restart_order() throws Exception {
+        BaseTestCase testCase = new TestCase59_persistent_restart_order(2059);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase60_body_store_groups() throws Exception {
+        BaseTestCase testCase = new TestCase60_body_store_groups(2060);
+        testCase.start();
+        testCase.stop();
+    }
+
+    @Test
+    public void TestCase61_wal_checkpoint_fail() throws Exception {
+        BaseTestCase testCase = new TestCase61_wal_checkpoint_fail(2061);
+        testCase.start();
+        testCase.stop();
+    }
 }
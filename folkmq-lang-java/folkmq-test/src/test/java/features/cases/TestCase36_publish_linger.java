@@ -0,0 +1,70 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.broker.MqBorkerInternal;
+import org.noear.folkmq.broker.MqQueue;
+import org.noear.folkmq.client.MqMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase36_publish_linger extends BaseTestCase {
+    public TestCase36_publish_linger(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        //服务端
+        server = FolkMQ.createBorker()
+                .start(getPort());
+
+        //客户端
+        CountDownLatch countDownLatch = new CountDownLatch(10);
+
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .publishLinger(50, 4)
+                .connect();
+
+        client.subscribe("demo", "a", ((message) -> {
+            System.out.println(message);
+            countDownLatch.countDown();
+        }));
+
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(client.publishAsync("demo", new MqMessage("demo" + i)));
+        }
+
+        //每个消息的确认，单独完成
+        for (CompletableFuture<Boolean> future : futures) {
+            assert future.get(5, TimeUnit.SECONDS);
+        }
+
+        countDownLatch.await(5, TimeUnit.SECONDS);
+
+        //检验客户端
+        assert countDownLatch.getCount() == 0;
+
+        Thread.sleep(100);
+
+        //检验服务端
+        MqBorkerInternal serverInternal = server.getServerInternal();
+        System.out.println("server topicConsumerMap.size=" + serverInternal.getQueueMap().size());
+        assert serverInternal.getQueueMap().size() == 1;
+
+        MqQueue topicConsumerQueue = serverInternal.getQueueMap().values().toArray(new MqQueue[1])[0];
+        System.out.println("server topicConsumerQueue.size=" + topicConsumerQueue.messageTotal());
+        assert topicConsumerQueue.messageTotal() == 0;
+        assert topicConsumerQueue.messageTotal2() == 0;
+    }
+}
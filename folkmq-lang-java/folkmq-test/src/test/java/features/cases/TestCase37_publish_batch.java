@@ -0,0 +1,78 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.broker.MqBorkerInternal;
+import org.noear.folkmq.broker.MqQueue;
+import org.noear.folkmq.client.MqMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase37_publish_batch extends BaseTestCase {
+    public TestCase37_publish_batch(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        //服务端
+        server = FolkMQ.createBorker()
+                .start(getPort());
+
+        //客户端
+        CountDownLatch countDownLatch = new CountDownLatch(20 * 2);
+
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .connect();
+
+        client.subscribe("demo", "a", ((message) -> {
+            System.out.println(message);
+            countDownLatch.countDown();
+        }));
+
+        client.subscribe("demo", "b", ((message) -> {
+            System.out.println(message);
+            countDownLatch.countDown();
+        }));
+
+        //同步（一次确认）
+        client.publishBatch("demo", buildMessages(10));
+
+        //异步
+        assert client.publishBatchAsync("demo", buildMessages(10)).get(5, TimeUnit.SECONDS);
+
+        countDownLatch.await(5, TimeUnit.SECONDS);
+
+        //检验客户端
+        assert countDownLatch.getCount() == 0;
+
+        Thread.sleep(100);
+
+        //检验服务端
+        MqBorkerInternal serverInternal = server.getServerInternal();
+        System.out.println("server topicConsumerMap.size=" + serverInternal.getQueueMap().size());
+        assert serverInternal.getQueueMap().size() == 2;
+
+        for (MqQueue topicConsumerQueue : serverInternal.getQueueMap().values()) {
+            System.out.println("server topicConsumerQueue.size=" + topicConsumerQueue.messageTotal());
+            assert topicConsumerQueue.messageTotal() == 0;
+            assert topicConsumerQueue.messageTotal2() == 0;
+        }
+    }
+
+    private List<MqMessage> buildMessages(int count) {
+        List<MqMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            messages.add(new MqMessage("demo" + i));
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,104 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.broker.MqBorkerInternal;
+import org.noear.folkmq.broker.MqQueue;
+import org.noear.folkmq.broker.watcher.MqWalFsyncPolicy;
+import org.noear.folkmq.broker.watcher.MqWatcherWal;
+import org.noear.folkmq.client.MqMessage;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase38_persistent_wal extends BaseTestCase {
+    public TestCase38_persistent_wal(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        //服务端
+        server = FolkMQ.createBorker()
+                .watcher(new MqWatcherWal().fsyncPolicy(MqWalFsyncPolicy.always))
+                .start(getPort());
+
+        //客户端
+        CountDownLatch countDownLatch = new CountDownLatch(4);
+
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .connect();
+
+        client.subscribe("demo", "127.0.0.1", ((message) -> {
+            System.out.println("::" + message);
+            countDownLatch.countDown();
+        }));
+
+        client.publish("demo", new MqMessage("demo0")); //停连前，确保发完了
+        Thread.sleep(100);//确保上面的消费完成
+        client.disconnect();
+        Thread.sleep(100);//确保断连
+
+        server.stop();
+        server = FolkMQ.createBorker() //相当于服务器重启了
+                .watcher(new MqWatcherWal())
+                .start(getPort());
+
+        //上面已有有订阅记录了
+        client.connect(); //新的会话
+        client.unsubscribe("demo", "127.0.0.1"); //取消订阅； 为了不马上被派发掉
+        Thread.sleep(100); //确保完成取消订阅了
+        client.publish("demo", new MqMessage("demo1"));
+        server.getServerInternal().save(); //生成检查点
+        client.publish("demo", new MqMessage("demo2"));
+
+        Thread.sleep(100);//确保断连
+
+        server.stop();
+        server = FolkMQ.createBorker() //相当于服务器重启了
+                .watcher(new MqWatcherWal())
+                .start(getPort());
+
+        //检验服务端（检查点 + 之后的日志，有两条记录未发）
+        MqQueue topicConsumerQueue = server.getServerInternal().getQueue("demo#127.0.0.1");
+        assert topicConsumerQueue != null;
+        System.out.println("server topicConsumerQueue.size=" + topicConsumerQueue.messageTotal());
+        assert topicConsumerQueue.messageTotal() == 2;
+
+        //上面已有有订阅记录了（有两条记录未发了）
+        client.connect(); //新的会话
+
+        client.subscribe("demo", "127.0.0.1", ((message) -> {
+            System.out.println("::" + message);
+            countDownLatch.countDown();
+        }));
+
+        client.publish("demo", new MqMessage("demo3"));
+
+        Thread.sleep(100);
+
+        countDownLatch.await(45, TimeUnit.SECONDS);//持久化恢复后的数据，会自动延后
+
+
+        //检验客户端
+        System.out.println(countDownLatch.getCount());
+        assert countDownLatch.getCount() == 0;
+
+        Thread.sleep(100);
+
+        //检验服务端
+        MqBorkerInternal serverInternal = server.getServerInternal();
+        System.out.println("server topicConsumerMap.size=" + serverInternal.getQueueMap().size());
+        assert serverInternal.getQueueMap().size() == 1;
+
+        topicConsumerQueue = serverInternal.getQueueMap().values().toArray(new MqQueue[1])[0];
+        System.out.println("server topicConsumerQueue.size=" + topicConsumerQueue.messageTotal());
+        assert topicConsumerQueue.messageTotal() == 0;
+        assert topicConsumerQueue.messageTotal2() == 0;
+    }
+}
@@ -0,0 +1,85 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.broker.MqBodyStore;
+import org.noear.folkmq.broker.MqBorkerInternal;
+import org.noear.folkmq.broker.MqQueue;
+import org.noear.folkmq.client.MqMessage;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase39_body_store extends BaseTestCase {
+    public TestCase39_body_store(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        //小的分段，让消息体跨多个段
+        MqBodyStore bodyStore = new MqBodyStore("./data/body-" + getPort() + "/", 64);
+
+        //服务端
+        server = FolkMQ.createBorker()
+                .bodyStore(bodyStore)
+                .start(getPort());
+
+        //客户端
+        CountDownLatch countDownLatch = new CountDownLatch(20);
+        Set<String> received = ConcurrentHashMap.newKeySet();
+
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .connect();
+
+        client.subscribe("demo", "a", ((message) -> {
+            System.out.println(message);
+            received.add(message.getBodyAsString());
+            countDownLatch.countDown();
+        }));
+
+        for (int i = 0; i < 20; i++) {
+            client.publish("demo", new MqMessage("demo-body-" + i));
+        }
+
+        countDownLatch.await(5, TimeUnit.SECONDS);
+
+        //检验客户端（消息体从映射文件读回）
+        assert countDownLatch.getCount() == 0;
+        for (int i = 0; i < 20; i++) {
+            assert received.contains("demo-body-" + i);
+        }
+
+        System.out.println("store segmentCount=" + bodyStore.segmentCount());
+        assert bodyStore.segmentCount() > 1;
+
+        Thread.sleep(100);
+
+        //检验服务端
+        MqBorkerInternal serverInternal = server.getServerInternal();
+        MqQueue topicConsumerQueue = serverInternal.getQueueMap().values().toArray(new MqQueue[1])[0];
+        System.out.println("server topicConsumerQueue.size=" + topicConsumerQueue.messageTotal());
+        assert topicConsumerQueue.messageTotal() == 0;
+        assert topicConsumerQueue.messageTotal2() == 0;
+
+        //检验存储（消息都结束了，段的活跃计数归零）
+        System.out.println("store liveCount=" + bodyStore.liveCount());
+        assert bodyStore.liveCount() == 0;
+
+        //定时消息（在队列里时计数；取消发布后归零）
+        MqMessage scheduledMessage = new MqMessage("demo-body-later").scheduled(new Date(System.currentTimeMillis() + 3600_000));
+        client.publish("demo", scheduledMessage);
+        assert bodyStore.liveCount() == 1;
+
+        client.unpublish("demo", scheduledMessage.getKey());
+        assert bodyStore.liveCount() == 0;
+    }
+}
@@ -0,0 +1,79 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.broker.MqQueue;
+import org.noear.folkmq.broker.watcher.MqWatcherSnapshot;
+import org.noear.folkmq.client.MqMessage;
+
+import java.io.File;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase40_persistent_incremental extends BaseTestCase {
+    public TestCase40_persistent_incremental(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        String dataPath = "./data/fdb40/";
+
+        //服务端
+        server = FolkMQ.createBorker()
+                .watcher(new MqWatcherSnapshot(dataPath).saveThreads(2))
+                .start(getPort());
+
+        //客户端
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .connect();
+
+        client.subscribe("demo_a", "127.0.0.1", (message) -> { });
+        client.subscribe("demo_b", "127.0.0.1", (message) -> { });
+        client.unsubscribe("demo_a", "127.0.0.1"); //取消订阅； 为了不马上被派发掉
+        client.unsubscribe("demo_b", "127.0.0.1");
+        Thread.sleep(100); //确保完成取消订阅了
+
+        client.publish("demo_a", new MqMessage("a1"));
+        client.publish("demo_b", new MqMessage("b1"));
+        server.getServerInternal().save();
+
+        File fileA = new File(dataPath, "demo_a/127.0.0.1.fdb");
+        File fileB = new File(dataPath, "demo_b/127.0.0.1.fdb");
+        assert fileA.exists();
+        assert fileB.exists();
+
+        long fileATime = fileA.lastModified();
+        long fileBTime = fileB.lastModified();
+        Thread.sleep(1100); //文件时间的精度
+
+        //只有 demo_a 有变化
+        client.publish("demo_a", new MqMessage("a2"));
+        server.getServerInternal().save();
+
+        System.out.println("fileA changed=" + (fileA.lastModified() != fileATime) + ", fileB changed=" + (fileB.lastModified() != fileBTime));
+        assert fileA.lastModified() != fileATime;
+        assert fileB.lastModified() == fileBTime;
+
+        client.disconnect();
+        Thread.sleep(100);//确保断连
+
+        server.stop();
+        server = FolkMQ.createBorker() //相当于服务器重启了
+                .watcher(new MqWatcherSnapshot(dataPath))
+                .start(getPort());
+
+        //检验服务端
+        MqQueue queueA = server.getServerInternal().getQueue("demo_a#127.0.0.1");
+        MqQueue queueB = server.getServerInternal().getQueue("demo_b#127.0.0.1");
+        assert queueA != null;
+        assert queueB != null;
+
+        System.out.println("queueA.size=" + queueA.messageTotal() + ", queueB.size=" + queueB.messageTotal());
+        assert queueA.messageTotal() == 2;
+        assert queueB.messageTotal() == 1;
+    }
+}
@@ -0,0 +1,71 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.broker.MqQueue;
+import org.noear.folkmq.broker.watcher.MqWatcherSnapshot;
+import org.noear.folkmq.client.MqMessage;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase41_persistent_format extends BaseTestCase {
+    public TestCase41_persistent_format(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        String dataPath = "./data/fdb41/";
+        File queueFile = new File(dataPath, "demo/127.0.0.1.fdb");
+
+        //服务端（旧格式，json 行）
+        server = FolkMQ.createBorker()
+                .watcher(new MqWatcherSnapshot(dataPath).formatVersion(2))
+                .start(getPort());
+
+        //客户端
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .connect();
+
+        client.subscribe("demo", "127.0.0.1", (message) -> { });
+        client.unsubscribe("demo", "127.0.0.1"); //取消订阅； 为了不马上被派发掉
+        Thread.sleep(100); //确保完成取消订阅了
+
+        client.publish("demo", new MqMessage("demo1"));
+        client.publish("demo", new MqMessage(new byte[]{0, 1, 2, (byte) 0xFF}));
+        client.disconnect();
+        Thread.sleep(100);//确保断连
+
+        server.stop();
+        assert Files.readAllBytes(queueFile.toPath())[0] == '{';
+
+        //相当于服务器升级重启了（新格式，二进制；旧文件自动识别）
+        server = FolkMQ.createBorker()
+                .watcher(new MqWatcherSnapshot(dataPath))
+                .start(getPort());
+
+        MqQueue queue = server.getServerInternal().getQueue("demo#127.0.0.1");
+        assert queue != null;
+        System.out.println("queue.size=" + queue.messageTotal());
+        assert queue.messageTotal() == 2;
+
+        server.stop();
+        assert Files.readAllBytes(queueFile.toPath())[0] == 'F';
+
+        //再重启（读二进制）
+        server = FolkMQ.createBorker()
+                .watcher(new MqWatcherSnapshot(dataPath))
+                .start(getPort());
+
+        queue = server.getServerInternal().getQueue("demo#127.0.0.1");
+        assert queue != null;
+        System.out.println("queue.size=" + queue.messageTotal());
+        assert queue.messageTotal() == 2;
+    }
+}
@@ -0,0 +1,84 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.broker.MqQueue;
+import org.noear.folkmq.broker.watcher.MqWatcherSnapshot;
+import org.noear.folkmq.client.MqMessage;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase42_persistent_lazy extends BaseTestCase {
+    public TestCase42_persistent_lazy(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        String dataPath = "./data/fdb42/";
+        int count = 100;
+
+        //服务端
+        server = FolkMQ.createBorker()
+                .watcher(new MqWatcherSnapshot(dataPath))
+                .start(getPort());
+
+        //客户端
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .connect();
+
+        client.subscribe("demo_a", "127.0.0.1", (message) -> { });
+        client.subscribe("demo_b", "127.0.0.1", (message) -> { });
+        client.unsubscribe("demo_a", "127.0.0.1"); //取消订阅； 为了不马上被派发掉
+        client.unsubscribe("demo_b", "127.0.0.1");
+        Thread.sleep(100); //确保完成取消订阅了
+
+        for (int i = 0; i < count; i++) {
+            client.publish("demo_a", new MqMessage("a" + i));
+            client.publish("demo_b", new MqMessage("b" + i));
+        }
+
+        client.disconnect();
+        Thread.sleep(100);//确保断连
+
+        server.stop();
+
+        //相当于服务器重启了（延后加载队列）
+        MqWatcherSnapshot watcher = new MqWatcherSnapshot(dataPath).lazyLoad(true);
+        server = FolkMQ.createBorker()
+                .watcher(watcher)
+                .start(getPort());
+
+        //订阅关系先有了
+        assert server.getServerInternal().getQueue("demo_a#127.0.0.1") != null;
+        assert server.getServerInternal().getQueue("demo_b#127.0.0.1") != null;
+
+        //订阅时，优先加载
+        CountDownLatch countDownLatch = new CountDownLatch(count);
+        client.connect();
+        client.subscribe("demo_a", "127.0.0.1", (message) -> {
+            countDownLatch.countDown();
+        });
+
+        countDownLatch.await(45, TimeUnit.SECONDS);//持久化恢复后的数据，会自动延后
+        System.out.println(countDownLatch.getCount());
+        assert countDownLatch.getCount() == 0;
+
+        //后台加载
+        for (int i = 0; i < 100 && watcher.isQueueLoaded("demo_b#127.0.0.1") == false; i++) {
+            Thread.sleep(50);
+        }
+
+        assert watcher.isQueueLoaded("demo_b#127.0.0.1");
+
+        MqQueue queueB = server.getServerInternal().getQueue("demo_b#127.0.0.1");
+        System.out.println("queueB.size=" + queueB.messageTotal());
+        assert queueB.messageTotal() == count;
+    }
+}
@@ -0,0 +1,75 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.broker.MqQueue;
+import org.noear.folkmq.broker.watcher.MqSnapshotCompression;
+import org.noear.folkmq.broker.watcher.MqWatcherSnapshot;
+import org.noear.folkmq.client.MqMessage;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase43_persistent_compression extends BaseTestCase {
+    public TestCase43_persistent_compression(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        String dataPath = "./data/fdb43/";
+        File queueFile = new File(dataPath, "demo/127.0.0.1.fdb");
+        int count = 100;
+
+        //服务端（gzip）
+        server = FolkMQ.createBorker()
+                .watcher(new MqWatcherSnapshot(dataPath).compression(MqSnapshotCompression.gzip))
+                .start(getPort());
+
+        //客户端
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .connect();
+
+        client.subscribe("demo", "127.0.0.1", (message) -> { });
+        client.unsubscribe("demo", "127.0.0.1"); //取消订阅； 为了不马上被派发掉
+        Thread.sleep(100); //确保完成取消订阅了
+
+        for (int i = 0; i < count; i++) {
+            client.publish("demo", new MqMessage("{\"orderId\":" + i + ",\"status\":\"paid\",\"remark\":\"hello world\"}"));
+        }
+
+        client.disconnect();
+        Thread.sleep(100);//确保断连
+
+        server.stop();
+        byte[] head = Files.readAllBytes(queueFile.toPath());
+        assert (head[0] & 0xFF) == 0x1F && (head[1] & 0xFF) == 0x8B;
+
+        //相当于服务器重启了（换成 lz4；gzip 文件自动识别）
+        server = FolkMQ.createBorker()
+                .watcher(new MqWatcherSnapshot(dataPath).compression(MqSnapshotCompression.lz4))
+                .start(getPort());
+
+        MqQueue queue = server.getServerInternal().getQueue("demo#127.0.0.1");
+        System.out.println("queue.size=" + queue.messageTotal());
+        assert queue.messageTotal() == count;
+
+        server.stop();
+        head = Files.readAllBytes(queueFile.toPath());
+        assert head[0] == 'F' && head[1] == 'L' && head[2] == 'Z' && head[3] == '4';
+
+        //再重启（不压缩；lz4 文件自动识别）
+        server = FolkMQ.createBorker()
+                .watcher(new MqWatcherSnapshot(dataPath))
+                .start(getPort());
+
+        queue = server.getServerInternal().getQueue("demo#127.0.0.1");
+        System.out.println("queue.size=" + queue.messageTotal());
+        assert queue.messageTotal() == count;
+    }
+}
@@ -0,0 +1,91 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.client.MqMessage;
+import org.noear.folkmq.client.MqMessageReceived;
+import org.noear.folkmq.common.MqMetasResolver;
+import org.noear.folkmq.common.MqMetasResolverV4;
+import org.noear.folkmq.common.MqMetasV2;
+import org.noear.folkmq.common.MqMetasV4;
+import org.noear.folkmq.common.MqUtils;
+import org.noear.socketd.transport.core.entity.EntityDefault;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase44_metas_v4 extends BaseTestCase {
+    public TestCase44_metas_v4(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        //紧凑元信息（v4）与展开（给老版本）
+        Date expiration = new Date(System.currentTimeMillis() + 60_000);
+        EntityDefault entity = new MqMetasResolverV4().publishEntityBuild("demo",
+                new MqMessage("demo1").tag("t1").qos(0).broadcast(true).expiration(expiration));
+
+        System.out.println(entity.metaString());
+        assert entity.meta(MqMetasV4.MQ_META_HEADER) != null;
+        assert entity.meta(MqMetasV2.MQ_META_QOS) == null;
+        assert entity.meta(MqMetasV2.MQ_META_EXPIRATION) == null;
+
+        MqMetasResolver mr = MqUtils.getOf(entity);
+        assert mr.version() == 4;
+        assert mr.getQos(entity) == 0;
+        assert mr.isBroadcast(entity);
+        assert mr.isSequence(entity) == false;
+        assert mr.getExpiration(entity) == expiration.getTime();
+        assert "t1".equals(mr.getTag(entity));
+
+        mr.setTimes(entity, 3);
+        assert mr.getTimes(entity) == 3;
+
+        MqMetasResolverV4.expand(entity);
+        System.out.println(entity.metaString());
+
+        mr = MqUtils.getOf(entity);
+        assert mr.version() == 3;
+        assert mr.getQos(entity) == 0;
+        assert mr.isBroadcast(entity);
+        assert mr.getTimes(entity) == 3;
+        assert mr.getExpiration(entity) == expiration.getTime();
+
+        //服务端
+        server = FolkMQ.createBorker()
+                .start(getPort());
+
+        //客户端（握手协商后，用 v4 发布）
+        CountDownLatch countDownLatch = new CountDownLatch(1);
+        AtomicReference<MqMessageReceived> receivedRef = new AtomicReference<>();
+
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .connect();
+
+        client.subscribe("demo", "a", ((message) -> {
+            receivedRef.set(message);
+            countDownLatch.countDown();
+        }));
+
+        client.publish("demo", new MqMessage("demo1").tag("t1").attr("a1", "1").expiration(expiration));
+
+        countDownLatch.await(1, TimeUnit.SECONDS);
+
+        //检验客户端
+        assert countDownLatch.getCount() == 0;
+
+        MqMessageReceived received = receivedRef.get();
+        assert "t1".equals(received.getTag());
+        assert "1".equals(received.getAttr("a1"));
+        assert received.getQos() == 1;
+        assert received.getExpiration().getTime() == expiration.getTime();
+    }
+}
@@ -0,0 +1,112 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.broker.MqBorkerInternal;
+import org.noear.folkmq.broker.MqDraft;
+import org.noear.folkmq.broker.MqMessageEntity;
+import org.noear.folkmq.broker.MqMessageHolder;
+import org.noear.folkmq.client.MqMessage;
+import org.noear.folkmq.common.MqBatchUtils;
+import org.noear.folkmq.common.MqMetasResolver;
+import org.noear.folkmq.common.MqUtils;
+import org.noear.socketd.transport.core.Entity;
+import org.noear.socketd.transport.core.Flags;
+import org.noear.socketd.transport.core.Message;
+import org.noear.socketd.transport.core.entity.MessageBuilder;
+import org.noear.socketd.utils.StrUtils;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase45_fanout_shared extends BaseTestCase {
+    public TestCase45_fanout_shared(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        //多个队列共享同一条消息（各自只改自己的元信息）
+        MqMetasResolver mr = MqUtils.getLast();
+        Message source = new MessageBuilder()
+                .sid(StrUtils.guid())
+                .flag(Flags.Message)
+                .entity(mr.publishEntityBuild("demo", new MqMessage("demo1")))
+                .build();
+
+        MqDraft draft = new MqDraft(mr, source);
+        MqMessageHolder holder1 = new MqMessageHolder(draft, "demo#a", "a");
+        MqMessageHolder holder2 = new MqMessageHolder(draft, "demo#b", "b");
+
+        holder1.delayed();
+
+        Entity entity1 = holder1.getMessageEntity();
+        Entity entity2 = holder2.getMessageEntity();
+
+        assert entity1 instanceof MqMessageEntity;
+        //消息体共享（各自一个视图）
+        assert entity1.data() != entity2.data();
+        assert entity1.data().array() == entity2.data().array();
+        assert "a".equals(mr.getConsumerGroup(entity1));
+        assert "b".equals(mr.getConsumerGroup(entity2));
+        assert mr.getTimes(entity1) == 1;
+        assert mr.getTimes(entity2) == 0;
+        assert mr.getConsumerGroup(source).isEmpty();
+
+        Map<String, String> metaMap1 = entity1.metaMap();
+        assert "demo#a".equals(metaMap1.get("@"));
+        assert entity1.metaString().contains("@=demo#a");
+
+        //兼容的访问（合并后的副本）
+        assert "a".equals(mr.getConsumerGroup(holder1.getEntity()));
+        assert MqBatchUtils.sizeOf(entity1) == MqBatchUtils.sizeOf(holder1.getEntity());
+
+        entity1.delMeta("@");
+        assert entity1.meta("@") == null;
+        assert entity1.metaMap().containsKey("@") == false;
+        assert entity2.meta("@") != null;
+
+        //服务端
+        server = FolkMQ.createBorker()
+                .start(getPort());
+
+        //客户端
+        String[] groups = {"a", "b", "c"};
+        CountDownLatch countDownLatch = new CountDownLatch(groups.length);
+        Set<String> receivedGroups = ConcurrentHashMap.newKeySet();
+
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .connect();
+
+        for (String group : groups) {
+            client.subscribe("demo", group, ((message) -> {
+                if (group.equals(message.getConsumerGroup()) && "demo1".equals(message.getBodyAsString())) {
+                    receivedGroups.add(group);
+                    countDownLatch.countDown();
+                }
+            }));
+        }
+
+        client.publish("demo", new MqMessage("demo1"));
+
+        countDownLatch.await(1, TimeUnit.SECONDS);
+
+        //检验客户端
+        assert countDownLatch.getCount() == 0;
+        assert receivedGroups.size() == groups.length;
+
+        Thread.sleep(100);
+
+        //检验服务端
+        MqBorkerInternal serverInternal = server.getServerInternal();
+        assert serverInternal.getQueueMap().size() == groups.length;
+    }
+}
@@ -0,0 +1,68 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.broker.MqBorkerInternal;
+import org.noear.folkmq.client.MqMessage;
+import org.noear.folkmq.common.MqMetasResolver;
+import org.noear.folkmq.common.MqUtils;
+import org.noear.socketd.transport.core.Flags;
+import org.noear.socketd.transport.core.Message;
+import org.noear.socketd.transport.core.entity.MessageBuilder;
+import org.noear.socketd.utils.StrUtils;
+
+import java.util.Date;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase46_routing_snapshot extends BaseTestCase {
+    public TestCase46_routing_snapshot(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        //服务端
+        server = FolkMQ.createBorker()
+                .start(getPort());
+
+        MqBorkerInternal serverInternal = server.getServerInternal();
+        MqMetasResolver mr = MqUtils.getLast();
+
+        //订阅后路由
+        serverInternal.subscribeDo("demo", "a", null);
+        serverInternal.subscribeDo("demo", "b", null);
+
+        serverInternal.routingDo(mr, buildMessage(mr));
+        assert serverInternal.getQueue("demo#a").messageTotal() == 1;
+        assert serverInternal.getQueue("demo#b").messageTotal() == 1;
+
+        //移除队列后路由
+        serverInternal.removeQueue("demo#b");
+
+        serverInternal.routingDo(mr, buildMessage(mr));
+        assert serverInternal.getQueue("demo#a").messageTotal() == 2;
+        assert serverInternal.getQueue("demo#b") == null;
+
+        //再订阅后路由
+        serverInternal.subscribeDo("demo", "b", null);
+        serverInternal.subscribeDo("demo", "c", null);
+
+        serverInternal.routingDo(mr, buildMessage(mr));
+        assert serverInternal.getQueue("demo#a").messageTotal() == 3;
+        assert serverInternal.getQueue("demo#b").messageTotal() == 1;
+        assert serverInternal.getQueue("demo#c").messageTotal() == 1;
+    }
+
+    private Message buildMessage(MqMetasResolver mr) {
+        //定时到 1 小时后（不会被派发掉）
+        return new MessageBuilder()
+                .sid(StrUtils.guid())
+                .flag(Flags.Message)
+                .entity(mr.publishEntityBuild("demo", new MqMessage("demo1").scheduled(new Date(System.currentTimeMillis() + 3600_000))))
+                .build();
+    }
+}
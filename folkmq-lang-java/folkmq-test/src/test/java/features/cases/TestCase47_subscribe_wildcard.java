@@ -0,0 +1,102 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.broker.MqBorkerInternal;
+import org.noear.folkmq.client.MqMessage;
+import org.noear.folkmq.common.MqTopicMatcher;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase47_subscribe_wildcard extends BaseTestCase {
+    public TestCase47_subscribe_wildcard(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        //匹配器
+        MqTopicMatcher matcher = new MqTopicMatcher();
+        matcher.add("order.*");
+        matcher.add("order.**");
+        matcher.add("*.created");
+        matcher.add("ns:order.*");
+
+        assert new HashSet<>(Arrays.asList(matcher.match("order.created"))).equals(new HashSet<>(Arrays.asList("order.*", "order.**", "*.created")));
+        assert new HashSet<>(Arrays.asList(matcher.match("order"))).equals(new HashSet<>(Arrays.asList("order.**")));
+        assert new HashSet<>(Arrays.asList(matcher.match("order.created.vip"))).equals(new HashSet<>(Arrays.asList("order.**")));
+        assert matcher.match("user.deleted").length == 0;
+        assert new HashSet<>(Arrays.asList(matcher.match("ns:order.created"))).equals(new HashSet<>(Arrays.asList("ns:order.*")));
+
+        matcher.remove("order.**");
+        assert matcher.match("order.created.vip").length == 0;
+        assert matcher.match("order.created").length == 2;
+
+        //通配符要是整段的
+        assert MqTopicMatcher.isPattern("order.*");
+        assert MqTopicMatcher.isPattern("ns:**");
+        assert MqTopicMatcher.isPattern("order*") == false;
+        assert MqTopicMatcher.isPatternValid("order.*.created");
+        assert MqTopicMatcher.isPatternValid("order*") == false;
+        assert MqTopicMatcher.isPatternValid("order.*x") == false;
+        assert MqTopicMatcher.isPatternValid("order.***") == false;
+
+        //服务端
+        server = FolkMQ.createBorker()
+                .start(getPort());
+
+        //客户端
+        CountDownLatch countDownLatch = new CountDownLatch(4);
+        Set<String> receivedSet = ConcurrentHashMap.newKeySet();
+
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .connect();
+
+        client.subscribe("order.*", "a", ((message) -> {
+            receivedSet.add("a:" + message.getTopic());
+            countDownLatch.countDown();
+        }));
+
+        client.subscribe("order.**", "b", ((message) -> {
+            receivedSet.add("b:" + message.getTopic());
+            countDownLatch.countDown();
+        }));
+
+        try {
+            client.subscribe("order*", "c", ((message) -> {
+            }));
+            assert false;
+        } catch (IllegalArgumentException e) {
+            //不是整段的通配符，不能订阅
+        }
+
+        client.publish("order.created", new MqMessage("demo1"));
+        client.publish("order.created.vip", new MqMessage("demo2"));
+        client.publish("user.created", new MqMessage("demo3"));
+
+        countDownLatch.await(1, TimeUnit.SECONDS);
+
+        //检验客户端
+        assert countDownLatch.getCount() == 1;
+        assert receivedSet.equals(new HashSet<>(Arrays.asList("a:order.created", "b:order.created", "b:order.created.vip")));
+
+        Thread.sleep(100);
+
+        //检验服务端（都已回执）
+        MqBorkerInternal serverInternal = server.getServerInternal();
+        assert serverInternal.hasSubscribe("order.paid");
+        assert serverInternal.hasSubscribe("user.created") == false;
+        assert serverInternal.getQueue("order.*#a").messageTotal() == 0;
+        assert serverInternal.getQueue("order.**#b").messageTotal() == 0;
+    }
+}
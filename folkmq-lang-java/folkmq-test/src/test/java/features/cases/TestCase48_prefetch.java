@@ -0,0 +1,81 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.broker.MqBorkerInternal;
+import org.noear.folkmq.broker.MqQueueBase;
+import org.noear.folkmq.client.MqMessage;
+import org.noear.folkmq.client.MqMessageReceived;
+import org.noear.socketd.transport.core.Session;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase48_prefetch extends BaseTestCase {
+    public TestCase48_prefetch(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        //服务端
+        server = FolkMQ.createBorker()
+                .start(getPort());
+
+        //客户端（只收不回执，看是否按预取数量限流）
+        List<MqMessageReceived> receivedList = new CopyOnWriteArrayList<>();
+
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .prefetch(2)
+                .connect();
+
+        client.subscribe("demo", "a", false, ((message) -> {
+            receivedList.add(message);
+        }));
+
+        for (int i = 0; i < 10; i++) {
+            client.publish("demo", new MqMessage("demo" + i));
+        }
+
+        Thread.sleep(500);
+
+        //检验客户端
+        assert receivedList.size() == 2;
+
+        //检验服务端
+        MqBorkerInternal serverInternal = server.getServerInternal();
+        MqQueueBase queue = (MqQueueBase) serverInternal.getQueue("demo#a");
+        Session session = queue.sessionAll().iterator().next();
+        assert queue.consumerStateOf(session).getInflight() == 2;
+        assert queue.messageTotal() == 10;
+
+        //回执后补充信用
+        for (MqMessageReceived message : receivedList) {
+            message.acknowledge(true);
+        }
+
+        Thread.sleep(500);
+
+        assert receivedList.size() == 4;
+        assert queue.consumerStateOf(session).getInflight() == 2;
+        assert queue.messageTotal() == 8;
+
+        //全部回执完
+        for (int i = 0; i < 10 && queue.messageTotal() > 0; i++) {
+            for (MqMessageReceived message : receivedList) {
+                message.acknowledge(true);
+            }
+
+            Thread.sleep(200);
+        }
+
+        assert receivedList.size() == 10;
+        assert queue.consumerStateOf(session).getInflight() == 0;
+        assert queue.messageTotal() == 0;
+    }
+}
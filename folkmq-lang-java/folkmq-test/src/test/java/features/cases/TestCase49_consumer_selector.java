@@ -0,0 +1,85 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.broker.MqBorkerInternal;
+import org.noear.folkmq.broker.MqConsumerSelector;
+import org.noear.folkmq.broker.MqConsumerState;
+import org.noear.folkmq.client.MqClient;
+import org.noear.folkmq.client.MqMessage;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase49_consumer_selector extends BaseTestCase {
+    public TestCase49_consumer_selector(int port) {
+        super(port);
+    }
+
+    private MqClient client2;
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        //评分
+        MqConsumerState state = new MqConsumerState(0);
+        assert MqConsumerSelector.POLL.score(state) == 0L;
+        assert MqConsumerSelector.LEAST_INFLIGHT.score(state) == 0L;
+        assert MqConsumerSelector.LATENCY.score(state) == 1L;
+        assert MqConsumerSelector.of("least_inflight") == MqConsumerSelector.LEAST_INFLIGHT;
+        assert MqConsumerSelector.of("latency") == MqConsumerSelector.LATENCY;
+        assert MqConsumerSelector.of("xxx") == MqConsumerSelector.POLL;
+
+        //服务端（最少未回执）
+        server = FolkMQ.createBorker()
+                .consumerSelector(MqConsumerSelector.LEAST_INFLIGHT)
+                .start(getPort());
+
+        //客户端（慢的：一直不回执；快的：自动回执）
+        AtomicInteger slowCount = new AtomicInteger();
+        AtomicInteger fastCount = new AtomicInteger();
+
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .connect();
+
+        client.subscribe("demo", "a", false, ((message) -> {
+            slowCount.incrementAndGet();
+        }));
+
+        client2 = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .connect();
+
+        client2.subscribe("demo", "a", ((message) -> {
+            fastCount.incrementAndGet();
+        }));
+
+        for (int i = 0; i < 20; i++) {
+            client.publish("demo", new MqMessage("demo" + i));
+            Thread.sleep(20);
+        }
+
+        Thread.sleep(500);
+
+        //检验客户端
+        assert slowCount.get() + fastCount.get() == 20;
+        assert slowCount.get() <= 2;
+
+        //检验服务端（队列可单独设置）
+        MqBorkerInternal serverInternal = server.getServerInternal();
+        assert serverInternal.getQueue("demo#a").getConsumerSelector() == null;
+        serverInternal.getQueue("demo#a").setConsumerSelector(MqConsumerSelector.LATENCY);
+        assert serverInternal.getQueue("demo#a").getConsumerSelector() == MqConsumerSelector.LATENCY;
+    }
+
+    @Override
+    public void stop() throws Exception {
+        super.stop();
+
+        if (client2 != null) {
+            client2.disconnect();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.client.MqMessage;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase50_sequence_shards extends BaseTestCase {
+    public TestCase50_sequence_shards(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        //服务端
+        server = FolkMQ.createBorker()
+                .start(getPort());
+
+        //客户端
+        int count = 5;
+        CountDownLatch countDownLatchX = new CountDownLatch(count);
+        CountDownLatch countDownLatchY = new CountDownLatch(count + 1);
+
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .autoAcknowledge(false)
+                .connect();
+
+        List<String> msgListX = new CopyOnWriteArrayList<>();
+        List<String> msgListY = new CopyOnWriteArrayList<>();
+        client.subscribe("demo", "a", ((message) -> {
+            String body = message.getBodyAsString();
+            System.out.println("------: " + body);
+
+            if (body.startsWith("x")) {
+                if ("x0".equals(body) && message.getTimes() == 0) {
+                    //x 分片的第一条失败（5秒后重试；x 分片在此之前不能再派发）
+                    message.acknowledge(false);
+                } else {
+                    msgListX.add(body);
+                    countDownLatchX.countDown();
+                    message.acknowledge(true);
+                }
+            } else {
+                msgListY.add(body);
+                countDownLatchY.countDown();
+                message.acknowledge(true);
+            }
+        }));
+
+        for (int i = 0; i < count; i++) {
+            client.publish("demo", new MqMessage("x" + i).sequence(true, "x"));
+        }
+
+        for (int i = 0; i < count; i++) {
+            client.publish("demo", new MqMessage("y" + i).sequence(true, "y"));
+        }
+
+        client.publish("demo", new MqMessage("p0"));
+
+        //其它分片与普通消息，不受 x 分片的重试影响
+        countDownLatchY.await(2, TimeUnit.SECONDS);
+        assert countDownLatchY.getCount() == 0;
+        assert msgListX.size() == 0;
+
+        int idx = 0;
+        for (String body : msgListY) {
+            if (body.startsWith("y")) {
+                assert body.equals("y" + idx);
+                idx++;
+            }
+        }
+
+        //x 分片重试成功后，按顺序接着派发
+        countDownLatchX.await(10, TimeUnit.SECONDS);
+        assert countDownLatchX.getCount() == 0;
+
+        for (int i = 0; i < count; i++) {
+            assert msgListX.get(i).equals("x" + i);
+        }
+    }
+}
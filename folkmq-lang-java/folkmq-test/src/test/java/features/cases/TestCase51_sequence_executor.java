@@ -0,0 +1,75 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.client.MqMessage;
+import org.noear.folkmq.client.MqSequenceExecutor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase51_sequence_executor extends BaseTestCase {
+    public TestCase51_sequence_executor(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        //服务端
+        server = FolkMQ.createBorker()
+                .start(getPort());
+
+        //客户端
+        int shardCount = 8;
+        int count = 5;
+        CountDownLatch countDownLatch = new CountDownLatch(shardCount * count);
+
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .sequenceExecutor(new MqSequenceExecutor(shardCount))
+                .connect();
+
+        Map<String, List<Integer>> msgMap = new ConcurrentHashMap<>();
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        client.subscribe("demo", "a", ((message) -> {
+            String[] body = message.getBodyAsString().split(":");
+            threadNames.add(Thread.currentThread().getName());
+
+            //每条消费 100ms（单线程的话，总共要 4s）
+            Thread.sleep(100);
+
+            msgMap.computeIfAbsent(body[0], k -> new CopyOnWriteArrayList<>()).add(Integer.parseInt(body[1]));
+            countDownLatch.countDown();
+        }));
+
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < shardCount; j++) {
+                client.publish("demo", new MqMessage("s" + j + ":" + i).sequence(true, "s" + j));
+            }
+        }
+
+        //不同分片并行消费
+        countDownLatch.await(3, TimeUnit.SECONDS);
+        System.out.println("还有未收：" + countDownLatch.getCount() + ", threads: " + threadNames.size());
+
+        assert countDownLatch.getCount() == 0;
+        assert threadNames.size() > 1;
+
+        //同一分片内有序
+        assert msgMap.size() == shardCount;
+        for (List<Integer> msgList : msgMap.values()) {
+            for (int i = 0; i < count; i++) {
+                assert msgList.get(i) == i;
+            }
+        }
+    }
+}
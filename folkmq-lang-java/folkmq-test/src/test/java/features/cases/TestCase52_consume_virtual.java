@@ -0,0 +1,104 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.client.MqMessage;
+import org.noear.folkmq.client.MqVirtualExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase52_consume_virtual extends BaseTestCase {
+    public TestCase52_consume_virtual(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        //服务端
+        server = FolkMQ.createBorker()
+                .start(getPort());
+
+        //客户端
+        int count = 20;
+        int maxConcurrency = 2;
+        CountDownLatch countDownLatch = new CountDownLatch(count);
+        AtomicInteger concurrency = new AtomicInteger();
+        AtomicInteger concurrencyMax = new AtomicInteger();
+
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .consumeVirtual(maxConcurrency)
+                .connect();
+
+        //没有设置预取时，按并发数预取
+        assert client.prefetch() == maxConcurrency * 2;
+
+        client.subscribe("demo", "a", ((message) -> {
+            int c = concurrency.incrementAndGet();
+            concurrencyMax.accumulateAndGet(c, Math::max);
+
+            //模拟阻塞的处理（如写库）
+            Thread.sleep(50);
+
+            concurrency.decrementAndGet();
+            countDownLatch.countDown();
+        }));
+
+        for (int i = 0; i < count; i++) {
+            client.publish("demo", new MqMessage("demo" + i));
+        }
+
+        countDownLatch.await(5, TimeUnit.SECONDS);
+        System.out.println("还有未收：" + countDownLatch.getCount() + ", concurrencyMax: " + concurrencyMax.get());
+
+        //检验客户端（全部收到；并发不超过上限）
+        assert countDownLatch.getCount() == 0;
+        assert concurrencyMax.get() <= maxConcurrency;
+
+        //达到上限时排队，不阻塞调用线程（即派发线程）；排队也有上限
+        MqVirtualExecutor executor = new MqVirtualExecutor(1, 1);
+        CountDownLatch blockLatch = new CountDownLatch(1);
+        CountDownLatch doneLatch = new CountDownLatch(2);
+
+        executor.execute(() -> {
+            try {
+                blockLatch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            doneLatch.countDown();
+        });
+
+        long start = System.currentTimeMillis();
+        executor.execute(doneLatch::countDown);
+        assert System.currentTimeMillis() - start < 1000;
+        assert executor.getPending() == 1;
+        assert executor.getConcurrency() == 1;
+
+        try {
+            executor.execute(doneLatch::countDown);
+            assert false;
+        } catch (RejectedExecutionException e) {
+            assert executor.getPending() == 1;
+        }
+
+        //关闭后，排队的与执行中的都结束了，才算终止
+        executor.shutdown();
+        assert executor.isShutdown();
+        assert executor.isTerminated() == false;
+        assert executor.awaitTermination(100, TimeUnit.MILLISECONDS) == false;
+
+        blockLatch.countDown();
+        assert executor.awaitTermination(5, TimeUnit.SECONDS);
+        assert executor.isTerminated();
+        assert doneLatch.getCount() == 0;
+        assert executor.getPending() == 0;
+    }
+}
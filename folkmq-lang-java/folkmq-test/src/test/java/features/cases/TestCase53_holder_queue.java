@@ -0,0 +1,164 @@
+package features.cases;
+
+import org.noear.folkmq.broker.MqDraft;
+import org.noear.folkmq.broker.MqMessageHolder;
+import org.noear.folkmq.broker.MqMessageHolderQueue;
+import org.noear.folkmq.client.MqMessage;
+import org.noear.folkmq.common.MqMetasResolver;
+import org.noear.folkmq.common.MqUtils;
+import org.noear.socketd.transport.core.Flags;
+import org.noear.socketd.transport.core.Message;
+import org.noear.socketd.transport.core.entity.MessageBuilder;
+import org.noear.socketd.utils.StrUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase53_holder_queue extends BaseTestCase {
+    public TestCase53_holder_queue(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        //索引堆（不带时间轮，与带时间轮）
+        check(new MqMessageHolderQueue(false));
+        check(new MqMessageHolderQueue(true));
+
+        //批量添加（整体建堆，与逐个上浮）
+        checkAddAll(new MqMessageHolderQueue(false));
+        checkAddAll(new MqMessageHolderQueue(true));
+    }
+
+    private void checkAddAll(MqMessageHolderQueue queue) {
+        MqMetasResolver mr = MqUtils.getLast();
+        long now = System.currentTimeMillis();
+
+        //到期的与定时的混在一起（乱序给出）
+        List<MqMessageHolder> dueList = new ArrayList<>();
+        List<MqMessageHolder> batch1 = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            MqMessageHolder h = buildHolder(mr, now - 1000 + (i % 5) * 10, 100 - i);
+            dueList.add(h);
+            batch1.add(h);
+        }
+
+        MqMessageHolder s1 = buildHolder(mr, now + 3_600_000, 1);
+        MqMessageHolder s2 = buildHolder(mr, now + 60_000, 2);
+        batch1.add(5, s1);
+        batch1.add(11, s2);
+
+        //空堆，追加的多（整体建堆）
+        queue.addAll(batch1);
+        assert queue.size() == 22;
+        assert queue.countGet(0) == 22;
+
+        //追加的少（逐个上浮）；已在队列中的，按新的派发时间放入，不会重复
+        MqMessageHolder h0 = buildHolder(mr, now - 2000, 1);
+        MqMessageHolder h1 = dueList.get(19);
+        h1.preDelayed(now - 3000);
+        queue.addAll(Arrays.asList(h0, h1));
+        assert queue.size() == 23;
+
+        dueList.add(h0);
+        dueList.sort(Comparator.comparingLong(MqMessageHolder::getDistributeTime).thenComparingLong(MqMessageHolder::getDistributeIdx));
+
+        //到期的，按 (distributeTime, distributeIdx) 取出；定时的不会取出
+        for (MqMessageHolder h : dueList) {
+            assert queue.poll() == h;
+        }
+
+        assert queue.poll() == null;
+        assert queue.size() == 2;
+
+        assert queue.remove(s1);
+        assert queue.remove(s2);
+        assert queue.isEmpty();
+    }
+
+    private void check(MqMessageHolderQueue queue) {
+        MqMetasResolver mr = MqUtils.getLast();
+        long now = System.currentTimeMillis();
+
+        //按 (distributeTime, distributeIdx) 排序
+        MqMessageHolder h1 = buildHolder(mr, now - 300, 1);
+        MqMessageHolder h2 = buildHolder(mr, now - 200, 3);
+        MqMessageHolder h3 = buildHolder(mr, now - 200, 2);
+        MqMessageHolder h4 = buildHolder(mr, now - 100, 4);
+        MqMessageHolder h5 = buildHolder(mr, now - 50, 5);
+
+        queue.add(h4);
+        queue.add(h2);
+        queue.add(h5);
+        queue.add(h1);
+        queue.add(h3);
+
+        assert queue.size() == 5;
+        assert queue.countGet(0) == 5;
+
+        //移除（再移除，则落空）
+        assert queue.remove(h4);
+        assert queue.remove(h4) == false;
+        assert queue.size() == 4;
+        assert queue.countGet(0) == 4;
+
+        //重排（已在队列中的，按新的派发时间放入；不会重复）
+        h5.preDelayed(now - 400);
+        queue.add(h5);
+        assert queue.size() == 4;
+
+        assert queue.poll() == h5;
+        assert queue.poll() == h1;
+        assert queue.poll() == h3;
+        assert queue.poll() == h2;
+        assert queue.poll() == null;
+        assert queue.size() == 0;
+        assert queue.countGet(0) == 0;
+
+        //重试计数（按入队时的派发次数计；出队时按它扣减）
+        h1.delayed(now - 10);
+        queue.add(h1);
+        h2.delayed(now + 3_600_000);
+        h2.delayed(now + 3_600_000);
+        queue.add(h2);
+
+        assert queue.countGet(0) == 0;
+        assert queue.countGet(1) == 1;
+        assert queue.countGet(2) == 1;
+
+        //未到期的，不会取出（远期的会在时间轮上）
+        assert queue.poll() == h1;
+        assert queue.poll() == null;
+        assert queue.countGet(1) == 0;
+        assert queue.size() == 1;
+
+        if (queue.wheelNextTime() < Long.MAX_VALUE) {
+            assert queue.wheelNextTime() <= h2.getDistributeTime();
+        }
+
+        assert queue.remove(h2);
+        assert queue.countGet(2) == 0;
+        assert queue.isEmpty();
+    }
+
+    private MqMessageHolder buildHolder(MqMetasResolver mr, long distributeTime, long distributeIdx) {
+        Message message = new MessageBuilder()
+                .sid(StrUtils.guid())
+                .flag(Flags.Message)
+                .entity(mr.publishEntityBuild("demo", new MqMessage("demo" + distributeIdx)))
+                .build();
+
+        MqMessageHolder holder = new MqMessageHolder(new MqDraft(mr, message), "demo#a", "a");
+        holder.preDelayed(distributeTime);
+        holder.setDistributeIdx(distributeIdx);
+        return holder;
+    }
+}
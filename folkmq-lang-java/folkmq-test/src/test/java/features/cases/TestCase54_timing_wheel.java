@@ -0,0 +1,120 @@
+package features.cases;
+
+import org.noear.folkmq.broker.MqDraft;
+import org.noear.folkmq.broker.MqMessageHolder;
+import org.noear.folkmq.broker.MqTimingWheel;
+import org.noear.folkmq.client.MqMessage;
+import org.noear.folkmq.common.MqMetasResolver;
+import org.noear.folkmq.common.MqUtils;
+import org.noear.socketd.transport.core.Flags;
+import org.noear.socketd.transport.core.Message;
+import org.noear.socketd.transport.core.entity.MessageBuilder;
+import org.noear.socketd.utils.StrUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase54_timing_wheel extends BaseTestCase {
+    private static final long TIME_1S = 1000L;
+    private static final long TIME_1M = 60_000L;
+    private static final long TIME_1H = 3600_000L;
+
+    public TestCase54_timing_wheel(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        //从整点前 30 秒开始（跨分、跨时）
+        long t0 = TIME_1H * 480_000 - 30 * TIME_1S;
+
+        List<MqMessageHolder> expiredList = new ArrayList<>();
+        MqTimingWheel wheel = new MqTimingWheel(expiredList::add, t0);
+
+        MqMetasResolver mr = MqUtils.getLast();
+        MqMessageHolder h0 = buildHolder(mr, t0);                         //已到期（不挂轮）
+        MqMessageHolder h1 = buildHolder(mr, t0 + 10 * TIME_1S);          //秒轮
+        MqMessageHolder h2 = buildHolder(mr, t0 + 90 * TIME_1S);          //分轮（跨整点）
+        MqMessageHolder h3 = buildHolder(mr, t0 + 5 * TIME_1M);           //分轮（到期前移除）
+        MqMessageHolder h4 = buildHolder(mr, t0 + 2 * TIME_1H + 5 * TIME_1S); //时轮
+        MqMessageHolder h5 = buildHolder(mr, t0 + 30 * TIME_1H);          //溢出桶
+
+        assert wheel.nextTime() == Long.MAX_VALUE;
+
+        assert wheel.add(h0) == false;
+        assert wheel.add(h1);
+        assert wheel.add(h2);
+        assert wheel.add(h3);
+        assert wheel.add(h4);
+        assert wheel.add(h5);
+        assert wheel.size() == 5;
+
+        //下次推进时间（最早到期时间的下界）
+        assert wheel.nextTime() == h1.getDistributeTime();
+
+        //秒轮
+        wheel.advance(h1.getDistributeTime() - 1);
+        assert expiredList.isEmpty();
+        wheel.advance(h1.getDistributeTime());
+        assert expiredList.size() == 1 && expiredList.get(0) == h1;
+
+        //分轮降级（跨整点）
+        assert wheel.nextTime() > h1.getDistributeTime();
+        assert wheel.nextTime() <= h2.getDistributeTime();
+        wheel.advance(h2.getDistributeTime() - 1);
+        assert expiredList.size() == 1;
+        wheel.advance(h2.getDistributeTime());
+        assert expiredList.size() == 2 && expiredList.get(1) == h2;
+
+        //移除（再移除，则落空）
+        assert wheel.remove(h3);
+        assert wheel.remove(h3) == false;
+        assert wheel.size() == 2;
+
+        //时轮降级（时 -> 分 -> 秒）
+        assert wheel.nextTime() <= h4.getDistributeTime();
+        wheel.advance(h4.getDistributeTime() - 1);
+        assert expiredList.size() == 2;
+        wheel.advance(h4.getDistributeTime());
+        assert expiredList.size() == 3 && expiredList.get(2) == h4;
+
+        //溢出桶（整点检查，落入时轮后再降级）
+        assert wheel.nextTime() <= h5.getDistributeTime();
+        wheel.advance(h5.getDistributeTime() - 1);
+        assert expiredList.size() == 3;
+        wheel.advance(h5.getDistributeTime());
+        assert expiredList.size() == 4 && expiredList.get(3) == h5;
+
+        assert wheel.size() == 0;
+        assert wheel.nextTime() == Long.MAX_VALUE;
+
+        //空轮直接跳到位，再挂的按新的当前时间算
+        long t1 = t0 + 100 * TIME_1H;
+        wheel.advance(t1);
+        MqMessageHolder h6 = buildHolder(mr, t1 + TIME_1S);
+        assert wheel.add(h6);
+        assert wheel.nextTime() == h6.getDistributeTime();
+
+        wheel.clear();
+        assert wheel.size() == 0;
+        assert wheel.remove(h6) == false;
+    }
+
+    private MqMessageHolder buildHolder(MqMetasResolver mr, long distributeTime) {
+        Message message = new MessageBuilder()
+                .sid(StrUtils.guid())
+                .flag(Flags.Message)
+                .entity(mr.publishEntityBuild("demo", new MqMessage("demo")))
+                .build();
+
+        MqMessageHolder holder = new MqMessageHolder(new MqDraft(mr, message), "demo#a", "a");
+        holder.preDelayed(distributeTime);
+        return holder;
+    }
+}
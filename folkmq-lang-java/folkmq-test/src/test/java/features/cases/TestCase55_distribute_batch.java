@@ -0,0 +1,106 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.client.MqClient;
+import org.noear.folkmq.client.MqMessage;
+import org.noear.folkmq.broker.MqQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase55_distribute_batch extends BaseTestCase {
+    public TestCase55_distribute_batch(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        //服务端
+        server = FolkMQ.createBorker()
+                .start(getPort());
+
+        int count = 10;
+
+        //1.批量派发（批内有慢消息时，已完成的回执不用等它）
+        CountDownLatch countDownLatch = new CountDownLatch(count);
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .connect();
+
+        client.subscribe("demo", "a", ((message) -> {
+            if ("demo0".equals(message.getBodyAsString())) {
+                Thread.sleep(3000);
+            }
+            countDownLatch.countDown();
+        }));
+
+        client.publishBatch("demo", messagesBuild("demo", count));
+
+        MqQueue queue = server.getServerInternal().getQueue("demo#a");
+        long deadline = System.currentTimeMillis() + 2000;
+        while (queue.messageTotal() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        System.out.println("慢消息处理中，队列还有：" + queue.messageTotal());
+        assert countDownLatch.getCount() == 1;
+        assert queue.messageTotal() == 1;
+
+        countDownLatch.await(5, TimeUnit.SECONDS);
+        assert countDownLatch.getCount() == 0;
+
+        //2.批量派发中途断开（未回执的，不用等最大消费时间即重新派发）
+        CountDownLatch blockLatch = new CountDownLatch(1);
+        CountDownLatch receivedLatch = new CountDownLatch(1);
+        MqClient client2 = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .connect();
+
+        client2.subscribe("demo2", "a", ((message) -> {
+            //模拟处理卡住（不回执）
+            receivedLatch.countDown();
+            blockLatch.await();
+        }));
+
+        client.publishBatch("demo2", messagesBuild("demo2", count));
+
+        receivedLatch.await(5, TimeUnit.SECONDS);
+        assert receivedLatch.getCount() == 0;
+
+        client2.disconnect();
+
+        Set<String> received2 = ConcurrentHashMap.newKeySet();
+        CountDownLatch countDownLatch2 = new CountDownLatch(count);
+        client.subscribe("demo2", "a", ((message) -> {
+            if (received2.add(message.getBodyAsString())) {
+                countDownLatch2.countDown();
+            }
+        }));
+
+        countDownLatch2.await(15, TimeUnit.SECONDS);
+        blockLatch.countDown();
+
+        System.out.println("断开后还有未收：" + countDownLatch2.getCount());
+        assert countDownLatch2.getCount() == 0;
+
+        Thread.sleep(500);
+        MqQueue queue2 = server.getServerInternal().getQueue("demo2#a");
+        assert queue2.messageTotal() == 0;
+    }
+
+    private List<MqMessage> messagesBuild(String topic, int count) {
+        List<MqMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(new MqMessage(topic + i));
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,62 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.client.MqMessage;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase56_distribute_scheduled_wakeup extends BaseTestCase {
+    public TestCase56_distribute_scheduled_wakeup(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        //服务端
+        server = FolkMQ.createBorker()
+                .start(getPort());
+
+        //客户端
+        CountDownLatch countDownLatch = new CountDownLatch(2);
+        Map<String, Long> receivedMap = new ConcurrentHashMap<>();
+
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .connect();
+
+        client.subscribe("demo", "a", ((message) -> {
+            receivedMap.put(message.getBodyAsString(), System.currentTimeMillis());
+            countDownLatch.countDown();
+        }));
+
+        //先发较晚的，再发较早的（派发线程要按新的最近时间停靠）
+        long now = System.currentTimeMillis();
+        long laterTime = now + 2000;
+        long earlierTime = now + 800;
+
+        client.publish("demo", new MqMessage("later").scheduled(new Date(laterTime)));
+        client.publish("demo", new MqMessage("earlier").scheduled(new Date(earlierTime)));
+
+        countDownLatch.await(5, TimeUnit.SECONDS);
+        System.out.println("还有未收：" + countDownLatch.getCount() + ", received: " + receivedMap);
+
+        //检验客户端（到期才收到，且到期后及时收到；空闲时没有别的唤醒）
+        assert countDownLatch.getCount() == 0;
+
+        long earlierDelay = receivedMap.get("earlier") - earlierTime;
+        long laterDelay = receivedMap.get("later") - laterTime;
+        System.out.println("earlierDelay=" + earlierDelay + ", laterDelay=" + laterDelay);
+
+        assert earlierDelay >= 0 && earlierDelay < 500;
+        assert laterDelay >= 0 && laterDelay < 500;
+    }
+}
@@ -0,0 +1,76 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.client.MqMessage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase57_distribute_threads extends BaseTestCase {
+    public TestCase57_distribute_threads(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        int threads = 4;
+
+        //服务端
+        server = FolkMQ.createBorker()
+                .distributeThreads(threads)
+                .start(getPort());
+
+        //检验服务端（派发线程数）
+        long threadCount = Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().startsWith("distributeThread-"))
+                .count();
+        System.out.println("distributeThread count=" + threadCount);
+        assert threadCount >= threads;
+
+        //客户端（单线程消费，收到的顺序即派发的顺序）
+        int topicCount = 8;
+        int count = 20;
+        CountDownLatch countDownLatch = new CountDownLatch(topicCount * count);
+        Map<String, List<Integer>> msgMap = new ConcurrentHashMap<>();
+        ExecutorService consumeExecutor = Executors.newSingleThreadExecutor();
+
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .consumeExecutor(consumeExecutor)
+                .connect();
+
+        for (int j = 0; j < topicCount; j++) {
+            client.subscribe("demo" + j, "a", ((message) -> {
+                String[] body = message.getBodyAsString().split(":");
+                msgMap.computeIfAbsent(body[0], k -> new CopyOnWriteArrayList<>()).add(Integer.parseInt(body[1]));
+                countDownLatch.countDown();
+            }));
+        }
+
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < topicCount; j++) {
+                client.publish("demo" + j, new MqMessage("demo" + j + ":" + i));
+            }
+        }
+
+        countDownLatch.await(10, TimeUnit.SECONDS);
+        System.out.println("还有未收：" + countDownLatch.getCount());
+
+        //检验客户端（多个派发线程时，每个队列内仍有序）
+        assert countDownLatch.getCount() == 0;
+        assert msgMap.size() == topicCount;
+        for (List<Integer> msgList : msgMap.values()) {
+            for (int i = 0; i < count; i++) {
+                assert msgList.get(i) == i;
+            }
+        }
+
+        consumeExecutor.shutdown();
+    }
+}
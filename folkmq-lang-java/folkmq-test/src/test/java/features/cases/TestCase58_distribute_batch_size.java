@@ -0,0 +1,100 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.broker.MqQueue;
+import org.noear.folkmq.client.MqClient;
+import org.noear.folkmq.client.MqClientDefault;
+import org.noear.folkmq.client.MqClientListener;
+import org.noear.folkmq.client.MqMessage;
+import org.noear.folkmq.common.MqConstants;
+import org.noear.socketd.transport.core.Message;
+import org.noear.socketd.transport.core.Session;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase58_distribute_batch_size extends BaseTestCase {
+    public TestCase58_distribute_batch_size(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        //服务端（每轮只派发 1 条）
+        server = FolkMQ.createBorker()
+                .distributeBatchSize(1)
+                .start(getPort());
+
+        int count = 20;
+
+        //先订阅再断开（留下队列，让消息积压）
+        MqClient client0 = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .connect();
+        client0.subscribe("demo1", "a", (message) -> {
+        });
+        client0.subscribe("demo2", "a", (message) -> {
+        });
+        Thread.sleep(100);
+        client0.disconnect();
+        Thread.sleep(100);
+
+        //队列单独设置（覆盖服务端配置）
+        MqQueue queue2 = server.getServerInternal().getQueue("demo2#a");
+        queue2.setDistributeBatchSize(count);
+        assert queue2.getDistributeBatchSize() == count;
+        assert server.getServerInternal().getQueue("demo1#a").getDistributeBatchSize() == 0;
+
+        FrameCountListener listener = new FrameCountListener();
+        client = new MqClientDefault(new String[]{"folkmq://127.0.0.1:" + getPort()}, listener)
+                .connect();
+
+        for (int i = 0; i < count; i++) {
+            client.publish("demo1", new MqMessage("demo1-" + i));
+            client.publish("demo2", new MqMessage("demo2-" + i));
+        }
+
+        //1.跟随服务端配置（每轮 1 条，每帧 1 条）
+        CountDownLatch countDownLatch1 = new CountDownLatch(count);
+        client.subscribe("demo1", "a", (message) -> countDownLatch1.countDown());
+        countDownLatch1.await(5, TimeUnit.SECONDS);
+        assert countDownLatch1.getCount() == 0;
+
+        int frames1 = listener.batchFrames.getAndSet(0);
+        System.out.println("demo1 frames=" + frames1);
+        assert frames1 == count;
+
+        //2.队列单独设置（每轮多条，合成少量的帧）
+        CountDownLatch countDownLatch2 = new CountDownLatch(count);
+        client.subscribe("demo2", "a", (message) -> countDownLatch2.countDown());
+        countDownLatch2.await(5, TimeUnit.SECONDS);
+        assert countDownLatch2.getCount() == 0;
+
+        int frames2 = listener.batchFrames.get();
+        System.out.println("demo2 frames=" + frames2);
+        assert frames2 > 0 && frames2 < count;
+    }
+
+    /**
+     * 统计批量派发帧的客户端监听
+     */
+    static class FrameCountListener extends MqClientListener {
+        final AtomicInteger batchFrames = new AtomicInteger();
+
+        @Override
+        public void onMessage(Session s, Message m) throws IOException {
+            if (MqConstants.MQ_EVENT_DISTRIBUTE_BATCH.equals(m.event())) {
+                batchFrames.incrementAndGet();
+            }
+
+            super.onMessage(s, m);
+        }
+    }
+}
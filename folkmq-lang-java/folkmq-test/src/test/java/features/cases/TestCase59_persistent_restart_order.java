@@ -0,0 +1,98 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.broker.watcher.MqWatcherSnapshot;
+import org.noear.folkmq.client.MqMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase59_persistent_restart_order extends BaseTestCase {
+    public TestCase59_persistent_restart_order(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        String dataPath = "./data/fdb59/";
+        int count = 30;
+
+        //服务端
+        server = FolkMQ.createBorker()
+                .watcher(new MqWatcherSnapshot(dataPath))
+                .start(getPort());
+
+        //客户端
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .connect();
+
+        client.subscribe("demo", "a", (message) -> { });
+        client.unsubscribe("demo", "a"); //取消订阅； 为了不马上被派发掉
+        Thread.sleep(100); //确保完成取消订阅了
+
+        //到期的与定时的交错发布（定时的，越后发的越早到期）
+        long scheduledBase = System.currentTimeMillis() + 3000;
+        for (int i = 0; i < count; i++) {
+            client.publish("demo", new MqMessage("d" + i));
+
+            if (i % 3 == 0) {
+                client.publish("demo", new MqMessage("s" + i).scheduled(new Date(scheduledBase + (count - i) * 20L)));
+            }
+        }
+
+        client.disconnect();
+        Thread.sleep(100);//确保断连
+
+        server.stop();
+
+        //相当于服务器重启了
+        server = FolkMQ.createBorker()
+                .watcher(new MqWatcherSnapshot(dataPath))
+                .start(getPort());
+
+        //单线程消费（收到的顺序即派发的顺序）
+        List<String> receivedList = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch countDownLatch = new CountDownLatch(count + count / 3);
+        ExecutorService consumeExecutor = Executors.newSingleThreadExecutor();
+
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .consumeExecutor(consumeExecutor)
+                .connect();
+
+        client.subscribe("demo", "a", (message) -> {
+            receivedList.add(message.getBodyAsString());
+            countDownLatch.countDown();
+        });
+
+        countDownLatch.await(10, TimeUnit.SECONDS);
+        System.out.println("还有未收：" + countDownLatch.getCount() + ", received: " + receivedList);
+        assert countDownLatch.getCount() == 0;
+
+        //检验顺序（到期的先按发布顺序；定时的后按到期顺序）
+        List<String> expectedList = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            expectedList.add("d" + i);
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            if (i % 3 == 0) {
+                expectedList.add("s" + i);
+            }
+        }
+
+        assert expectedList.equals(receivedList);
+
+        consumeExecutor.shutdown();
+    }
+}
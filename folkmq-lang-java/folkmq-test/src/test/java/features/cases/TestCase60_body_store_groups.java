@@ -0,0 +1,146 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.broker.MqBodyStore;
+import org.noear.folkmq.broker.MqDraft;
+import org.noear.folkmq.broker.MqMessageHolder;
+import org.noear.folkmq.broker.MqQueue;
+import org.noear.folkmq.client.MqMessage;
+import org.noear.folkmq.common.MqMetasResolver;
+import org.noear.folkmq.common.MqUtils;
+import org.noear.socketd.transport.core.Entity;
+import org.noear.socketd.transport.core.Flags;
+import org.noear.socketd.transport.core.Message;
+import org.noear.socketd.transport.core.entity.MessageBuilder;
+import org.noear.socketd.utils.StrUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase60_body_store_groups extends BaseTestCase {
+    public TestCase60_body_store_groups(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        MqBodyStore bodyStore = new MqBodyStore("./data/body-" + getPort() + "/", 1024 * 1024);
+
+        //服务端（多个派发线程，同一消息体由多个队列同时读取）
+        server = FolkMQ.createBorker()
+                .bodyStore(bodyStore)
+                .distributeThreads(4)
+                .start(getPort());
+
+        //客户端
+        String[] groups = {"a", "b", "c", "d", "e", "f", "g", "h"};
+        int count = 500;
+        CountDownLatch countDownLatch = new CountDownLatch(groups.length * count);
+        Map<String, Set<String>> receivedMap = new ConcurrentHashMap<>();
+        Set<String> badSet = ConcurrentHashMap.newKeySet();
+
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .connect();
+
+        for (String group : groups) {
+            Set<String> received = ConcurrentHashMap.newKeySet();
+            receivedMap.put(group, received);
+
+            client.subscribe("demo", group, ((message) -> {
+                String body = message.getBodyAsString();
+                if (body.equals(bodyBuild(message.getTag())) == false) {
+                    badSet.add(group + ":" + message.getTag());
+                }
+
+                if (received.add(body)) {
+                    countDownLatch.countDown();
+                }
+            }));
+        }
+
+        for (int i = 0; i < count; i++) {
+            String tag = String.valueOf(i);
+            client.publish("demo", new MqMessage(bodyBuild(tag)).tag(tag));
+        }
+
+        countDownLatch.await(20, TimeUnit.SECONDS);
+        System.out.println("还有未收：" + countDownLatch.getCount() + ", bad: " + badSet);
+
+        //检验客户端（每个组都收全，消息体没有被截断）
+        assert countDownLatch.getCount() == 0;
+        assert badSet.isEmpty();
+        for (Set<String> received : receivedMap.values()) {
+            assert received.size() == count;
+        }
+
+        Thread.sleep(100);
+
+        //检验服务端
+        for (String group : groups) {
+            MqQueue queue = server.getServerInternal().getQueue("demo#" + group);
+            assert queue.messageTotal() == 0;
+        }
+
+        assert bodyStore.liveCount() == 0;
+
+        //检验实体（共享同一消息体的队列，各读各的视图，互不移动位置）
+        MqMetasResolver mr = MqUtils.getLast();
+        String body = bodyBuild("1");
+        Message message = new MessageBuilder()
+                .sid(StrUtils.guid())
+                .flag(Flags.Message)
+                .entity(mr.publishEntityBuild("demo", new MqMessage(body)))
+                .build();
+
+        MqDraft draft = new MqDraft(mr, message).storeTo(bodyStore);
+        Entity entityA = new MqMessageHolder(draft, "demo#a", "a").getMessageEntity();
+        Entity entityB = new MqMessageHolder(draft, "demo#b", "b").getMessageEntity();
+
+        ByteBuffer dataA = entityA.data();
+        dataA.get(new byte[dataA.remaining()]);
+        assert dataA.hasRemaining() == false;
+        assert entityB.data().remaining() == body.length();
+        assert body.equals(entityB.dataAsString());
+
+        //多线程同时读
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Entity entity = (i % 2 == 0 ? entityA : entityB);
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    if (new String(entity.dataAsBytes(), StandardCharsets.UTF_8).equals(body) == false) {
+                        return false;
+                    }
+                }
+                return true;
+            }));
+        }
+
+        for (Future<Boolean> future : futures) {
+            assert future.get();
+        }
+
+        executor.shutdown();
+    }
+
+    private static String bodyBuild(String tag) {
+        StringBuilder buf = new StringBuilder();
+        int size = 100 + Integer.parseInt(tag) * 20;
+        while (buf.length() < size) {
+            buf.append("demo-body-").append(tag).append(';');
+        }
+        return buf.toString();
+    }
+}
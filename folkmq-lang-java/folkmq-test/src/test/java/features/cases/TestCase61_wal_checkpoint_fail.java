@@ -0,0 +1,88 @@
+package features.cases;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.broker.MqQueue;
+import org.noear.folkmq.broker.watcher.MqWatcherWal;
+import org.noear.folkmq.client.MqMessage;
+
+import java.io.File;
+
+/**
+ * @author noear
+ * @since 1.7
+ */
+public class TestCase61_wal_checkpoint_fail extends BaseTestCase {
+    public TestCase61_wal_checkpoint_fail(int port) {
+        super(port);
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+
+        String dataPath = "./data/fwal" + getPort() + "/";
+        File directory = new File(dataPath);
+
+        //服务端
+        server = FolkMQ.createBorker()
+                .watcher(new MqWatcherWal(dataPath))
+                .start(getPort());
+
+        //客户端（取消订阅；为了不马上被派发掉）
+        client = FolkMQ.createClient("folkmq://127.0.0.1:" + getPort())
+                .connect();
+
+        client.subscribe("demo", "a", ((message) -> {
+        }));
+        Thread.sleep(100);
+        client.unsubscribe("demo", "a");
+        Thread.sleep(100);
+
+        for (int i = 0; i < 5; i++) {
+            client.publish("demo", new MqMessage("demo" + i));
+        }
+
+        //生成检查点
+        server.getServerInternal().save();
+
+        File[] checkpointFiles = directory.listFiles((dir, name) -> name.endsWith(".ckp"));
+        assert checkpointFiles != null && checkpointFiles.length == 1;
+        File checkpointFile = checkpointFiles[0];
+        long checkpointId = Long.parseLong(checkpointFile.getName().replace(".ckp", ""));
+
+        for (int i = 5; i < 10; i++) {
+            client.publish("demo", new MqMessage("demo" + i));
+        }
+
+        //让下一个检查点换不上（同名的非空目录）
+        File blocker = new File(directory, String.format("%020d", checkpointId + 1) + ".ckp");
+        blocker.mkdirs();
+        File blockerChild = new File(blocker, "x");
+        blockerChild.createNewFile();
+
+        server.getServerInternal().save();
+
+        //检验存储（新检查点没换上，之前的检查点与段都要保留）
+        System.out.println("files: " + String.join(",", directory.list()));
+        assert checkpointFile.exists();
+        assert new File(directory, String.format("%020d", checkpointId) + ".wal").exists();
+        assert new File(directory, String.format("%020d", checkpointId + 1) + ".ckp.tmp").exists() == false;
+
+        blockerChild.delete();
+        blocker.delete();
+
+        client.disconnect();
+        Thread.sleep(100);//确保断连
+
+        server.stop();
+        server = FolkMQ.createBorker() //相当于服务器重启了
+                .watcher(new MqWatcherWal(dataPath))
+                .start(getPort());
+
+        //检验服务端（消息都在）
+        MqQueue queue = server.getServerInternal().getQueue("demo#a");
+        assert queue != null;
+        System.out.println("server queue.size=" + queue.messageTotal());
+        assert queue.messageTotal() == 10;
+    }
+}
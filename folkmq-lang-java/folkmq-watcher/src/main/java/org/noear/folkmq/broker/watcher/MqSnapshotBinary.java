@@ -0,0 +1,260 @@
+package org.noear.folkmq.broker.watcher;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * 快照文件 - 二进制格式（v3）
+ * <br/>
+ * 格式：[magic: F D B 3] { [bodyLen][crc32] [metaLen][meta][data] }
+ * <br/>
+ * v1/v2 为一行一个 json（数据用 base64），加载时按文件头自动识别。整个文件可再压缩（见 MqSnapshotCompression）
+ *
+ * @author noear
+ * @since 1.7
+ */
+class MqSnapshotBinary {
+    public static final int VERSION = 3;
+    private static final byte[] MAGIC = {'F', 'D', 'B', VERSION};
+
+    //单条记录的最大字节数（超出的视为损坏）
+    private static final int BODY_MAX_BYTES = 256 * 1024 * 1024;
+    //写缓冲大小
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 是否为二进制格式（不改变读取位置）
+     *
+     * @param input 支持 mark 的输入流
+     */
+    public static boolean isBinary(InputStream input) throws IOException {
+        input.mark(MAGIC.length);
+
+        try {
+            byte[] head = new byte[MAGIC.length];
+            int len = 0;
+            while (len < head.length) {
+                int n = input.read(head, len, head.length - len);
+                if (n < 0) {
+                    return false;
+                }
+                len += n;
+            }
+
+            return Arrays.equals(head, MAGIC);
+        } finally {
+            input.reset();
+        }
+    }
+
+    /**
+     * 读取（遇到不完整的记录时停止；校验不过的记录跳过）
+     *
+     * @param input 输入流（已解压，且带缓冲）
+     * @return 读到的记录数
+     */
+    public static int read(InputStream input, RecordHandler handler) throws IOException {
+        int count = 0;
+
+        DataInputStream dataInput = new DataInputStream(input);
+        dataInput.readFully(new byte[MAGIC.length]);
+
+        while (true) {
+            int bodyLen;
+            int crc;
+            byte[] bodyBytes;
+
+            try {
+                bodyLen = dataInput.readInt();
+                crc = dataInput.readInt();
+
+                if (bodyLen < 4 || bodyLen > BODY_MAX_BYTES) {
+                    //长度坏了，后面的都无法定位
+                    handler.onCorrupted(count);
+                    break;
+                }
+
+                bodyBytes = new byte[bodyLen];
+                dataInput.readFully(bodyBytes);
+            } catch (EOFException e) {
+                //到结尾了（或者写了一半）
+                break;
+            }
+
+            CRC32 crc32 = new CRC32();
+            crc32.update(bodyBytes, 0, bodyLen);
+            if ((int) crc32.getValue() != crc) {
+                handler.onCorrupted(count);
+                continue;
+            }
+
+            ByteBuffer body = ByteBuffer.wrap(bodyBytes);
+            int metaLen = body.getInt();
+            if (metaLen < 0 || metaLen > bodyLen - 4) {
+                handler.onCorrupted(count);
+                continue;
+            }
+
+            String meta = new String(bodyBytes, 4, metaLen, StandardCharsets.UTF_8);
+            byte[] data = Arrays.copyOfRange(bodyBytes, 4 + metaLen, bodyLen);
+
+            handler.onRecord(meta, data);
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * 记录处理
+     */
+    public interface RecordHandler {
+        /**
+         * 读到记录
+         */
+        void onRecord(String meta, byte[] data) throws IOException;
+
+        /**
+         * 遇到损坏的记录（已跳过）
+         */
+        default void onCorrupted(int index) {
+
+        }
+    }
+
+    /**
+     * 写入器（缓冲后，经 FileChannel 写入；压缩时，经压缩流写入）
+     */
+    public static class Writer implements Closeable {
+        private final FileOutputStream output;
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        public Writer(File file) throws IOException {
+            this(file, MqSnapshotCompression.none);
+        }
+
+        public Writer(File file, MqSnapshotCompression compression) throws IOException {
+            this.output = new FileOutputStream(file);
+
+            if (compression == MqSnapshotCompression.none) {
+                this.channel = output.getChannel();
+            } else {
+                //边写边压缩（不在内存里攒整个文件）
+                this.channel = Channels.newChannel(compression.compress(new ForceOnCloseOutputStream(output)));
+            }
+
+            buffer.put(MAGIC);
+        }
+
+        /**
+         * 写入记录
+         *
+         * @param meta 元信息
+         * @param data 数据（不改变读取位置）
+         */
+        public void write(String meta, ByteBuffer data) throws IOException {
+            byte[] metaBytes = meta.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer dataBuf = data.duplicate();
+            int dataLen = dataBuf.remaining();
+            int bodyLen = 4 + metaBytes.length + dataLen;
+
+            CRC32 crc32 = new CRC32();
+            crc32.update(ByteBuffer.allocate(4).putInt(0, metaBytes.length).array(), 0, 4);
+            crc32.update(metaBytes, 0, metaBytes.length);
+            crc32.update(dataBuf.duplicate());
+
+            if (buffer.remaining() < 12 + metaBytes.length) {
+                flush();
+            }
+
+            buffer.putInt(bodyLen);
+            buffer.putInt((int) crc32.getValue());
+            buffer.putInt(metaBytes.length);
+
+            if (buffer.remaining() >= metaBytes.length) {
+                buffer.put(metaBytes);
+            } else {
+                //超大元信息，直接写
+                flush();
+                writeFully(ByteBuffer.wrap(metaBytes));
+            }
+
+            if (buffer.remaining() >= dataLen) {
+                buffer.put(dataBuf);
+            } else {
+                //大数据，直接写（不经缓冲）
+                flush();
+                writeFully(dataBuf);
+            }
+        }
+
+        private void flush() throws IOException {
+            //转为 Buffer 调用（兼容 java8 运行时）
+            ((Buffer) buffer).flip();
+            writeFully(buffer);
+            ((Buffer) buffer).clear();
+        }
+
+        private void writeFully(ByteBuffer src) throws IOException {
+            while (src.hasRemaining()) {
+                channel.write(src);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+
+                if (channel instanceof FileChannel) {
+                    ((FileChannel) channel).force(false);
+                }
+            } finally {
+                //压缩流关闭时，会写完尾部并落盘
+                channel.close();
+                output.close();
+            }
+        }
+    }
+
+    /**
+     * 关闭前先落盘的输出流（压缩流关闭时，尾部写完后才落盘）
+     */
+    static class ForceOnCloseOutputStream extends FilterOutputStream {
+        private final FileOutputStream output;
+
+        ForceOnCloseOutputStream(FileOutputStream output) {
+            super(output);
+            this.output = output;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            output.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                output.getChannel().force(false);
+            } finally {
+                output.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.noear.folkmq.broker.watcher;
+
+import org.noear.folkmq.broker.watcher.utils.Lz4InputStream;
+import org.noear.folkmq.broker.watcher.utils.Lz4OutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 快照压缩方式（写入时流式压缩；加载时按文件头自动识别）
+ *
+ * @author noear
+ * @since 1.7
+ */
+public enum MqSnapshotCompression {
+    /**
+     * 不压缩
+     */
+    none,
+    /**
+     * gzip（压缩比高，慢）
+     */
+    gzip,
+    /**
+     * lz4 风格的快速压缩（压缩比一般，快）
+     */
+    lz4;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 包装为压缩输出流
+     */
+    public OutputStream compress(OutputStream out) throws IOException {
+        switch (this) {
+            case gzip:
+                return new GZIPOutputStream(out, BUFFER_SIZE);
+            case lz4:
+                return new Lz4OutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+            default:
+                return out;
+        }
+    }
+
+    /**
+     * 包装为解压输入流（按文件头自动识别；未压缩的原样返回）
+     *
+     * @return 支持 mark 的输入流
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        if (in.markSupported() == false) {
+            in = new BufferedInputStream(in, BUFFER_SIZE);
+        }
+
+        in.mark(4);
+        byte[] head = new byte[4];
+        int len = 0;
+        while (len < head.length) {
+            int n = in.read(head, len, head.length - len);
+            if (n < 0) {
+                break;
+            }
+            len += n;
+        }
+        in.reset();
+
+        if (len >= 2 && (head[0] & 0xFF) == 0x1F && (head[1] & 0xFF) == 0x8B) {
+            return new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+        }
+
+        if (len == 4
+                && head[0] == Lz4OutputStream.MAGIC[0]
+                && head[1] == Lz4OutputStream.MAGIC[1]
+                && head[2] == Lz4OutputStream.MAGIC[2]
+                && head[3] == Lz4OutputStream.MAGIC[3]) {
+            return new BufferedInputStream(new Lz4InputStream(in), BUFFER_SIZE);
+        }
+
+        return in;
+    }
+}
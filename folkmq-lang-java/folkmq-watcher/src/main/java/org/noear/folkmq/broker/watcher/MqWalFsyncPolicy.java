@@ -0,0 +1,22 @@
+package org.noear.folkmq.broker.watcher;
+
+/**
+ * 预写日志刷盘策略
+ *
+ * @author noear
+ * @since 1.7
+ */
+public enum MqWalFsyncPolicy {
+    /**
+     * 每次组提交都刷盘（写入方等待刷盘完成；最可靠）
+     */
+    always,
+    /**
+     * 按时间间隔刷盘（宕机最多丢失一个间隔的数据）
+     */
+    interval,
+    /**
+     * 不主动刷盘，交给操作系统（进程崩溃不丢，宕机可能丢）
+     */
+    os
+}
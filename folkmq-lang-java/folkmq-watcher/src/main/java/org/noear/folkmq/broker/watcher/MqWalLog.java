@@ -0,0 +1,308 @@
+package org.noear.folkmq.broker.watcher;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 预写日志（分段追加写 + 组提交）
+ * <br/>
+ * 写入方只把记录放进缓冲；写线程一次换出整个缓冲，一次写盘、按策略刷盘
+ *
+ * @author noear
+ * @since 1.7
+ */
+class MqWalLog {
+    private static final Logger log = LoggerFactory.getLogger(MqWalLog.class);
+
+    public static final String SEGMENT_SUFFIX = ".wal";
+
+    //文件目录
+    private final File directory;
+    //刷盘策略
+    private final MqWalFsyncPolicy fsyncPolicy;
+    //刷盘间隔（毫秒）
+    private final long fsyncInterval;
+    //分段大小（超出后滚动到新段）
+    private final long segmentSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    //有待写记录
+    private final Condition pendingCondition = lock.newCondition();
+    //有记录落盘
+    private final Condition flushedCondition = lock.newCondition();
+    //待写批次
+    private Batch pending = new Batch();
+    //是否已关闭
+    private boolean closed;
+
+    //段文件操作锁（写线程与滚动互斥）
+    private final Object segmentLock = new Object();
+    private long segmentId;
+    private long segmentBytes;
+    private RandomAccessFile segmentFile;
+    private FileChannel segmentChannel;
+    //最近一次检查点之后写入的字节数
+    private volatile long checkpointBytes;
+    //有未刷盘的数据
+    private volatile boolean dirty;
+    private volatile long forceTime;
+
+    private Thread writeThread;
+
+    public MqWalLog(File directory, long segmentId, MqWalFsyncPolicy fsyncPolicy, long fsyncInterval, long segmentSize) {
+        this.directory = directory;
+        this.segmentId = segmentId;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncInterval = fsyncInterval;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * 段文件名
+     */
+    public static String segmentName(long segmentId, String suffix) {
+        return String.format("%020d", segmentId) + suffix;
+    }
+
+    /**
+     * 段编号（不是段文件时，返回 -1）
+     */
+    public static long segmentIdOf(String fileName, String suffix) {
+        if (fileName.endsWith(suffix) == false) {
+            return -1L;
+        }
+
+        try {
+            return Long.parseLong(fileName.substring(0, fileName.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * 打开
+     */
+    public void open() throws IOException {
+        synchronized (segmentLock) {
+            openSegment(segmentId);
+        }
+
+        writeThread = new Thread(this::writeLoop, "walWriteThread");
+        writeThread.setDaemon(true);
+        writeThread.start();
+    }
+
+    /**
+     * 追加（刷盘策略为 always 时，等待落盘后返回；落盘失败时抛出）
+     */
+    public void append(byte[] record) throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+
+            Batch batch = pending;
+            batch.buf.write(record, 0, record.length);
+            pendingCondition.signal();
+
+            if (fsyncPolicy == MqWalFsyncPolicy.always) {
+                while (batch.done == false) {
+                    flushedCondition.awaitUninterruptibly();
+                }
+
+                if (batch.error != null) {
+                    throw new IOException("Server wal write failed", batch.error);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 最近一次检查点之后写入的字节数
+     */
+    public long checkpointBytes() {
+        return checkpointBytes;
+    }
+
+    /**
+     * 滚动到新段（用于检查点；之后的记录都写到新段）
+     *
+     * @return 新段编号
+     */
+    public long roll() throws IOException {
+        synchronized (segmentLock) {
+            closeSegment();
+            openSegment(segmentId + 1);
+            checkpointBytes = 0;
+            return segmentId;
+        }
+    }
+
+    /**
+     * 关闭（写完缓冲中的记录后）
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            pendingCondition.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        if (writeThread != null) {
+            try {
+                writeThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        lock.lock();
+        try {
+            //写线程意外退出时，未写的批次也要让等待方返回
+            if (pending.done == false && pending.buf.size() > 0) {
+                pending.error = new IOException("Server wal is closed");
+                pending.done = true;
+                flushedCondition.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        synchronized (segmentLock) {
+            try {
+                closeSegment();
+            } catch (IOException e) {
+                log.warn("Server wal close segment failed, segmentId={}", segmentId, e);
+            }
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Batch batch;
+
+            lock.lock();
+            try {
+                while (pending.buf.size() == 0 && closed == false) {
+                    if (dirty && fsyncPolicy == MqWalFsyncPolicy.interval) {
+                        //空闲时，到点也要刷盘
+                        long waitMillis = forceTime + fsyncInterval - System.currentTimeMillis();
+                        if (waitMillis <= 0) {
+                            break;
+                        }
+
+                        pendingCondition.await(waitMillis, TimeUnit.MILLISECONDS);
+                    } else {
+                        pendingCondition.await();
+                    }
+                }
+
+                if (pending.buf.size() == 0 && closed) {
+                    return;
+                }
+
+                batch = pending;
+                pending = new Batch();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            Throwable error = null;
+            try {
+                writeDo(batch.buf);
+            } catch (Throwable e) {
+                //交给等待方（不能当作已落盘）
+                error = e;
+                log.warn("Server wal write failed, segmentId={}", segmentId, e);
+            }
+
+            lock.lock();
+            try {
+                batch.error = error;
+                batch.done = true;
+                flushedCondition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void writeDo(ByteArrayOutputStream buf) throws IOException {
+        synchronized (segmentLock) {
+            if (buf.size() > 0) {
+                ByteBuffer data = ByteBuffer.wrap(buf.toByteArray());
+                while (data.hasRemaining()) {
+                    segmentChannel.write(data);
+                }
+
+                segmentBytes += buf.size();
+                checkpointBytes += buf.size();
+                dirty = true;
+            }
+
+            if (dirty) {
+                long now = System.currentTimeMillis();
+                if (fsyncPolicy == MqWalFsyncPolicy.always
+                        || (fsyncPolicy == MqWalFsyncPolicy.interval && now - forceTime >= fsyncInterval)) {
+                    segmentChannel.force(false);
+                    forceTime = now;
+                    dirty = false;
+                }
+            }
+
+            if (segmentBytes >= segmentSize) {
+                //满了，滚动到新段
+                closeSegment();
+                openSegment(segmentId + 1);
+            }
+        }
+    }
+
+    private void openSegment(long id) throws IOException {
+        segmentId = id;
+        segmentFile = new RandomAccessFile(new File(directory, segmentName(id, SEGMENT_SUFFIX)), "rw");
+        segmentChannel = segmentFile.getChannel();
+        segmentBytes = segmentChannel.size();
+        segmentChannel.position(segmentBytes);
+        forceTime = System.currentTimeMillis();
+    }
+
+    private void closeSegment() throws IOException {
+        if (segmentChannel != null) {
+            segmentChannel.force(false);
+            segmentFile.close();
+
+            segmentChannel = null;
+            segmentFile = null;
+            dirty = false;
+        }
+    }
+
+    /**
+     * 写批次（写线程一次换出；同批的等待方共享落盘结果）
+     */
+    private static class Batch {
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        //是否已写完（成功或失败）
+        boolean done;
+        //写失败的原因
+        Throwable error;
+    }
+}
@@ -0,0 +1,138 @@
+package org.noear.folkmq.broker.watcher;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * 预写日志记录
+ * <br/>
+ * 格式：[bodyLen][crc32] [type] { [fieldLen][field] }
+ *
+ * @author noear
+ * @since 1.7
+ */
+class MqWalRecord {
+    //订阅（topic, consumerGroup）
+    public static final byte TYPE_SUBSCRIBE = 1;
+    //发布（meta, data）；恢复时按订阅关系路由
+    public static final byte TYPE_PUBLISH = 2;
+    //回执（queueName, key）
+    public static final byte TYPE_ACKNOWLEDGE = 3;
+    //取消发布（topic, key）
+    public static final byte TYPE_UNPUBLISH = 4;
+    //入队（queueName, meta, data）；检查点用，直接进指定队列
+    public static final byte TYPE_ENQUEUE = 5;
+
+    //单条记录的最大字节数（超出的视为损坏）
+    private static final int BODY_MAX_BYTES = 256 * 1024 * 1024;
+
+    private final byte type;
+    private final byte[][] fields;
+
+    private MqWalRecord(byte type, byte[][] fields) {
+        this.type = type;
+        this.fields = fields;
+    }
+
+    /**
+     * 类型
+     */
+    public byte type() {
+        return type;
+    }
+
+    /**
+     * 字段（字符串）
+     */
+    public String getString(int index) {
+        return new String(fields[index], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 字段（字节）
+     */
+    public byte[] getBytes(int index) {
+        return fields[index];
+    }
+
+    /**
+     * 编码（字段为 String 或 byte[]）
+     */
+    public static byte[] encode(byte type, Object... fields) {
+        try {
+            ByteArrayOutputStream bodyStream = new ByteArrayOutputStream();
+            DataOutputStream body = new DataOutputStream(bodyStream);
+
+            body.writeByte(type);
+            body.writeByte(fields.length);
+            for (Object field : fields) {
+                byte[] bytes;
+                if (field instanceof byte[]) {
+                    bytes = (byte[]) field;
+                } else {
+                    bytes = String.valueOf(field).getBytes(StandardCharsets.UTF_8);
+                }
+
+                body.writeInt(bytes.length);
+                body.write(bytes);
+            }
+
+            byte[] bodyBytes = bodyStream.toByteArray();
+            CRC32 crc32 = new CRC32();
+            crc32.update(bodyBytes, 0, bodyBytes.length);
+
+            ByteArrayOutputStream recordStream = new ByteArrayOutputStream(bodyBytes.length + 8);
+            DataOutputStream record = new DataOutputStream(recordStream);
+            record.writeInt(bodyBytes.length);
+            record.writeInt((int) crc32.getValue());
+            record.write(bodyBytes);
+
+            return recordStream.toByteArray();
+        } catch (IOException e) {
+            //内存流，不会发生
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 读取（到结尾或遇到不完整、损坏的记录时，返回 null）
+     */
+    public static MqWalRecord read(DataInputStream input) throws IOException {
+        try {
+            int bodyLen = input.readInt();
+            int crc = input.readInt();
+
+            if (bodyLen < 2 || bodyLen > BODY_MAX_BYTES) {
+                return null;
+            }
+
+            byte[] bodyBytes = new byte[bodyLen];
+            input.readFully(bodyBytes);
+
+            CRC32 crc32 = new CRC32();
+            crc32.update(bodyBytes, 0, bodyBytes.length);
+            if ((int) crc32.getValue() != crc) {
+                return null;
+            }
+
+            DataInputStream body = new DataInputStream(new ByteArrayInputStream(bodyBytes));
+            byte type = body.readByte();
+            byte[][] fields = new byte[body.readByte()][];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = new byte[body.readInt()];
+                body.readFully(fields[i]);
+            }
+
+            return new MqWalRecord(type, fields);
+        } catch (EOFException e) {
+            //写了一半（崩溃时的尾部）
+            return null;
+        }
+    }
+}
@@ -97,6 +97,13 @@ public class MqWatcherComposite implements MqWatcher {
         }
     }
 
+    @Override
+    public void onPublishBatch(List<Message> messages) {
+        for (MqWatcher persistent : watcherList) {
+            persistent.onPublishBatch(messages);
+        }
+    }
+
     @Override
     public void onUnPublish(Message message) {
         for (MqWatcher persistent : watcherList) {
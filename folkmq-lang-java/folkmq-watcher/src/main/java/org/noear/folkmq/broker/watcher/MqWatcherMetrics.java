@@ -5,6 +5,8 @@ import org.noear.folkmq.broker.MqMessageHolder;
 import org.noear.folkmq.broker.MqWatcherDefault;
 import org.noear.socketd.transport.core.Message;
 
+import java.util.List;
+
 /**
  * 消息观察者 - 度量（做监控）
  *
@@ -17,6 +19,11 @@ public class MqWatcherMetrics extends MqWatcherDefault {
         Metrics.counter("folkmq.publish.count").increment();
     }
 
+    @Override
+    public void onPublishBatch(List<Message> messages) {
+        Metrics.counter("folkmq.publish.count").increment(messages.size());
+    }
+
     @Override
     public void onAcknowledge(String topic, String consumerGroup, MqMessageHolder messageHolder, boolean isOk) {
         if (isOk) {
@@ -11,15 +11,25 @@ import org.noear.snack.core.Options;
 import org.noear.socketd.transport.core.Entity;
 import org.noear.socketd.transport.core.Flags;
 import org.noear.socketd.transport.core.Message;
+import org.noear.socketd.transport.core.Session;
 import org.noear.socketd.transport.core.entity.EntityDefault;
 import org.noear.socketd.transport.core.entity.MessageBuilder;
+import org.noear.socketd.utils.NamedThreadFactory;
+import org.noear.socketd.utils.RunUtils;
 import org.noear.socketd.utils.StrUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -40,9 +50,36 @@ public class MqWatcherSnapshot extends MqWatcherDefault {
 
     //正在保持中
     private final AtomicBoolean inSaveProcess = new AtomicBoolean(false);
+    //保存中又有保存请求（当前保存结束后，再来一轮）
+    private final AtomicBoolean inSaveRequested = new AtomicBoolean(false);
     //是否已启动
     private final AtomicBoolean isStarted = new AtomicBoolean(false);
 
+    //有变化的队列（只保存有变化的）
+    private final Set<String> dirtyQueueNames = ConcurrentHashMap.newKeySet();
+    //有发布或取消发布的主题（保存时，展开为主题下的队列）
+    private final Set<String> dirtyTopics = ConcurrentHashMap.newKeySet();
+    //队列上次保存时的消息数（有变化的，也要保存）
+    private final Map<String, Integer> savedTotalMap = new ConcurrentHashMap<>();
+
+    //保存格式版本（3 为二进制；2 为 json 行，用于降级兼容）
+    private int formatVersion = MqSnapshotBinary.VERSION;
+
+    //未加载完成的队列（队列名=>是否加载中）；保存时跳过，避免盖掉未加载的文件
+    private final Map<String, Boolean> unloadedQueueMap = new ConcurrentHashMap<>();
+    //是否延后加载队列（先加载订阅关系，端口打开后再在后台加载队列）
+    private boolean lazyLoad = false;
+
+    //队列文件压缩方式
+    private MqSnapshotCompression compression = MqSnapshotCompression.none;
+
+    //恢复线程数
+    private int loadThreads = Runtime.getRuntime().availableProcessors();
+    //保存线程数
+    private int saveThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
+    //保存线程池
+    private ExecutorService saveExecutor;
+
     public MqWatcherSnapshot() {
         this(null);
     }
@@ -83,6 +120,61 @@ public class MqWatcherSnapshot extends MqWatcherDefault {
         return inSaveProcess.get();
     }
 
+    /**
+     * 配置保存格式版本（默认为 3，二进制；2 为 json 行。加载时自动识别）
+     */
+    public MqWatcherSnapshot formatVersion(int formatVersion) {
+        if (formatVersion != 2 && formatVersion != MqSnapshotBinary.VERSION) {
+            throw new IllegalArgumentException("Unsupported snapshot format version: " + formatVersion);
+        }
+
+        this.formatVersion = formatVersion;
+        return this;
+    }
+
+    /**
+     * 配置是否延后加载队列（默认为 false）
+     * <br/>
+     * 启用后，启动时只加载订阅关系，端口打开后队列在后台加载；消费者订阅时，优先加载该队列
+     */
+    public MqWatcherSnapshot lazyLoad(boolean lazyLoad) {
+        this.lazyLoad = lazyLoad;
+        return this;
+    }
+
+    /**
+     * 队列是否已加载完成
+     */
+    public boolean isQueueLoaded(String queueName) {
+        return unloadedQueueMap.containsKey(queueName) == false;
+    }
+
+    /**
+     * 配置队列文件压缩方式（默认为 none；加载时自动识别）
+     */
+    public MqWatcherSnapshot compression(MqSnapshotCompression compression) {
+        if (compression != null) {
+            this.compression = compression;
+        }
+        return this;
+    }
+
+    /**
+     * 配置恢复线程数（默认为 cpus）
+     */
+    public MqWatcherSnapshot loadThreads(int loadThreads) {
+        this.loadThreads = Math.max(loadThreads, 1);
+        return this;
+    }
+
+    /**
+     * 配置保存线程数（默认为 min(4, cpus)；启动前有效）
+     */
+    public MqWatcherSnapshot saveThreads(int saveThreads) {
+        this.saveThreads = Math.max(saveThreads, 1);
+        return this;
+    }
+
     @Override
     public void init(MqBorkerInternal serverInternal) {
         this.serverRef = serverInternal;
@@ -102,7 +194,47 @@ public class MqWatcherSnapshot extends MqWatcherDefault {
 
     @Override
     public void onStartAfter() {
+        if (unloadedQueueMap.size() > 0) {
+            //延后加载（端口已打开，在后台加载）
+            RunUtils.async(this::loadQueueAll);
+        }
+    }
 
+    @Override
+    public void onSubscribe(String topic, String consumerGroup, Session session) {
+        String queueName = topic + MqConstants.SEPARATOR_TOPIC_CONSUMER_GROUP + consumerGroup;
+
+        //新队列要有文件
+        dirtyQueueNames.add(queueName);
+
+        if (session != null && unloadedQueueMap.containsKey(queueName)) {
+            //延后加载时，有消费者了，优先加载该队列
+            loadQueueClaimed(queueName);
+        }
+    }
+
+    @Override
+    public void onPublish(Message message) {
+        dirtyTopics.add(MqUtils.getOf(message).getTopic(message));
+    }
+
+    @Override
+    public void onUnPublish(Message message) {
+        String topic = message.meta(MqConstants.MQ_META_TOPIC);
+        if (topic != null) {
+            dirtyTopics.add(topic);
+        }
+    }
+
+    @Override
+    public void onDistribute(String topic, String consumerGroup, MqMessageHolder messageHolder) {
+        //派发会改变次数与下次时间
+        dirtyQueueNames.add(topic + MqConstants.SEPARATOR_TOPIC_CONSUMER_GROUP + consumerGroup);
+    }
+
+    @Override
+    public void onAcknowledge(String topic, String consumerGroup, MqMessageHolder messageHolder, boolean isOk) {
+        dirtyQueueNames.add(topic + MqConstants.SEPARATOR_TOPIC_CONSUMER_GROUP + consumerGroup);
     }
 
     /**
@@ -198,24 +330,108 @@ public class MqWatcherSnapshot extends MqWatcherDefault {
         }
 
         for (String queueName : queueNameSet) {
-            try {
-                loadQueue1(queueName);
+            unloadedQueueMap.put(queueName, false);
+        }
 
-                log.info("Server persistent load messageQueue completed, queueName={}", queueName);
-            } catch (Exception e) {
-                log.warn("Server persistent load messageQueue failed, queueName={}", queueName, e);
+        if (lazyLoad == false) {
+            loadQueueAll();
+        }
+    }
+
+    /**
+     * 加载所有未加载的队列（一个队列一个任务，并行恢复）
+     */
+    private void loadQueueAll() {
+        List<String> queueNameList = new ArrayList<>(unloadedQueueMap.keySet());
+
+        long startTime = System.currentTimeMillis();
+        ForkJoinPool loadPool = new ForkJoinPool(loadThreads);
+
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(queueNameList.size());
+            for (String queueName : queueNameList) {
+                tasks.add(loadPool.submit(() -> loadQueueClaimed(queueName)));
+            }
+
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
             }
+        } finally {
+            loadPool.shutdown();
+        }
+
+        log.info("Server persistent loadQueue completed, queues={}, elapsed={}ms",
+                queueNameList.size(),
+                System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 加载一个队列（先认领，确保只加载一次）
+     */
+    private void loadQueueClaimed(String queueName) {
+        if (unloadedQueueMap.replace(queueName, false, true) == false) {
+            //已加载或加载中
+            return;
+        }
+
+        long queueStartTime = System.currentTimeMillis();
+
+        try {
+            int count = loadQueue1(queueName);
+
+            log.info("Server persistent load messageQueue completed, queueName={}, count={}, elapsed={}ms",
+                    queueName,
+                    count,
+                    System.currentTimeMillis() - queueStartTime);
+        } catch (Exception e) {
+            log.warn("Server persistent load messageQueue failed, queueName={}", queueName, e);
+        } finally {
+            unloadedQueueMap.remove(queueName);
         }
     }
 
-    private boolean loadQueue1(String queueName) throws IOException {
+    /**
+     * 加载一个队列（先全部解析，再批量入队）
+     *
+     * @return 加载的消息数
+     */
+    private int loadQueue1(String queueName) throws IOException {
         String queueFileName = queueName.replace(MqConstants.SEPARATOR_TOPIC_CONSUMER_GROUP, "/") + file_suffix;
         File queueFile = new File(directory, queueFileName);
         if (queueFile.exists() == false) {
-            return false;
+            return 0;
         }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(queueFile))) {
+        List<MqDraft> drafts = new ArrayList<>();
+        loadQueueFile(queueName, queueFile, drafts);
+
+        MqQueue queue = serverRef.getQueue(queueName);
+        serverRef.routingToQueueBatchDo(drafts, queue);
+
+        return drafts.size();
+    }
+
+    private void loadQueueFile(String queueName, File queueFile, List<MqDraft> drafts) throws IOException {
+        //按文件头自动识别压缩
+        try (InputStream input = MqSnapshotCompression.decompress(new FileInputStream(queueFile))) {
+            if (MqSnapshotBinary.isBinary(input)) {
+                //v3 二进制
+                MqSnapshotBinary.read(input, new MqSnapshotBinary.RecordHandler() {
+                    @Override
+                    public void onRecord(String meta, byte[] data) {
+                        loadMessage(drafts, meta, data);
+                    }
+
+                    @Override
+                    public void onCorrupted(int index) {
+                        log.warn("Server persistent load message corrupted, queueName={}, index={}", queueName, index);
+                    }
+                });
+
+                return;
+            }
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(input));
             while (true) {
                 //一行行读取（避免大 json 坏掉后，全坏了）//也比较省内存
                 String messageJsonStr = reader.readLine();
@@ -235,31 +451,30 @@ public class MqWatcherSnapshot extends MqWatcherDefault {
                         continue;
                     }
 
-                    EntityDefault entity = new EntityDefault();
                     if (ver < 2) {
                         //旧版用 string
-                        entity.dataSet(data.getBytes(StandardCharsets.UTF_8));
+                        loadMessage(drafts, metaString, data.getBytes(StandardCharsets.UTF_8));
                     } else {
                         //新版用 base64 支持二进制
-                        entity.dataSet(Base64.getDecoder().decode(data));
+                        loadMessage(drafts, metaString, Base64.getDecoder().decode(data));
                     }
-                    entity.metaStringSet(metaString);
-                    Message message = new MessageBuilder()
-                            .sid(StrUtils.guid())
-                            .flag(Flags.Message)
-                            .entity(entity)
-                            .build();
-
-                    MqMetasResolver mr = MqUtils.getOf(message);
-                    MqDraft draft = new MqDraft(mr, message);
-
-                    MqQueue queue = serverRef.getQueue(queueName);
-                    serverRef.routingToQueueDo(draft, queue);
                 }
             }
         }
+    }
 
-        return true;
+    private void loadMessage(List<MqDraft> drafts, String metaString, byte[] data) {
+        EntityDefault entity = new EntityDefault();
+        entity.dataSet(data);
+        entity.metaStringSet(metaString);
+        Message message = new MessageBuilder()
+                .sid(StrUtils.guid())
+                .flag(Flags.Message)
+                .entity(entity)
+                .build();
+
+        MqMetasResolver mr = MqUtils.getOf(message);
+        drafts.add(new MqDraft(mr, message));
     }
 
 
@@ -269,6 +484,11 @@ public class MqWatcherSnapshot extends MqWatcherDefault {
     public void onStopAfter() {
         saveDo();
         isStarted.set(false);
+
+        if (saveExecutor != null) {
+            saveExecutor.shutdown();
+            saveExecutor = null;
+        }
     }
 
     @Override
@@ -282,17 +502,22 @@ public class MqWatcherSnapshot extends MqWatcherDefault {
             return;
         }
 
-        if (inSaveProcess.get()) {
-            return;
-        } else {
-            inSaveProcess.set(true);
-        }
+        inSaveRequested.set(true);
 
-        try {
-            saveSubscribeMap();
-            saveQueue();
-        } finally {
-            inSaveProcess.set(false);
+        while (inSaveRequested.get()) {
+            if (inSaveProcess.compareAndSet(false, true) == false) {
+                //正在保存的，结束后会再来一轮
+                return;
+            }
+
+            try {
+                inSaveRequested.set(false);
+
+                saveSubscribeMap();
+                saveQueue();
+            } finally {
+                inSaveProcess.set(false);
+            }
         }
     }
 
@@ -347,7 +572,7 @@ public class MqWatcherSnapshot extends MqWatcherDefault {
     }
 
     /**
-     * 保存主题消费队列记录（确保线程安全）
+     * 保存主题消费队列记录（确保线程安全；只保存有变化的队列）
      */
     private void saveQueue() {
         Map<String, Set<String>> subscribeMap = serverRef.getSubscribeMap();
@@ -355,33 +580,136 @@ public class MqWatcherSnapshot extends MqWatcherDefault {
             return;
         }
 
-        Iterator<Map.Entry<String, Set<String>>> subscribeIterator = subscribeMap.entrySet().iterator();
+        //有发布的主题，展开为主题路由到的队列（含通配订阅的队列）
+        for (String topic : drain(dirtyTopics)) {
+            for (MqQueue queue : serverRef.getRoutingQueues(topic)) {
+                dirtyQueueNames.add(queue.getQueueName());
+            }
+        }
 
-        Set<String> queueNameSet = new HashSet<>();
-        while (subscribeIterator.hasNext()) {
-            Map.Entry<String, Set<String>> kv = subscribeIterator.next();
-            if (kv.getValue() != null) {
-                queueNameSet.addAll(kv.getValue());
+        for (MqQueue queue : serverRef.getQueueMap().values()) {
+            if (isQueueLoaded(queue.getQueueName()) == false) {
+                continue;
+            }
+
+            int total = queue.messageTotal();
+            Integer totalLast = savedTotalMap.get(queue.getQueueName());
+            boolean changed = (totalLast == null || totalLast != total);
+
+            if (changed) {
+                //数量有变化（管理端清空、过期移除等，不经过观察者）
+                dirtyQueueNames.add(queue.getQueueName());
+            }
+
+            if (queue.isTransaction() && (changed || total > 0)) {
+                //事务队列有变化，同主题的队列也要保存（提交的消息，直接路由进队列）
+                dirtyQueueNames.add(queue.getQueueName());
+
+                for (MqQueue topicQueue : serverRef.getRoutingQueues(queue.getTopic())) {
+                    dirtyQueueNames.add(topicQueue.getQueueName());
+                }
             }
         }
 
-        Iterator<Map.Entry<String, MqQueue>> queueIterator = serverRef.getQueueMap().entrySet().iterator();
+        //先取出再保存（保存期间的变化，留给下一轮）
+        Set<String> queueNameSet = drain(dirtyQueueNames);
+        if (queueNameSet.size() == 0) {
+            return;
+        }
 
-        while (queueIterator.hasNext()) {
-            Map.Entry<String, MqQueue> kv = queueIterator.next();
-            String queueName = kv.getKey();
-            MqQueue queue = kv.getValue();
+        long startTime = System.currentTimeMillis();
+        List<Future<?>> futures = new ArrayList<>(queueNameSet.size());
 
-            try {
-                saveQueue1(queueName, (MqQueueDefault) queue);
+        for (String queueName : queueNameSet) {
+            MqQueue queue = serverRef.getQueue(queueName);
+            if (queue == null) {
+                continue;
+            }
+
+            if (isQueueLoaded(queueName) == false) {
+                //未加载完成（不可保存，否则会盖掉未加载的数据）；留给下一轮
+                dirtyQueueNames.add(queueName);
+                continue;
+            }
+
+            futures.add(getSaveExecutor().submit(() -> {
+                long queueStartTime = System.currentTimeMillis();
+
+                try {
+                    savedTotalMap.put(queueName, queue.messageTotal());
+                    saveQueue1(queueName, (MqQueueDefault) queue);
+
+                    log.info("Server persistent messageQueue completed, queueName={}, elapsed={}ms",
+                            queueName,
+                            System.currentTimeMillis() - queueStartTime);
+                } catch (Exception e) {
+                    //下一轮再试
+                    dirtyQueueNames.add(queueName);
 
-                log.info("Server persistent messageQueue completed, queueName={}", queueName);
+                    log.warn("Server persistent messageQueue failed, queueName={}", queueName, e);
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
             } catch (Exception e) {
-                log.warn("Server persistent messageQueue failed, queueName={}", queueName, e);
+                log.warn("Server persistent messageQueue wait failed", e);
+            }
+        }
+
+        log.info("Server persistent saveQueue completed, queues={}, elapsed={}ms",
+                futures.size(),
+                System.currentTimeMillis() - startTime);
+    }
+
+    private synchronized ExecutorService getSaveExecutor() {
+        if (saveExecutor == null) {
+            saveExecutor = Executors.newFixedThreadPool(saveThreads, new NamedThreadFactory("folkmq-snapshot-").daemon(true));
+        }
+
+        return saveExecutor;
+    }
+
+    /**
+     * 获取未完成的消息（按派发顺序；恢复时按文件顺序入队，同一时间的消息才不会乱序）
+     */
+    static List<MqMessageHolder> messageListSorted(MqQueueDefault queue) {
+        //先取出排序键（派发时间与顺序位可能在变，排序期间不能再读）
+        List<long[]> keyList = new ArrayList<>();
+        List<MqMessageHolder> holderList = new ArrayList<>();
+
+        for (MqMessageHolder messageHolder : queue.getMessageMap().values()) {
+            if (messageHolder.isDone()) {
+                continue;
             }
+
+            keyList.add(new long[]{messageHolder.getDistributeTime(), messageHolder.getDistributeIdx(), holderList.size()});
+            holderList.add(messageHolder);
+        }
+
+        keyList.sort((a, b) -> {
+            int rst = Long.compare(a[0], b[0]);
+            return rst != 0 ? rst : Long.compare(a[1], b[1]);
+        });
+
+        List<MqMessageHolder> sortedList = new ArrayList<>(holderList.size());
+        for (long[] key : keyList) {
+            sortedList.add(holderList.get((int) key[2]));
         }
 
-        log.info("Server persistent saveQueue completed");
+        return sortedList;
+    }
+
+    private static Set<String> drain(Set<String> source) {
+        Set<String> target = new HashSet<>();
+        Iterator<String> iterator = source.iterator();
+        while (iterator.hasNext()) {
+            target.add(iterator.next());
+            iterator.remove();
+        }
+        return target;
     }
 
     private void saveQueue1(String queueName, MqQueueDefault queue) throws IOException {
@@ -400,19 +728,30 @@ public class MqWatcherSnapshot extends MqWatcherDefault {
         }
 
 
-        if (queue != null) {
-            Iterator<Map.Entry<String, MqMessageHolder>> messageIterator = queue.getMessageMap().entrySet().iterator();
+        if (formatVersion == MqSnapshotBinary.VERSION) {
+            //v3 二进制
+            try (MqSnapshotBinary.Writer writer = new MqSnapshotBinary.Writer(queueFileTmp, compression)) {
+                if (queue != null) {
+                    for (MqMessageHolder messageHolder : messageListSorted(queue)) {
+                        Entity entity = messageHolder.getMessageEntity();
+                        ByteBuffer data = entity.data();
+                        if (data.hasArray()) {
+                            //与 dataAsBytes() 一致（堆上的取整个数组）；堆外的（消息体存储）不用复制
+                            data = ByteBuffer.wrap(data.array());
+                        }
 
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(queueFileTmp))) {
-                while (messageIterator.hasNext()) {
-                    Map.Entry<String, MqMessageHolder> kv = messageIterator.next();
-                    MqMessageHolder messageHolder = kv.getValue();
-                    if (messageHolder.isDone()) {
-                        continue;
+                        writer.write(entity.metaString(), data);
                     }
+                }
+            }
 
+            //备份
+            saveCommit(queueFileTmp, queueFileName);
+        } else if (queue != null) {
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(compression.compress(new FileOutputStream(queueFileTmp))))) {
+                for (MqMessageHolder messageHolder : messageListSorted(queue)) {
                     try {
-                        Entity entity = messageHolder.getEntity();
+                        Entity entity = messageHolder.getMessageEntity();
                         ONode entityJson = new ONode(Options.def().add(Feature.DisThreadLocal));
                         entityJson.set("v", 2); //ver
                         entityJson.set("meta", entity.metaString());
@@ -441,12 +780,10 @@ public class MqWatcherSnapshot extends MqWatcherDefault {
      * 读取快照文件
      */
     private static String readSnapshotFile(File file) throws IOException {
-        try (InputStream input = new FileInputStream(file)) {
+        //解压（按文件头自动识别）
+        try (InputStream input = MqSnapshotCompression.decompress(new FileInputStream(file))) {
             byte[] bytes = IoUtils.transferToBytes(input);
-
-            //解压
-            byte[] contentBytes = bytes;
-            return new String(contentBytes, StandardCharsets.UTF_8);
+            return new String(bytes, StandardCharsets.UTF_8);
         }
     }
 
@@ -6,6 +6,7 @@ import org.noear.socketd.transport.core.Message;
 import org.noear.socketd.transport.core.Session;
 import org.noear.socketd.utils.RunUtils;
 
+import java.util.List;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.LongAdder;
 
@@ -155,6 +156,14 @@ public class MqWatcherSnapshotPlus extends MqWatcherSnapshot {
         onChange();
     }
 
+    @Override
+    public void onPublishBatch(List<Message> messages) {
+        for (Message message : messages) {
+            super.onPublish(message);
+        }
+        onChange(messages.size());
+    }
+
     @Override
     public void onAcknowledge(String topic, String consumerGroup, MqMessageHolder messageHolder, boolean isOk) {
         super.onAcknowledge(topic, consumerGroup, messageHolder, isOk);
@@ -167,4 +176,11 @@ public class MqWatcherSnapshotPlus extends MqWatcherSnapshot {
         save300Count.increment();
         save100Count.increment();
     }
+
+    private void onChange(int count) {
+        //记数
+        save900Count.add(count);
+        save300Count.add(count);
+        save100Count.add(count);
+    }
 }
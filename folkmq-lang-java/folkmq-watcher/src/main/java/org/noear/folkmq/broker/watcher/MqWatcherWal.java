@@ -0,0 +1,482 @@
+package org.noear.folkmq.broker.watcher;
+
+import org.noear.folkmq.broker.*;
+import org.noear.folkmq.common.MqConstants;
+import org.noear.folkmq.exception.FolkmqException;
+import org.noear.folkmq.common.MqMetasResolver;
+import org.noear.folkmq.common.MqUtils;
+import org.noear.socketd.transport.core.Entity;
+import org.noear.socketd.transport.core.Flags;
+import org.noear.socketd.transport.core.Message;
+import org.noear.socketd.transport.core.Session;
+import org.noear.socketd.transport.core.entity.EntityDefault;
+import org.noear.socketd.transport.core.entity.MessageBuilder;
+import org.noear.socketd.utils.StrUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 消息观察者 - 预写日志持久化（实现持久化）
+ * <br/>
+ * 发布、回执、取消发布、订阅，以二进制记录追加到分段日志（组提交，刷盘策略可选）；启动时重放。
+ * 日志累积到一定大小后，在后台生成检查点（当前的订阅关系与待派发消息），并删除之前的段。
+ * 事务消息（半消息及其提交）不经过观察者，由检查点持久化
+ *
+ * @author noear
+ * @since 1.7
+ */
+public class MqWatcherWal extends MqWatcherDefault {
+    protected static final Logger log = LoggerFactory.getLogger(MqWatcherWal.class);
+    private static final String checkpoint_suffix = ".ckp";
+
+    //服务端引用
+    private MqBorkerInternal serverRef;
+
+    //文件目录
+    private final File directory;
+
+    //刷盘策略
+    private MqWalFsyncPolicy fsyncPolicy = MqWalFsyncPolicy.interval;
+    //刷盘间隔（毫秒）
+    private long fsyncInterval = 1000L;
+    //分段大小
+    private long segmentSize = 64L * 1024 * 1024;
+    //压缩阈值（检查点之后的日志字节数）
+    private long compactSize = 256L * 1024 * 1024;
+
+    //日志
+    private MqWalLog walLog;
+    //压缩调度（独立线程，不占用共享调度器）
+    private ScheduledExecutorService compactExecutor;
+
+    //正在压缩中
+    private final AtomicBoolean inCompactProcess = new AtomicBoolean(false);
+    //是否已启动
+    private final AtomicBoolean isStarted = new AtomicBoolean(false);
+
+    public MqWatcherWal() {
+        this(null);
+    }
+
+    public MqWatcherWal(String dataPath) {
+        if (StrUtils.isEmpty(dataPath)) {
+            dataPath = "./data/wal/";
+        }
+
+        this.directory = new File(dataPath);
+
+        if (this.directory.exists() == false) {
+            this.directory.mkdirs();
+        }
+    }
+
+    /**
+     * 配置刷盘策略（默认为 interval；启动前有效）
+     */
+    public MqWatcherWal fsyncPolicy(MqWalFsyncPolicy fsyncPolicy) {
+        if (fsyncPolicy != null) {
+            this.fsyncPolicy = fsyncPolicy;
+        }
+        return this;
+    }
+
+    /**
+     * 配置刷盘间隔（默认为 1000 毫秒；启动前有效）
+     */
+    public MqWatcherWal fsyncInterval(long fsyncInterval) {
+        this.fsyncInterval = Math.max(fsyncInterval, 1L);
+        return this;
+    }
+
+    /**
+     * 配置分段大小（默认为 64MB；启动前有效）
+     */
+    public MqWatcherWal segmentSize(long segmentSize) {
+        this.segmentSize = Math.max(segmentSize, 1024L);
+        return this;
+    }
+
+    /**
+     * 配置压缩阈值（默认为 256MB；检查点之后的日志超出后，生成新的检查点）
+     */
+    public MqWatcherWal compactSize(long compactSize) {
+        this.compactSize = Math.max(compactSize, 1024L);
+        return this;
+    }
+
+    public boolean inCompactProcess() {
+        return inCompactProcess.get();
+    }
+
+    @Override
+    public void init(MqBorkerInternal serverInternal) {
+        this.serverRef = serverInternal;
+    }
+
+    @Override
+    public void onStartBefore() {
+        isStarted.set(false);
+
+        try {
+            long segmentId = replay();
+
+            //总是写新段（旧段的尾部可能不完整）
+            walLog = new MqWalLog(directory, segmentId + 1, fsyncPolicy, fsyncInterval, segmentSize);
+            walLog.open();
+
+            compactExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "walCompactThread");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactExecutor.scheduleWithFixedDelay(this::onCompact, 10_000, 10_000, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException("Server wal open failed", e);
+        } finally {
+            isStarted.set(true);
+        }
+    }
+
+    @Override
+    public void onStopAfter() {
+        if (compactExecutor != null) {
+            //不中断进行中的压缩（会关掉段文件的通道），等它完成
+            compactExecutor.shutdown();
+            try {
+                compactExecutor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            compactExecutor = null;
+        }
+
+        compactDo();
+        isStarted.set(false);
+
+        if (walLog != null) {
+            walLog.close();
+            walLog = null;
+        }
+    }
+
+    @Override
+    public void onSave() {
+        compactDo();
+    }
+
+    @Override
+    public void onSubscribe(String topic, String consumerGroup, Session session) {
+        String queueName = topic + MqConstants.SEPARATOR_TOPIC_CONSUMER_GROUP + consumerGroup;
+        if (serverRef.getQueue(queueName) != null) {
+            //已有的队列（订阅关系已在日志或检查点里）
+            return;
+        }
+
+        append(MqWalRecord.encode(MqWalRecord.TYPE_SUBSCRIBE, topic, consumerGroup));
+    }
+
+    @Override
+    public void onPublish(Message message) {
+        append(publishRecord(message));
+    }
+
+    @Override
+    public void onPublishBatch(List<Message> messages) {
+        //一批记录，一次追加
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (Message message : messages) {
+            byte[] record = publishRecord(message);
+            records.write(record, 0, record.length);
+        }
+
+        append(records.toByteArray());
+    }
+
+    @Override
+    public void onUnPublish(Message message) {
+        String key = message.meta(MqConstants.MQ_META_KEY);
+        String topic = message.meta(MqConstants.MQ_META_TOPIC);
+
+        if (StrUtils.isNotEmpty(key) && StrUtils.isNotEmpty(topic)) {
+            append(MqWalRecord.encode(MqWalRecord.TYPE_UNPUBLISH, topic, key));
+        }
+    }
+
+    @Override
+    public void onAcknowledge(String topic, String consumerGroup, MqMessageHolder messageHolder, boolean isOk) {
+        if (isOk) {
+            String queueName = topic + MqConstants.SEPARATOR_TOPIC_CONSUMER_GROUP + consumerGroup;
+            append(MqWalRecord.encode(MqWalRecord.TYPE_ACKNOWLEDGE, queueName, messageHolder.getKey()));
+        }
+    }
+
+    private byte[] publishRecord(Message message) {
+        return MqWalRecord.encode(MqWalRecord.TYPE_PUBLISH, message.metaString(), message.dataAsBytes());
+    }
+
+    private void append(byte[] record) {
+        MqWalLog walLogRef = walLog;
+        if (isStarted.get() && walLogRef != null) {
+            try {
+                walLogRef.append(record);
+            } catch (IOException e) {
+                //落盘失败，不能当作已持久化（发布不确认，回执不完成）
+                throw new FolkmqException(e);
+            }
+        }
+    }
+
+    //////////////////////////////////////////
+
+    /**
+     * 重放（最近的检查点 + 之后的段）
+     *
+     * @return 最大的段编号
+     */
+    private long replay() {
+        long checkpointId = -1L;
+        long segmentIdMax = 0L;
+
+        for (File file : listSorted(checkpoint_suffix)) {
+            checkpointId = MqWalLog.segmentIdOf(file.getName(), checkpoint_suffix);
+        }
+
+        if (checkpointId > 0) {
+            replayFile(new File(directory, MqWalLog.segmentName(checkpointId, checkpoint_suffix)));
+            segmentIdMax = checkpointId;
+        }
+
+        for (File file : listSorted(MqWalLog.SEGMENT_SUFFIX)) {
+            long segmentId = MqWalLog.segmentIdOf(file.getName(), MqWalLog.SEGMENT_SUFFIX);
+            if (segmentId >= checkpointId) {
+                replayFile(file);
+            }
+
+            segmentIdMax = Math.max(segmentIdMax, segmentId);
+        }
+
+        return segmentIdMax;
+    }
+
+    private void replayFile(File file) {
+        int count = 0;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            MqWalRecord record;
+            while ((record = MqWalRecord.read(input)) != null) {
+                try {
+                    replayRecord(record);
+                    count++;
+                } catch (Exception e) {
+                    log.warn("Server wal replay record failed, file={}, type={}", file.getName(), record.type(), e);
+                }
+            }
+
+            log.info("Server wal replay completed, file={}, records={}", file.getName(), count);
+        } catch (Exception e) {
+            log.warn("Server wal replay failed, file={}, records={}", file.getName(), count, e);
+        }
+    }
+
+    private void replayRecord(MqWalRecord record) {
+        switch (record.type()) {
+            case MqWalRecord.TYPE_SUBSCRIBE: {
+                serverRef.subscribeDo(record.getString(0), record.getString(1), null);
+                break;
+            }
+            case MqWalRecord.TYPE_PUBLISH: {
+                MqDraft draft = draftOf(record.getString(0), record.getBytes(1));
+
+                //含通配订阅的队列
+                for (MqQueue queue : serverRef.getRoutingQueues(draft.topic)) {
+                    if (queue.isTransaction()) {
+                        continue;
+                    }
+
+                    routingToQueueIfAbsent(draft, queue);
+                }
+                break;
+            }
+            case MqWalRecord.TYPE_ENQUEUE: {
+                String queueName = record.getString(0);
+                MqQueue queue = serverRef.getQueue(queueName);
+                if (queue == null) {
+                    String[] topicConsumerGroupAry = queueName.split(MqConstants.SEPARATOR_TOPIC_CONSUMER_GROUP);
+                    serverRef.subscribeDo(topicConsumerGroupAry[0], topicConsumerGroupAry[1], null);
+                    queue = serverRef.getQueue(queueName);
+                }
+
+                routingToQueueIfAbsent(draftOf(record.getString(1), record.getBytes(2)), queue);
+                break;
+            }
+            case MqWalRecord.TYPE_ACKNOWLEDGE: {
+                MqQueue queue = serverRef.getQueue(record.getString(0));
+                if (queue != null) {
+                    queue.removeAt(record.getString(1));
+                }
+                break;
+            }
+            case MqWalRecord.TYPE_UNPUBLISH: {
+                for (MqQueue queue : serverRef.getRoutingQueues(record.getString(0))) {
+                    queue.removeAt(record.getString(1));
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * 路由到队列（已有的跳过；检查点与之后的段可能有重叠）
+     */
+    private void routingToQueueIfAbsent(MqDraft draft, MqQueue queue) {
+        if (queue instanceof MqQueueDefault) {
+            if (((MqQueueDefault) queue).getMessageMap().containsKey(draft.key)) {
+                return;
+            }
+        }
+
+        serverRef.routingToQueueDo(draft, queue);
+    }
+
+    private MqDraft draftOf(String metaString, byte[] data) {
+        EntityDefault entity = new EntityDefault();
+        entity.dataSet(data);
+        entity.metaStringSet(metaString);
+
+        Message message = new MessageBuilder()
+                .sid(StrUtils.guid())
+                .flag(Flags.Message)
+                .entity(entity)
+                .build();
+
+        MqMetasResolver mr = MqUtils.getOf(message);
+        return new MqDraft(mr, message);
+    }
+
+    //////////////////////////////////////////
+
+    private void onCompact() {
+        MqWalLog walLogRef = walLog;
+        if (walLogRef != null && walLogRef.checkpointBytes() >= compactSize) {
+            compactDo();
+        }
+    }
+
+    /**
+     * 压缩（生成检查点，并删除之前的段）
+     */
+    private void compactDo() {
+        MqWalLog walLogRef = walLog;
+        if (isStarted.get() == false || walLogRef == null) {
+            //未加载完成（不可压缩，否则会丢掉加载中的数据）
+            return;
+        }
+
+        if (inCompactProcess.compareAndSet(false, true) == false) {
+            return;
+        }
+
+        try {
+            //之后的记录都写到新段
+            long segmentId = walLogRef.roll();
+
+            //保留上一段（发布观察先于路由，刚写入的发布可能还未入队；重放时已有的会跳过）
+            long checkpointId = segmentId - 1;
+            String checkpointFileName = MqWalLog.segmentName(checkpointId, checkpoint_suffix);
+            File checkpointFileTmp = new File(directory, checkpointFileName + ".tmp");
+
+            saveCheckpoint(checkpointFileTmp);
+
+            //换上新检查点（失败时抛出；之前的段与检查点都保留，下次再压缩）
+            File checkpointFile = new File(directory, checkpointFileName);
+            try {
+                checkpointMove(checkpointFileTmp, checkpointFile);
+            } catch (IOException e) {
+                checkpointFileTmp.delete();
+                throw e;
+            }
+
+            //新检查点已就位，再删除之前的段与检查点
+            for (File file : listSorted(MqWalLog.SEGMENT_SUFFIX)) {
+                if (MqWalLog.segmentIdOf(file.getName(), MqWalLog.SEGMENT_SUFFIX) < checkpointId) {
+                    file.delete();
+                }
+            }
+
+            for (File file : listSorted(checkpoint_suffix)) {
+                if (MqWalLog.segmentIdOf(file.getName(), checkpoint_suffix) < checkpointId) {
+                    file.delete();
+                }
+            }
+
+            log.info("Server wal compact completed, checkpointId={}", checkpointId);
+        } catch (Exception e) {
+            log.warn("Server wal compact failed", e);
+        } finally {
+            inCompactProcess.set(false);
+        }
+    }
+
+    private void checkpointMove(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void saveCheckpoint(File file) throws IOException {
+        try (FileOutputStream fileOut = new FileOutputStream(file);
+             BufferedOutputStream out = new BufferedOutputStream(fileOut)) {
+
+            //订阅关系
+            for (Map.Entry<String, Set<String>> kv : serverRef.getSubscribeMap().entrySet()) {
+                for (String queueName : new ArrayList<>(kv.getValue())) {
+                    String[] topicConsumerGroupAry = queueName.split(MqConstants.SEPARATOR_TOPIC_CONSUMER_GROUP);
+                    out.write(MqWalRecord.encode(MqWalRecord.TYPE_SUBSCRIBE, topicConsumerGroupAry[0], topicConsumerGroupAry[1]));
+                }
+            }
+
+            //待派发消息
+            for (MqQueue queue : new ArrayList<>(serverRef.getQueueMap().values())) {
+                if (queue instanceof MqQueueDefault == false) {
+                    continue;
+                }
+
+                //按派发顺序（重放时按这个顺序入队）
+                for (MqMessageHolder messageHolder : MqWatcherSnapshot.messageListSorted((MqQueueDefault) queue)) {
+                    try {
+                        Entity entity = messageHolder.getMessageEntity();
+                        out.write(MqWalRecord.encode(MqWalRecord.TYPE_ENQUEUE, queue.getQueueName(), entity.metaString(), entity.dataAsBytes()));
+                    } catch (Exception e) {
+                        log.warn("Server wal checkpoint message failed, key={}", messageHolder.getKey(), e);
+                    }
+                }
+            }
+
+            out.flush();
+            fileOut.getFD().sync();
+        }
+    }
+
+    private List<File> listSorted(String suffix) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(suffix));
+        if (files == null) {
+            return Collections.emptyList();
+        }
+
+        List<File> fileList = new ArrayList<>(Arrays.asList(files));
+        fileList.sort(Comparator.comparing(File::getName));
+        return fileList;
+    }
+}
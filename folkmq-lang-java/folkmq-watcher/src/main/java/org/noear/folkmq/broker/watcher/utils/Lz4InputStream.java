@@ -0,0 +1,130 @@
+package org.noear.folkmq.broker.watcher.utils;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * 快速压缩输入流（与 Lz4OutputStream 对应）
+ *
+ * @author noear
+ * @since 1.7
+ */
+public class Lz4InputStream extends FilterInputStream {
+    private final byte[] block = new byte[Lz4OutputStream.BLOCK_SIZE];
+    private final byte[] compressed = new byte[Lz4Utils.maxCompressedLength(Lz4OutputStream.BLOCK_SIZE)];
+    private int blockLen;
+    private int blockPos;
+
+    public Lz4InputStream(InputStream in) throws IOException {
+        super(in);
+
+        byte[] magic = new byte[Lz4OutputStream.MAGIC.length];
+        readFully(magic, 0, magic.length);
+        if (Arrays.equals(magic, Lz4OutputStream.MAGIC) == false) {
+            throw new IOException("Lz4 stream magic mismatch");
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (blockPos == blockLen && readBlock() == false) {
+            return -1;
+        }
+
+        return block[blockPos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (blockPos == blockLen && readBlock() == false) {
+            return -1;
+        }
+
+        int n = Math.min(len, blockLen - blockPos);
+        System.arraycopy(block, blockPos, b, off, n);
+        blockPos += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n) {
+            if (blockPos == blockLen && readBlock() == false) {
+                break;
+            }
+
+            int k = (int) Math.min(n - skipped, blockLen - blockPos);
+            blockPos += k;
+            skipped += k;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return blockLen - blockPos;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private boolean readBlock() throws IOException {
+        int first = in.read();
+        if (first < 0) {
+            //结尾
+            return false;
+        }
+
+        int rawLen = (first << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+        int storedLen = readInt();
+
+        if (rawLen <= 0 || storedLen <= 0 || storedLen > rawLen || rawLen > Lz4OutputStream.BLOCK_SIZE) {
+            throw new IOException("Lz4 block header is invalid");
+        }
+
+        if (storedLen == rawLen) {
+            //原样存储
+            readFully(block, 0, rawLen);
+        } else {
+            readFully(compressed, 0, storedLen);
+            Lz4Utils.decompress(compressed, storedLen, block, rawLen);
+        }
+
+        blockLen = rawLen;
+        blockPos = 0;
+        return true;
+    }
+
+    private int readInt() throws IOException {
+        return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("Lz4 block is truncated");
+        }
+        return b;
+    }
+
+    private void readFully(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = in.read(b, off, len);
+            if (n < 0) {
+                throw new EOFException("Lz4 block is truncated");
+            }
+            off += n;
+            len -= n;
+        }
+    }
+}
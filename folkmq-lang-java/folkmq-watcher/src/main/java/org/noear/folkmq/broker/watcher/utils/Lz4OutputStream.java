@@ -0,0 +1,100 @@
+package org.noear.folkmq.broker.watcher.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 快速压缩输出流（分块压缩）
+ * <br/>
+ * 格式：[magic: F L Z 4] { [rawLen][storedLen] [data] }；storedLen == rawLen 时，为原样存储
+ *
+ * @author noear
+ * @since 1.7
+ */
+public class Lz4OutputStream extends FilterOutputStream {
+    public static final byte[] MAGIC = {'F', 'L', 'Z', '4'};
+    public static final int BLOCK_SIZE = 64 * 1024;
+
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private final byte[] compressed = new byte[Lz4Utils.maxCompressedLength(BLOCK_SIZE)];
+    private int blockLen;
+    private boolean closed;
+
+    public Lz4OutputStream(OutputStream out) throws IOException {
+        super(out);
+        out.write(MAGIC);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (blockLen == BLOCK_SIZE) {
+            writeBlock();
+        }
+
+        block[blockLen++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (blockLen == BLOCK_SIZE) {
+                writeBlock();
+            }
+
+            int n = Math.min(len, BLOCK_SIZE - blockLen);
+            System.arraycopy(b, off, block, blockLen, n);
+            blockLen += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeBlock();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            writeBlock();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (blockLen == 0) {
+            return;
+        }
+
+        int compressedLen = Lz4Utils.compress(block, blockLen, compressed);
+
+        writeInt(blockLen);
+        if (compressedLen < blockLen) {
+            writeInt(compressedLen);
+            out.write(compressed, 0, compressedLen);
+        } else {
+            //压不动，原样存储
+            writeInt(blockLen);
+            out.write(block, 0, blockLen);
+        }
+
+        blockLen = 0;
+    }
+
+    private void writeInt(int v) throws IOException {
+        out.write(v >>> 24);
+        out.write(v >>> 16);
+        out.write(v >>> 8);
+        out.write(v);
+    }
+}
@@ -0,0 +1,190 @@
+package org.noear.folkmq.broker.watcher.utils;
+
+import java.io.IOException;
+
+/**
+ * 快速压缩工具（LZ4 块格式风格：只用哈希表找 4 字节匹配，不做熵编码；压缩比不如 gzip，但快很多）
+ * <br/>
+ * 序列格式：[token: 字面长度(4bit)|匹配长度-4(4bit)] [字面长度扩展] [字面] [偏移: 2字节小端] [匹配长度扩展]
+ *
+ * @author noear
+ * @since 1.7
+ */
+public class Lz4Utils {
+    private static final int MIN_MATCH = 4;
+    //结尾的字面保留（最后一个匹配要离结尾远一点，解压时不越界）
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+
+    private static final int HASH_LOG = 14;
+
+    /**
+     * 压缩后的最大长度（不可压缩时）
+     */
+    public static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * 压缩
+     *
+     * @param src    源
+     * @param srcLen 源长度
+     * @param dst    目标（长度不小于 maxCompressedLength(srcLen)）
+     * @return 压缩后的长度
+     */
+    public static int compress(byte[] src, int srcLen, byte[] dst) {
+        int[] table = new int[1 << HASH_LOG]; //存位置+1（0 表示空）
+        int ip = 0;
+        int anchor = 0;
+        int op = 0;
+
+        if (srcLen >= MF_LIMIT + 1) {
+            int limit = srcLen - MF_LIMIT;
+
+            while (ip < limit) {
+                int seq = readInt(src, ip);
+                int h = hash(seq);
+                int ref = table[h] - 1;
+                table[h] = ip + 1;
+
+                if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+                    ip++;
+                    continue;
+                }
+
+                //向后延长匹配（保留结尾字面）
+                int matchLen = MIN_MATCH;
+                int matchLimit = srcLen - LAST_LITERALS;
+                while (ip + matchLen < matchLimit && src[ref + matchLen] == src[ip + matchLen]) {
+                    matchLen++;
+                }
+
+                op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, matchLen);
+
+                ip += matchLen;
+                anchor = ip;
+            }
+        }
+
+        //结尾字面
+        return writeSequence(src, anchor, srcLen - anchor, dst, op, 0, 0);
+    }
+
+    /**
+     * 解压
+     *
+     * @param src    源
+     * @param srcLen 源长度
+     * @param dst    目标
+     * @param dstLen 解压后的长度
+     */
+    public static void decompress(byte[] src, int srcLen, byte[] dst, int dstLen) throws IOException {
+        int ip = 0;
+        int op = 0;
+
+        try {
+            while (ip < srcLen) {
+                int token = src[ip++] & 0xFF;
+
+                //字面
+                int literalLen = token >>> 4;
+                if (literalLen == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literalLen += b;
+                    } while (b == 255);
+                }
+
+                if (ip + literalLen > srcLen || op + literalLen > dstLen) {
+                    throw new IOException("Lz4 decompress failed: literal out of range");
+                }
+
+                System.arraycopy(src, ip, dst, op, literalLen);
+                ip += literalLen;
+                op += literalLen;
+
+                if (ip >= srcLen) {
+                    //结尾字面
+                    break;
+                }
+
+                //匹配
+                int offset = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+                ip += 2;
+
+                int matchLen = token & 0x0F;
+                if (matchLen == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLen += b;
+                    } while (b == 255);
+                }
+                matchLen += MIN_MATCH;
+
+                int ref = op - offset;
+                if (offset == 0 || ref < 0 || op + matchLen > dstLen) {
+                    throw new IOException("Lz4 decompress failed: match out of range");
+                }
+
+                //可能重叠，逐字节复制
+                for (int i = 0; i < matchLen; i++) {
+                    dst[op++] = dst[ref++];
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Lz4 decompress failed: truncated input", e);
+        }
+
+        if (op != dstLen) {
+            throw new IOException("Lz4 decompress failed: length mismatch");
+        }
+    }
+
+    private static int writeSequence(byte[] src, int literalOff, int literalLen, byte[] dst, int op, int offset, int matchLen) {
+        int tokenPos = op++;
+        int token = (Math.min(literalLen, 15) << 4);
+
+        if (literalLen >= 15) {
+            op = writeLength(dst, op, literalLen - 15);
+        }
+
+        System.arraycopy(src, literalOff, dst, op, literalLen);
+        op += literalLen;
+
+        if (matchLen > 0) {
+            dst[op++] = (byte) offset;
+            dst[op++] = (byte) (offset >>> 8);
+
+            int matchLenCode = matchLen - MIN_MATCH;
+            token |= Math.min(matchLenCode, 15);
+
+            if (matchLenCode >= 15) {
+                op = writeLength(dst, op, matchLenCode - 15);
+            }
+        }
+
+        dst[tokenPos] = (byte) token;
+        return op;
+    }
+
+    private static int writeLength(byte[] dst, int op, int len) {
+        while (len >= 255) {
+            dst[op++] = (byte) 255;
+            len -= 255;
+        }
+        dst[op++] = (byte) len;
+        return op;
+    }
+
+    private static int readInt(byte[] buf, int i) {
+        return (buf[i] & 0xFF) | ((buf[i + 1] & 0xFF) << 8) | ((buf[i + 2] & 0xFF) << 16) | ((buf[i + 3] & 0xFF) << 24);
+    }
+
+    private static int hash(int seq) {
+        return (seq * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
@@ -0,0 +1,262 @@
+package org.noear.folkmq.broker;
+
+import org.noear.socketd.utils.StrUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 消息体存储（内存映射的分段文件；消息体放在堆外，堆上只留切片）
+ * <br/>
+ * 只追加写；段内的消息都结束后（按段计数：进消息表时加，离开时减），整段删除（映射在没有引用后，由 GC 释放）。
+ * 它不是持久化（持久化由观察者负责），启动时会清掉旧文件
+ *
+ * @author noear
+ * @since 1.7
+ */
+public class MqBodyStore {
+    private static final Logger log = LoggerFactory.getLogger(MqBodyStore.class);
+    private static final String SEGMENT_SUFFIX = ".body";
+    //回收宽限时间（写入到入队之间，段还没被引用）
+    private static final long RECLAIM_GRACE_MILLIS = 5_000L;
+
+    //文件目录
+    private final File directory;
+    //分段大小
+    private final int segmentSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    //所有段（段编号=>段）
+    private final Map<Long, Segment> segmentMap = new HashMap<>();
+    //当前写入的段
+    private Segment active;
+    private long segmentIdNext = 1L;
+
+    public MqBodyStore() {
+        this(null);
+    }
+
+    public MqBodyStore(String dataPath) {
+        this(dataPath, 64 * 1024 * 1024);
+    }
+
+    public MqBodyStore(String dataPath, int segmentSize) {
+        if (StrUtils.isEmpty(dataPath)) {
+            dataPath = "./data/body/";
+        }
+
+        this.directory = new File(dataPath);
+        this.segmentSize = segmentSize;
+
+        if (this.directory.exists() == false) {
+            this.directory.mkdirs();
+        }
+
+        //清掉旧文件（上次运行留下的）
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * 写入
+     *
+     * @param data 数据（不改变读取位置）
+     * @return 存储位置（含映射文件上的切片）
+     */
+    public Slot write(ByteBuffer data) throws IOException {
+        ByteBuffer src = data.duplicate();
+        int len = src.remaining();
+
+        Segment segment;
+        int offset;
+
+        lock.lock();
+        try {
+            if (active == null || active.size - active.position < len) {
+                //不够了，开新段（超大的消息，独占一段）
+                if (active != null) {
+                    active.sealedTime = System.currentTimeMillis();
+                }
+
+                active = openSegment(Math.max(segmentSize, len));
+            }
+
+            //先占位，在锁外复制
+            segment = active;
+            offset = segment.position;
+            segment.position += len;
+        } finally {
+            lock.unlock();
+        }
+
+        //转为 Buffer 调用（兼容 java8 运行时）
+        ByteBuffer dst = segment.buffer.duplicate();
+        ((Buffer) dst).limit(offset + len);
+        ((Buffer) dst).position(offset);
+
+        ByteBuffer slice = dst.slice();
+        slice.put(src);
+        ((Buffer) slice).flip();
+
+        return new Slot(segment, slice);
+    }
+
+    /**
+     * 回收（删除已写满、且没有活跃消息的段）
+     */
+    public void reclaim() {
+        List<Segment> reclaimList = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        lock.lock();
+        try {
+            Iterator<Segment> iterator = segmentMap.values().iterator();
+            while (iterator.hasNext()) {
+                Segment segment = iterator.next();
+                if (segment == active || segment.sealedTime == 0L) {
+                    continue;
+                }
+
+                if (now - segment.sealedTime < RECLAIM_GRACE_MILLIS || segment.liveCount.get() > 0) {
+                    continue;
+                }
+
+                iterator.remove();
+                reclaimList.add(segment);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (Segment segment : reclaimList) {
+            //还在发送中的切片，映射仍然有效（文件删除后，空间在映射释放时归还）
+            if (segment.file.delete() == false) {
+                segment.file.deleteOnExit();
+            }
+
+            if (log.isDebugEnabled()) {
+                log.debug("Store: body segment reclaimed, id={}", segment.id);
+            }
+        }
+    }
+
+    /**
+     * 段数量
+     */
+    public int segmentCount() {
+        lock.lock();
+        try {
+            return segmentMap.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 活跃消息数量（所有段的）
+     */
+    public int liveCount() {
+        lock.lock();
+        try {
+            int count = 0;
+            for (Segment segment : segmentMap.values()) {
+                count += segment.liveCount.get();
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 关闭（删除所有段）
+     */
+    public void close() {
+        lock.lock();
+        try {
+            for (Segment segment : segmentMap.values()) {
+                segment.file.delete();
+            }
+
+            segmentMap.clear();
+            active = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Segment openSegment(int size) throws IOException {
+        long id = segmentIdNext++;
+        File file = new File(directory, String.format("%020d", id) + SEGMENT_SUFFIX);
+
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(size);
+            //关闭文件后，映射仍然有效
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        Segment segment = new Segment(id, file, buffer, size);
+        segmentMap.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * 存储位置
+     */
+    public static class Slot {
+        /**
+         * 段编号
+         */
+        public final long segmentId;
+        /**
+         * 数据（映射文件上的切片）
+         */
+        public final ByteBuffer data;
+        //段
+        final Segment segment;
+
+        Slot(Segment segment, ByteBuffer data) {
+            this.segmentId = segment.id;
+            this.data = data;
+            this.segment = segment;
+        }
+    }
+
+    /**
+     * 段
+     */
+    static class Segment {
+        final long id;
+        final File file;
+        final MappedByteBuffer buffer;
+        final int size;
+        //写入位置
+        int position;
+        //写满的时间（0 表示还在写）
+        volatile long sealedTime;
+        //活跃消息数量（在消息表里的）
+        final AtomicInteger liveCount = new AtomicInteger();
+
+        Segment(long id, File file, MappedByteBuffer buffer, int size) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+            this.size = size;
+        }
+    }
+}
@@ -21,6 +21,48 @@ public interface MqBorker {
      */
     MqBorker watcher(MqWatcher watcher);
 
+    /**
+     * 配置派发时间轮（默认为 true；远期的定时与重试消息，到期后才进入派发堆）
+     *
+     * @param enable 是否启用
+     */
+    MqBorker timingWheel(boolean enable);
+
+    /**
+     * 配置消息体存储（默认为 null；配置后，待派发消息的消息体放在内存映射文件里，堆上只留元信息）
+     *
+     * @param bodyStore 消息体存储
+     */
+    MqBorker bodyStore(MqBodyStore bodyStore);
+
+    /**
+     * 配置派发线程数（默认为 1；队列按名字哈希分配到线程，同一队列的派发仍是单线程）
+     *
+     * @param threads 线程数
+     */
+    MqBorker distributeThreads(int threads);
+
+    /**
+     * 配置每轮派发数量（默认为 32；每个队列每轮最多派发的消息数，可通过 MqQueue::setDistributeBatchSize 单独设置）
+     *
+     * @param batchSize 数量
+     */
+    MqBorker distributeBatchSize(int batchSize);
+
+    /**
+     * 配置消费者选择器（默认为轮询；可通过 MqQueue::setConsumerSelector 单独设置）
+     *
+     * @param consumerSelector 选择器（MqConsumerSelector.POLL, LEAST_INFLIGHT, LATENCY 或自定义）
+     */
+    MqBorker consumerSelector(MqConsumerSelector consumerSelector);
+
+    /**
+     * 配置顺序分片数（默认为 16；每个队列同时在派发的顺序分片上限，同分片的顺序消息一次只派发一条）
+     *
+     * @param shards 数量
+     */
+    MqBorker sequenceShards(int shards);
+
     /**
      * 配置访问账号
      *
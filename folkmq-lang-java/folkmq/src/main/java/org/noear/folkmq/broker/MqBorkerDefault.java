@@ -66,6 +66,72 @@ public class MqBorkerDefault implements MqBorker {
         return this;
     }
 
+    /**
+     * 配置派发时间轮
+     *
+     * @param enable 是否启用
+     */
+    @Override
+    public MqBorker timingWheel(boolean enable) {
+        serverListener.timingWheel(enable);
+        return this;
+    }
+
+    /**
+     * 配置消息体存储
+     *
+     * @param bodyStore 消息体存储
+     */
+    @Override
+    public MqBorker bodyStore(MqBodyStore bodyStore) {
+        serverListener.bodyStore(bodyStore);
+        return this;
+    }
+
+    /**
+     * 配置派发线程数
+     *
+     * @param threads 线程数
+     */
+    @Override
+    public MqBorker distributeThreads(int threads) {
+        serverListener.distributeThreads(threads);
+        return this;
+    }
+
+    /**
+     * 配置每轮派发数量
+     *
+     * @param batchSize 数量
+     */
+    @Override
+    public MqBorker distributeBatchSize(int batchSize) {
+        serverListener.distributeBatchSize(batchSize);
+        return this;
+    }
+
+    /**
+     * 配置消费者选择器
+     *
+     * @param consumerSelector 选择器
+     */
+    @Override
+    public MqBorker consumerSelector(MqConsumerSelector consumerSelector) {
+        serverListener.consumerSelector(consumerSelector);
+        return this;
+    }
+
+    /**
+     * 配置顺序分片数
+     *
+     * @param shards 数量
+     */
+    @Override
+    public MqBorker sequenceShards(int shards) {
+        serverListener.sequenceShards(shards);
+        return this;
+    }
+
     /**
      * 配置访问账号
      *
@@ -6,6 +6,7 @@ import org.noear.socketd.transport.core.Session;
 import org.noear.socketd.transport.core.listener.MessageHandler;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -46,6 +47,11 @@ public interface MqBorkerInternal {
      */
     boolean hasSubscribe(String topic);
 
+    /**
+     * 获取主题路由到的队列（含通配订阅的队列）
+     */
+    List<MqQueue> getRoutingQueues(String topic);
+
     /**
      * 获取队列字典(queueName=>Queue)
      */
@@ -94,6 +100,14 @@ public interface MqBorkerInternal {
      */
     void routingToQueueDo(MqDraft draft, MqQueue queue);
 
+    /**
+     * 执行路由（批量进同一队列；用于恢复等大批量场景）
+     *
+     * @param drafts 消息草稿
+     * @param queue  队列
+     */
+    void routingToQueueBatchDo(List<MqDraft> drafts, MqQueue queue);
+
     /**
      * 添加事件扩展
      *
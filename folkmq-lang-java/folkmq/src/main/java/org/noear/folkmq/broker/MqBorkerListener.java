@@ -6,10 +6,12 @@ import org.noear.snack.ONode;
 import org.noear.socketd.broker.BrokerListener;
 import org.noear.socketd.exception.SocketDAlarmException;
 import org.noear.socketd.transport.core.*;
+import org.noear.socketd.transport.core.entity.MessageBuilder;
 import org.noear.socketd.transport.core.entity.StringEntity;
 import org.noear.socketd.transport.core.listener.MessageHandler;
 import org.noear.socketd.utils.RunUtils;
 import org.noear.socketd.utils.RunnableEx;
+import org.noear.socketd.utils.StrUtils;
 
 import java.io.IOException;
 import java.util.*;
@@ -26,6 +28,7 @@ public class MqBorkerListener extends MqBorkerListenerBase implements MqBorkerIn
     protected final MqQps qpsPublish = new MqQps();
     protected final MqQps qpsDistribute = new MqQps();
     protected final ScheduledFuture<?> qpsScheduled;
+    protected ScheduledFuture<?> bodyStoreScheduled;
 
     @Override
     public MqQps getQpsDistribute() {
@@ -41,8 +44,6 @@ public class MqBorkerListener extends MqBorkerListenerBase implements MqBorkerIn
         //::初始化 Watcher 接口
         this.proxyMode = proxyMode;
 
-        this.distributeThread = new Thread(this::distributeDo, "distributeThread");
-
         this.watcher = new MqWatcherDefault();
         this.watcher.init(this);
 
@@ -65,41 +66,22 @@ public class MqBorkerListener extends MqBorkerListenerBase implements MqBorkerIn
         });
 
         doOn(MqConstants.MQ_EVENT_PUBLISH, (s, m) -> {
-            qpsPublish.record();
-
-            MqMetasResolver mr = MqUtils.getOf(m);
             //接收发布指令
-            boolean isTrans = mr.isTransaction(m);
-
-            if (proxyMode) {
-                //如果是代理模式，派发的消息不受内存限制
-                m.putMeta(EntityMetas.META_X_UNLIMITED, "1");
-            }
-
-            if (isTrans) {
-                //备份
-                mr.bakExpiration(m, true);
-                mr.bakScheduled(m, true);
-
-                //存活为2小时，延后为1分钟
-                mr.setExpiration(m, System.currentTimeMillis() + MqNextTime.TIME_1H);
-                mr.setScheduled(m, System.currentTimeMillis() + MqNextTime.TIME_1M);
-
-                //预备存储
-                MqDraft draft = new MqDraft(mr, m);
-
-                String queueName = draft.topic + MqConstants.SEPARATOR_TOPIC_CONSUMER_GROUP + MqConstants.MQ_TRAN_CONSUMER_GROUP;
-
-                transactionMessageMap.put(draft.key, draft.topic);
-                queueGetOrInit(draft.topic, MqConstants.MQ_TRAN_CONSUMER_GROUP, queueName);
-                routingToQueueName(draft, queueName);
-            } else {
-                onPublish(s, m, mr);
-            }
+            onPublishDo(s, m);
+            confirmDo(s, m);
+        });
 
+        doOn(MqConstants.MQ_EVENT_PUBLISH_BATCH, (s, m) -> {
+            //接收批量发布指令（一次确认）
+            onPublishBatch(s, m);
             confirmDo(s, m);
         });
 
+        doOn(MqConstants.MQ_EVENT_ACKNOWLEDGE_BATCH, (s, m) -> {
+            //接收批量回执
+            onAcknowledgeBatch(s, m);
+        });
+
         doOn(MqConstants.MQ_EVENT_PUBLISH2, (s, m) -> {
             //接收二段发布指令
             boolean isRollback = "1".equals(m.meta(MqConstants.MQ_META_ROLLBACK));
@@ -201,7 +183,8 @@ public class MqBorkerListener extends MqBorkerListenerBase implements MqBorkerIn
 
             if (mr.version() >= 3) {
                 String key = mr.getKey(message);
-                String topic = mr.getTopic(message);
+                //通配订阅时，队列按订阅的主题
+                String topic = mr.getSubscribeTopic(message);
                 String consumerGroup = mr.getConsumerGroup(message);
 
                 String queueName = topic + MqConstants.SEPARATOR_TOPIC_CONSUMER_GROUP + consumerGroup;
@@ -214,6 +197,26 @@ public class MqBorkerListener extends MqBorkerListenerBase implements MqBorkerIn
         }
     }
 
+    /**
+     * 批量回执时
+     */
+    protected void onAcknowledgeBatch(Session s, Message m) {
+        for (Entity entity : MqBatchUtils.decode(m)) {
+            MqMetasResolver mr = MqUtils.getOf(entity);
+
+            String key = mr.getKey(entity);
+            String topic = mr.getSubscribeTopic(entity);
+            String consumerGroup = mr.getConsumerGroup(entity);
+
+            String queueName = topic + MqConstants.SEPARATOR_TOPIC_CONSUMER_GROUP + consumerGroup;
+            MqQueue queue = getQueue(queueName);
+            if (queue != null) {
+                int ack = Integer.parseInt(entity.metaOrDefault(MqConstants.MQ_META_ACK, "0"));
+                queue.acknowledgeAt(key, ack);
+            }
+        }
+    }
+
     /**
      * 配置监视器
      */
@@ -226,6 +229,86 @@ public class MqBorkerListener extends MqBorkerListenerBase implements MqBorkerIn
         return this;
     }
 
+    /**
+     * 配置派发时间轮（默认为 true）
+     *
+     * @param enable 是否启用
+     */
+    public MqBorkerListener timingWheel(boolean enable) {
+        this.timingWheel = enable;
+        return this;
+    }
+
+    /**
+     * 配置每轮派发数量（默认为 32；每个队列每轮最多派发的消息数，队列可单独设置）
+     *
+     * @param batchSize 数量
+     */
+    public MqBorkerListener distributeBatchSize(int batchSize) {
+        this.distributeBatchSize = Math.max(batchSize, 1);
+        return this;
+    }
+
+    /**
+     * 配置消费者选择器（默认为轮询；队列可单独设置）
+     *
+     * @param consumerSelector 选择器
+     */
+    public MqBorkerListener consumerSelector(MqConsumerSelector consumerSelector) {
+        if (consumerSelector != null) {
+            this.consumerSelector = consumerSelector;
+        }
+
+        return this;
+    }
+
+    /**
+     * 配置顺序分片数（默认为 16；每个队列同时在派发的顺序分片上限，队列创建前有效）
+     *
+     * @param shards 数量
+     */
+    public MqBorkerListener sequenceShards(int shards) {
+        this.sequenceShards = Math.max(shards, 1);
+        return this;
+    }
+
+    /**
+     * 配置派发线程数（默认为 1；启动前有效）
+     *
+     * @param threads 线程数
+     */
+    public MqBorkerListener distributeThreads(int threads) {
+        if (threads < 1) {
+            threads = 1;
+        }
+
+        if (threads != distributeSchedulers.length) {
+            MqDistributeScheduler[] schedulers = new MqDistributeScheduler[threads];
+            for (int i = 0; i < threads; i++) {
+                schedulers[i] = new MqDistributeScheduler();
+            }
+
+            //旧的调度器可能已有登记（启动后会全部唤醒）
+            for (MqDistributeScheduler scheduler : distributeSchedulers) {
+                scheduler.clear();
+            }
+
+            this.distributeSchedulers = schedulers;
+        }
+
+        return this;
+    }
+
+    /**
+     * 配置消息体存储（默认为 null，即消息体在堆上；启动前有效）
+     *
+     * @param bodyStore 消息体存储
+     */
+    public MqBorkerListener bodyStore(MqBodyStore bodyStore) {
+        this.bodyStore = bodyStore;
+        return this;
+    }
+
     /**
      * 配置访问账号
      *
@@ -269,13 +352,27 @@ public class MqBorkerListener extends MqBorkerListenerBase implements MqBorkerIn
         if (onStart != null) {
             onStart.run();
         }
-        distributeThread.start();
+        //启动派发线程
+        distributeThreads = new Thread[distributeSchedulers.length];
+        for (int i = 0; i < distributeSchedulers.length; i++) {
+            MqDistributeScheduler scheduler = distributeSchedulers[i];
+            distributeThreads[i] = new Thread(() -> distributeDo(scheduler), "distributeThread-" + (i + 1));
+            distributeThreads[i].start();
+        }
+
+        //启动消息体存储回收
+        if (bodyStore != null) {
+            bodyStoreScheduled = RunUtils.scheduleWithFixedDelay(this::bodyStoreReclaim, 10_000, 10_000);
+        }
 
         //观察者::服务启动之后
         watcher.onStartAfter();
 
         //标为已启动
         isStarted.set(true);
+
+        //唤醒所有队列（启动前恢复的消息）
+        distributeWakeupAll(false);
     }
 
     /**
@@ -289,7 +386,14 @@ public class MqBorkerListener extends MqBorkerListenerBase implements MqBorkerIn
         if (onStop != null) {
             onStop.run();
         }
-        distributeThread.interrupt();
+        if (distributeThreads != null) {
+            for (Thread thread : distributeThreads) {
+                thread.interrupt();
+            }
+        }
+        for (MqDistributeScheduler scheduler : distributeSchedulers) {
+            scheduler.clear();
+        }
 
         //观察者::服务停止之后
         watcher.onStopAfter();
@@ -304,6 +408,14 @@ public class MqBorkerListener extends MqBorkerListenerBase implements MqBorkerIn
             qpsScheduled.cancel(true);
         }
 
+        if (bodyStoreScheduled != null) {
+            bodyStoreScheduled.cancel(true);
+        }
+
+        if (bodyStore != null) {
+            bodyStore.close();
+        }
+
         //标为已停止
         isStarted.set(false);
     }
@@ -338,6 +450,9 @@ public class MqBorkerListener extends MqBorkerListenerBase implements MqBorkerIn
 
         //增加经理人支持
         brokerListener.onOpen(session);
+
+        //事务队列以所有会话为目标，唤醒一下
+        distributeWakeupAll(true);
     }
 
     /**
@@ -415,6 +530,7 @@ public class MqBorkerListener extends MqBorkerListenerBase implements MqBorkerIn
 
     protected void onSubscribe(Session s, Message m) throws IOException {
         String is_batch = m.meta(MqConstants.MQ_META_BATCH);
+        int prefetch = prefetchOf(m);
 
         if ("1".equals(is_batch)) {
             ONode oNode = ONode.loadStr(m.dataAsString());
@@ -428,7 +544,7 @@ public class MqBorkerListener extends MqBorkerListenerBase implements MqBorkerIn
                         watcher.onSubscribe(kv.getKey(), consumerGroup, s);
 
                         //执行订阅
-                        subscribeDo(kv.getKey(), consumerGroup, s);
+                        subscribeDo(kv.getKey(), consumerGroup, s, prefetch);
                     }
                 }
             }
@@ -440,7 +556,23 @@ public class MqBorkerListener extends MqBorkerListenerBase implements MqBorkerIn
             watcher.onSubscribe(topic, consumerGroup, s);
 
             //执行订阅
-            subscribeDo(topic, consumerGroup, s);
+            subscribeDo(topic, consumerGroup, s, prefetch);
+        }
+    }
+
+    /**
+     * 获取订阅声明的预取数量（集群模式时，会话是代理，不按会话限流）
+     */
+    private int prefetchOf(Message m) {
+        if (proxyMode) {
+            return 0;
+        }
+
+        String prefetchStr = m.meta(MqConstants.MQ_META_PREFETCH);
+        if (StrUtils.isEmpty(prefetchStr)) {
+            return 0;
+        } else {
+            return Math.max(Integer.parseInt(prefetchStr), 0);
         }
     }
 
@@ -455,6 +587,90 @@ public class MqBorkerListener extends MqBorkerListenerBase implements MqBorkerIn
         unsubscribeDo(topic, consumerGroup, s);
     }
 
+    private void onPublishDo(Session s, Message m) throws IOException {
+        qpsPublish.record();
+
+        MqMetasResolver mr = MqUtils.getOf(m);
+        boolean isTrans = mr.isTransaction(m);
+
+        if (proxyMode) {
+            //如果是代理模式，派发的消息不受内存限制
+            m.putMeta(EntityMetas.META_X_UNLIMITED, "1");
+        }
+
+        if (isTrans) {
+            onPublishTran(s, m, mr);
+        } else {
+            onPublish(s, m, mr);
+        }
+    }
+
+    /**
+     * 批量发布时（一帧多条消息：观察者一次通知，同一主题一次路由）
+     */
+    private void onPublishBatch(Session s, Message m) throws IOException {
+        List<Entity> entities = MqBatchUtils.decode(m);
+        qpsPublish.record(entities.size());
+
+        List<Message> messages = new ArrayList<>(entities.size());
+        List<MqMetasResolver> resolvers = new ArrayList<>(entities.size());
+
+        for (Entity entity : entities) {
+            Message m1 = new MessageBuilder()
+                    .flag(Flags.Message)
+                    .sid(m.sid())
+                    .event(MqConstants.MQ_EVENT_PUBLISH)
+                    .entity(entity)
+                    .build();
+
+            MqMetasResolver mr = MqUtils.getOf(m1);
+
+            if (proxyMode) {
+                //如果是代理模式，派发的消息不受内存限制
+                m1.putMeta(EntityMetas.META_X_UNLIMITED, "1");
+            }
+
+            if (mr.isTransaction(m1)) {
+                onPublishTran(s, m1, mr);
+            } else {
+                messages.add(m1);
+                resolvers.add(mr);
+            }
+        }
+
+        if (messages.size() > 0) {
+            //观察者::发布时（适配时，可选择同步或异步。同步可靠性高，异步性能好）
+            watcher.onPublishBatch(messages);
+
+            //执行交换（复用解析）
+            List<MqDraft> drafts = new ArrayList<>(messages.size());
+            for (int i = 0; i < messages.size(); i++) {
+                drafts.add(new MqDraft(resolvers.get(i), messages.get(i)));
+            }
+
+            routingBatchDo(drafts);
+        }
+    }
+
+    private void onPublishTran(Session s, Message m, MqMetasResolver mr) throws IOException {
+        //备份
+        mr.bakExpiration(m, true);
+        mr.bakScheduled(m, true);
+
+        //存活为2小时，延后为1分钟
+        mr.setExpiration(m, System.currentTimeMillis() + MqNextTime.TIME_1H);
+        mr.setScheduled(m, System.currentTimeMillis() + MqNextTime.TIME_1M);
+
+        //预备存储
+        MqDraft draft = new MqDraft(mr, m);
+
+        String queueName = draft.topic + MqConstants.SEPARATOR_TOPIC_CONSUMER_GROUP + MqConstants.MQ_TRAN_CONSUMER_GROUP;
+
+        transactionMessageMap.put(draft.key, draft.topic);
+        queueGetOrInit(draft.topic, MqConstants.MQ_TRAN_CONSUMER_GROUP, queueName);
+        routingToQueueName(draft, queueName);
+    }
+
     private void onPublish(Session s, Message m, MqMetasResolver mr) throws IOException {
         if (m == null) {
             return;
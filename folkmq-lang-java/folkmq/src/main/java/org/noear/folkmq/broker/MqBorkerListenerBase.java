@@ -2,6 +2,7 @@ package org.noear.folkmq.broker;
 
 import org.noear.folkmq.common.MqConstants;
 import org.noear.folkmq.common.MqMetasResolver;
+import org.noear.folkmq.common.MqTopicMatcher;
 import org.noear.socketd.transport.core.Message;
 import org.noear.socketd.transport.core.Session;
 import org.noear.socketd.transport.core.listener.EventListener;
@@ -20,6 +21,11 @@ import java.util.concurrent.locks.ReentrantLock;
  */
 public abstract class MqBorkerListenerBase extends EventListener implements MqBorkerInternal {
     protected static final Logger log = LoggerFactory.getLogger(MqBorkerListener.class);
+    //每轮派发时间预算（纳秒；超出则让给下个队列）
+    protected static final long DISTRIBUTE_BATCH_BUDGET_NANOS = 2_000_000L;
+    //路由快照的最大数量（超出时清空重来）
+    protected static final int ROUTING_MAX_SIZE = 10_000;
+    protected static final MqQueue[] ROUTING_EMPTY = new MqQueue[0];
 
 
     //观察者
@@ -37,11 +43,27 @@ public abstract class MqBorkerListenerBase extends EventListener implements MqBo
     protected final Map<String, Set<String>> subscribeMap = new ConcurrentHashMap<>();
     //队列字典(queueName=>Queue)
     protected final Map<String, MqQueue> queueMap = new ConcurrentHashMap<>();
+    //路由快照(topic=>[Queue]) //按需构建（含通配订阅的队列）；订阅关系变化时失效；路由时直接遍历，不用复制与查找
+    protected final Map<String, MqQueue[]> routingMap = new ConcurrentHashMap<>();
+    //通配订阅的主题匹配器
+    protected final MqTopicMatcher topicMatcher = new MqTopicMatcher();
     //事务消息
     protected final Map<String, String> transactionMessageMap = new ConcurrentHashMap<>();
 
-    //派发线程
-    protected Thread distributeThread;
+    //派发线程（按队列名哈希分片，同一队列固定由同一线程派发）
+    protected Thread[] distributeThreads;
+    //派发调度器（与派发线程一一对应）
+    protected MqDistributeScheduler[] distributeSchedulers = new MqDistributeScheduler[]{new MqDistributeScheduler()};
+    //派发时间轮（远期的定时与重试消息，到期后才进入派发堆）
+    protected boolean timingWheel = true;
+    //每轮派发数量（每个队列每轮最多派发的消息数；队列可单独设置）
+    protected int distributeBatchSize = 32;
+    //消费者选择器（队列可单独设置）
+    protected MqConsumerSelector consumerSelector = MqConsumerSelector.POLL;
+    //顺序分片数（每个队列同时在派发的顺序分片上限）
+    protected int sequenceShards = 16;
+    //消息体存储（为 null 时，消息体在堆上）
+    protected MqBodyStore bodyStore;
 
     protected final AtomicBoolean isStarted = new AtomicBoolean(false);
 
@@ -82,7 +104,15 @@ public abstract class MqBorkerListenerBase extends EventListener implements MqBo
 
     @Override
     public boolean hasSubscribe(String topic) {
-        return subscribeMap.containsKey(topic);
+        return subscribeMap.containsKey(topic) || topicMatcher.match(topic).length > 0;
+    }
+
+    /**
+     * 获取主题路由到的队列（含通配订阅的队列）
+     */
+    @Override
+    public List<MqQueue> getRoutingQueues(String topic) {
+        return Arrays.asList(routingOf(topic));
     }
 
     /**
@@ -111,8 +141,15 @@ public abstract class MqBorkerListenerBase extends EventListener implements MqBo
         Set<String> tmp = subscribeMap.get(ss[0]);
         tmp.remove(queueName);
 
+        if (tmp.isEmpty() && MqTopicMatcher.isPattern(ss[0])) {
+            topicMatcher.remove(ss[0]);
+        }
+
         //再删队列
         queueMap.remove(queueName);
+
+        //路由快照失效
+        routingInvalidate(ss[0]);
     }
 
     /**
@@ -120,6 +157,15 @@ public abstract class MqBorkerListenerBase extends EventListener implements MqBo
      */
     @Override
     public void subscribeDo(String topic, String consumerGroup, Session session) {
+        subscribeDo(topic, consumerGroup, session, 0);
+    }
+
+    /**
+     * 执行订阅
+     *
+     * @param prefetch 预取数量（会话未回执的消息上限；0 表示不限）
+     */
+    public void subscribeDo(String topic, String consumerGroup, Session session, int prefetch) {
         String queueName = topic + MqConstants.SEPARATOR_TOPIC_CONSUMER_GROUP + consumerGroup;
 
         subscribeLock.lock();
@@ -138,7 +184,7 @@ public abstract class MqBorkerListenerBase extends EventListener implements MqBo
                 session.attrPut(queueName, "1");
 
                 //加入队列会话
-                queue.sessionAdd(session);
+                queue.sessionAdd(session, prefetch);
             }
         } finally {
             subscribeLock.unlock();
@@ -148,18 +194,109 @@ public abstract class MqBorkerListenerBase extends EventListener implements MqBo
     protected MqQueue queueGetOrInit(String topic, String consumerGroup, String queueName) {
         //建立订阅关系(topic=>[queueName]) //queueName='topic#consumer'
         Set<String> queueNameSet = subscribeMap.computeIfAbsent(topic, n -> Collections.newSetFromMap(new ConcurrentHashMap<>()));
-        queueNameSet.add(queueName);
+        boolean changed = queueNameSet.add(queueName);
+
+        if (changed && MqTopicMatcher.isPattern(topic)) {
+            topicMatcher.add(topic);
+        }
 
         //队列映射关系(queueName=>Queue)
         MqQueue queue = queueMap.get(queueName);
         if (queue == null) {
             queue = new MqQueueDefault((MqBorkerListener) this, watcher, topic, consumerGroup, queueName);
             queueMap.put(queueName, queue);
+            changed = true;
+        }
+
+        if (changed) {
+            //路由快照失效
+            routingInvalidate(topic);
         }
 
         return queue;
     }
 
+    /**
+     * 路由快照失效（只在订阅关系变化时；通配主题会影响多个主题，全部失效）
+     */
+    protected void routingInvalidate(String topic) {
+        //与订阅同锁（避免并发构建时，旧快照覆盖新的失效）
+        subscribeLock.lock();
+
+        try {
+            if (MqTopicMatcher.isPattern(topic)) {
+                routingMap.clear();
+            } else {
+                routingMap.remove(topic);
+            }
+        } finally {
+            subscribeLock.unlock();
+        }
+    }
+
+    /**
+     * 获取主题的路由快照（没有时构建）
+     */
+    protected MqQueue[] routingOf(String topic) {
+        MqQueue[] queues = routingMap.get(topic);
+
+        if (queues == null) {
+            queues = routingBuild(topic);
+        }
+
+        return queues;
+    }
+
+    /**
+     * 构建主题的路由快照（精确订阅的队列 + 通配订阅的队列）
+     */
+    protected MqQueue[] routingBuild(String topic) {
+        //没有订阅的（精确与通配都没有），不加锁也不缓存（免得未订阅的主题撑大快照）
+        Set<String> queueNameSet = subscribeMap.get(topic);
+        if ((queueNameSet == null || queueNameSet.isEmpty()) && topicMatcher.match(topic).length == 0) {
+            return ROUTING_EMPTY;
+        }
+
+        subscribeLock.lock();
+
+        try {
+            MqQueue[] queues = routingMap.get(topic);
+            if (queues != null) {
+                return queues;
+            }
+
+            List<MqQueue> queueList = new ArrayList<>();
+            routingBuildDo(subscribeMap.get(topic), queueList);
+
+            for (String pattern : topicMatcher.match(topic)) {
+                routingBuildDo(subscribeMap.get(pattern), queueList);
+            }
+
+            if (routingMap.size() >= ROUTING_MAX_SIZE) {
+                //通配订阅可匹配的主题不限量，超出时清空重来
+                routingMap.clear();
+            }
+
+            queues = queueList.toArray(ROUTING_EMPTY);
+            routingMap.put(topic, queues);
+
+            return queues;
+        } finally {
+            subscribeLock.unlock();
+        }
+    }
+
+    private void routingBuildDo(Set<String> queueNameSet, List<MqQueue> queueList) {
+        if (queueNameSet != null) {
+            for (String queueName : queueNameSet) {
+                MqQueue queue = queueMap.get(queueName);
+                if (queue != null) {
+                    queueList.add(queue);
+                }
+            }
+        }
+    }
+
     /**
      * 执行取消订阅
      */
@@ -190,23 +327,43 @@ public abstract class MqBorkerListenerBase extends EventListener implements MqBo
      */
     @Override
     public void routingDo(MqMetasResolver mr, Message message) {
-        //复用解析
-        MqDraft draft = new MqDraft(mr, message);
+        //复用解析（消息体只存一份，各队列共用）
+        MqDraft draft = draftStored(new MqDraft(mr, message));
 
-        //取出所有订阅的主题消费者
-        Set<String> topicConsumerSet = subscribeMap.get(draft.topic);
+        //取出所有订阅的主题队列（快照，不怕遍历时变化）
+        MqQueue[] queues = routingOf(draft.topic);
+
+        for (MqQueue queue : queues) {
+            if (queue.isTransaction()) {
+                continue;
+            }
+
+            routingToQueueDo(draft, queue);
+        }
+    }
+
+    /**
+     * 执行路由（批量；同一主题只取一次订阅关系）
+     */
+    public void routingBatchDo(List<MqDraft> drafts) {
+        //按主题分组（保持原有顺序）
+        Map<String, List<MqDraft>> topicDraftsMap = new LinkedHashMap<>();
+        for (MqDraft draft : drafts) {
+            topicDraftsMap.computeIfAbsent(draft.topic, k -> new ArrayList<>()).add(draftStored(draft));
+        }
 
-        if (topicConsumerSet != null) {
-            //避免遍历 Set 时，出现 add or remove 而异常
-            List<String> topicConsumerList = new ArrayList<>(topicConsumerSet);
+        for (Map.Entry<String, List<MqDraft>> kv : topicDraftsMap.entrySet()) {
+            //取出所有订阅的主题队列（快照，不怕遍历时变化）
+            MqQueue[] queues = routingOf(kv.getKey());
 
-            for (String topicConsumer : topicConsumerList) {
-                MqQueue queue = queueMap.get(topicConsumer);
-                if (queue == null || queue.isTransaction()) {
+            for (MqQueue queue : queues) {
+                if (queue.isTransaction()) {
                     continue;
                 }
 
-                routingToQueueDo(draft, queue);
+                for (MqDraft draft : kv.getValue()) {
+                    routingToQueueDo(draft, queue);
+                }
             }
         }
     }
@@ -223,11 +380,50 @@ public abstract class MqBorkerListenerBase extends EventListener implements MqBo
      */
     public void routingToQueueDo(MqDraft draft, MqQueue queue) {
         if (queue != null) {
-            MqMessageHolder messageHolder = new MqMessageHolder(draft, queue.getQueueName(), queue.getConsumerGroup());
+            draft = draftStored(draft);
+            MqMessageHolder messageHolder = new MqMessageHolder(draft, queue.getQueueName(), queue.getConsumerGroup(), queue.getTopic());
             queue.add(messageHolder);
         }
     }
 
+    /**
+     * 执行路由（批量进同一队列）
+     */
+    public void routingToQueueBatchDo(List<MqDraft> drafts, MqQueue queue) {
+        if (queue != null) {
+            List<MqMessageHolder> messageHolders = new ArrayList<>(drafts.size());
+            for (MqDraft draft : drafts) {
+                messageHolders.add(new MqMessageHolder(draftStored(draft), queue.getQueueName(), queue.getConsumerGroup(), queue.getTopic()));
+            }
+
+            queue.addAll(messageHolders);
+        }
+    }
+
+    /**
+     * 草稿的消息体转到存储（没有配置存储时，原样返回）
+     */
+    protected MqDraft draftStored(MqDraft draft) {
+        if (bodyStore == null) {
+            return draft;
+        } else {
+            return draft.storeTo(bodyStore);
+        }
+    }
+
+    /**
+     * 回收消息体存储（删除没有活跃消息的段）
+     */
+    protected void bodyStoreReclaim() {
+        MqBodyStore bodyStoreRef = bodyStore;
+        if (bodyStoreRef == null || bodyStoreRef.segmentCount() < 2) {
+            return;
+        }
+
+        //按段的活跃计数回收（不用遍历消息）
+        bodyStoreRef.reclaim();
+    }
+
     /**
      * 执行取消路由
      */
@@ -242,52 +438,112 @@ public abstract class MqBorkerListenerBase extends EventListener implements MqBo
         //复用解析
         String topic = message.meta(MqConstants.MQ_META_TOPIC);
 
-        //取出所有订阅的主题消费者
-        Set<String> topicConsumerSet = subscribeMap.get(topic);
+        //取出所有订阅的主题队列（快照，不怕遍历时变化）
+        MqQueue[] queues = routingOf(topic);
+
+        for (MqQueue queue : queues) {
+            queue.removeAt(key);
+        }
+    }
+
+    /**
+     * 唤醒队列派发
+     *
+     * @param queue 队列
+     * @param time  可派发的时间（未到时，定时唤醒）
+     */
+    protected void distributeWakeup(MqQueueBase queue, long time) {
+        distributeSchedulerOf(queue.getQueueName()).wakeup(queue, time);
+    }
+
+    /**
+     * 获取队列所属的派发调度器（按队列名稳定哈希）
+     */
+    protected MqDistributeScheduler distributeSchedulerOf(String queueName) {
+        MqDistributeScheduler[] schedulers = distributeSchedulers;
+
+        if (schedulers.length == 1) {
+            return schedulers[0];
+        } else {
+            return schedulers[(queueName.hashCode() & Integer.MAX_VALUE) % schedulers.length];
+        }
+    }
 
-        if (topicConsumerSet != null) {
-            //避免遍历 Set 时，出现 add or remove 而异常
-            List<String> topicConsumerList = new ArrayList<>(topicConsumerSet);
+    /**
+     * 唤醒所有队列派发（启动后，或会话变化时）
+     */
+    protected void distributeWakeupAll(boolean transactionOnly) {
+        for (MqQueue queue : queueMap.values()) {
+            if (transactionOnly && queue.isTransaction() == false) {
+                continue;
+            }
 
-            for (String topicConsumer : topicConsumerList) {
-                MqQueue queue = queueMap.get(topicConsumer);
-                queue.removeAt(key);
+            if (queue instanceof MqQueueBase) {
+                distributeWakeup((MqQueueBase) queue, 0L);
             }
         }
     }
 
     /**
-     * 执行派发
+     * 执行派发（只处理就绪的队列；没有就绪时，停靠到最近的唤醒时间）
      */
-    protected void distributeDo() {
-        while (!distributeThread.isInterrupted()) {
+    protected void distributeDo(MqDistributeScheduler scheduler) {
+        while (!Thread.currentThread().isInterrupted()) {
+            MqQueueBase queue = null;
+
             try {
+                queue = scheduler.take();
+
+                if (isStarted.get() == false) {
+                    //未启动的，启动后会全部唤醒
+                    continue;
+                }
+
+                //每轮最多派发 batchSize 条，或用完时间预算
+                int batchSize = queue.getDistributeBatchSize();
+                if (batchSize < 1) {
+                    batchSize = distributeBatchSize;
+                }
+
+                long deadline = System.nanoTime() + DISTRIBUTE_BATCH_BUDGET_NANOS;
+                boolean hasMore;
                 int count = 0;
 
-                if (isStarted.get()) {
-                    List<MqQueue> queueList = new ArrayList<>(queueMap.values());
-                    for (MqQueue queue : queueList) {
-                        try {
-                            if (queue.distribute()) {
-                                count++;
-                            }
-                        } catch (Throwable e) {
-                            if (log.isWarnEnabled()) {
-                                log.warn("Broker: queue take error, queue={}", queue.getQueueName(), e);
-                            }
+                try {
+                    while (hasMore = queue.distribute()) {
+                        if (++count >= batchSize || System.nanoTime() >= deadline) {
+                            break;
                         }
                     }
+                } finally {
+                    //本轮结束，发出批量派发的缓冲
+                    queue.distributeFlush();
                 }
 
-                if (count == 0) {
-                    //一点消息都没有，就修复下
-                    Thread.sleep(10);
+                if (hasMore) {
+                    //还有可派的，重新排队（轮流派发，避免热点队列独占）
+                    distributeWakeup(queue, 0L);
+                } else {
+                    //下次可派发时，再唤醒
+                    long nextTime = queue.distributeNextTime();
+                    if (nextTime < Long.MAX_VALUE) {
+                        distributeWakeup(queue, nextTime);
+                    }
                 }
+            } catch (InterruptedException e) {
+                break;
             } catch (Throwable e) {
-                if (e instanceof InterruptedException == false) {
+                if (queue == null) {
                     if (log.isWarnEnabled()) {
                         log.warn("Broker: queue distribute error", e);
                     }
+                } else {
+                    if (log.isWarnEnabled()) {
+                        log.warn("Broker: queue take error, queue={}", queue.getQueueName(), e);
+                    }
+
+                    //出错的，稍后再试
+                    distributeWakeup(queue, System.currentTimeMillis() + 10);
                 }
             }
         }
@@ -0,0 +1,47 @@
+package org.noear.folkmq.broker;
+
+/**
+ * 消费者选择器（给消费者会话评分，分数最小的优先；分数相同的轮流）
+ * <br/>
+ * 没有信用的会话（未回执已达预取数量）不参与评分
+ *
+ * @author noear
+ * @since 1.7
+ */
+@FunctionalInterface
+public interface MqConsumerSelector {
+    /**
+     * 轮询（默认）
+     */
+    MqConsumerSelector POLL = state -> 0L;
+
+    /**
+     * 最少未回执
+     */
+    MqConsumerSelector LEAST_INFLIGHT = state -> state.getInflight();
+
+    /**
+     * 回执耗时加权（未回执数量 x 平均回执耗时；新会话还没有耗时，会先被试探）
+     */
+    MqConsumerSelector LATENCY = state -> (state.getInflight() + 1L) * Math.max(state.getLatencyEwma(), 1L);
+
+    /**
+     * 评分（越小越优先）
+     *
+     * @param state 消费者状态
+     */
+    long score(MqConsumerState state);
+
+    /**
+     * 按名字获取（poll, least_inflight, latency；其它的为 poll）
+     */
+    static MqConsumerSelector of(String name) {
+        if ("least_inflight".equals(name)) {
+            return LEAST_INFLIGHT;
+        } else if ("latency".equals(name)) {
+            return LATENCY;
+        } else {
+            return POLL;
+        }
+    }
+}
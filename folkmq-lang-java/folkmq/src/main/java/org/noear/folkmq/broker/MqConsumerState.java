@@ -0,0 +1,79 @@
+package org.noear.folkmq.broker;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 消费者状态（队列里每个会话一份：预取数量、未回执数量、回执耗时）
+ *
+ * @author noear
+ * @since 1.7
+ */
+public class MqConsumerState {
+    //回执耗时的平滑系数
+    private static final double LATENCY_ALPHA = 0.2D;
+
+    //预取数量（0 表示不限）
+    private final int prefetch;
+    //未回执的消息数量
+    private final AtomicInteger inflight = new AtomicInteger();
+    //回执耗时（指数加权移动平均；微秒；0 表示还没有）
+    private volatile long latencyEwma;
+
+    public MqConsumerState(int prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * 获取预取数量（0 表示不限）
+     */
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    /**
+     * 获取未回执的消息数量
+     */
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    /**
+     * 获取回执耗时（指数加权移动平均；微秒；0 表示还没有）
+     */
+    public long getLatencyEwma() {
+        return latencyEwma;
+    }
+
+    /**
+     * 是否还有信用（未回执的没到预取数量）
+     */
+    public boolean hasCredit() {
+        return prefetch < 1 || inflight.get() < prefetch;
+    }
+
+    /**
+     * 派发时
+     */
+    void acquire() {
+        inflight.incrementAndGet();
+    }
+
+    /**
+     * 回执时（或超时、出错时）
+     *
+     * @param latencyMicros 回执耗时（小于 0 表示没有回执，不记）
+     */
+    void release(long latencyMicros) {
+        inflight.decrementAndGet();
+
+        if (latencyMicros >= 0) {
+            //并发回执时偶有覆盖，不影响趋势
+            long ewma = latencyEwma;
+            if (ewma == 0L) {
+                latencyEwma = Math.max(latencyMicros, 1L);
+            } else {
+                latencyEwma = Math.max(ewma + (long) ((latencyMicros - ewma) * LATENCY_ALPHA), 1L);
+            }
+        }
+    }
+}
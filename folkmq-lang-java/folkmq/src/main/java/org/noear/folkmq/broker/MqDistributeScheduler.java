@@ -0,0 +1,148 @@
+package org.noear.folkmq.broker;
+
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 派发调度器（就绪队列 + 定时唤醒）
+ * <br/>
+ * 队列有消息可派（或头部消息到期）时，把自己登记为就绪；派发线程没有就绪队列时，停靠到最近的唤醒时间
+ *
+ * @author noear
+ * @since 1.7
+ */
+public class MqDistributeScheduler {
+    //调度锁
+    private final ReentrantLock lock = new ReentrantLock();
+    //就绪信号
+    private final Condition readyCondition = lock.newCondition();
+    //就绪队列
+    private final ArrayDeque<MqQueueBase> readyQueue = new ArrayDeque<>();
+    //唤醒定时（按时间排序）
+    private final PriorityQueue<WakeTimer> timerQueue = new PriorityQueue<>();
+
+    /**
+     * 唤醒队列
+     *
+     * @param queue 队列
+     * @param time  可派发的时间（未到时，定时唤醒）
+     */
+    public void wakeup(MqQueueBase queue, long time) {
+        if (queue.distributeReady.get()) {
+            //已就绪
+            return;
+        }
+
+        if (time > System.currentTimeMillis()) {
+            if (time >= queue.distributeWakeTime.get()) {
+                //已有更早的唤醒定时
+                return;
+            }
+
+            lock.lock();
+            try {
+                if (time < queue.distributeWakeTime.get()) {
+                    queue.distributeWakeTime.set(time);
+                    timerQueue.add(new WakeTimer(queue, time));
+
+                    if (timerQueue.peek().queue == queue) {
+                        //最近的定时有变，让派发线程重新计算停靠时间
+                        readyCondition.signal();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        } else {
+            if (queue.distributeReady.compareAndSet(false, true)) {
+                lock.lock();
+                try {
+                    readyQueue.add(queue);
+                    readyCondition.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * 取出一个就绪队列（没有时，停靠到最近的唤醒时间）
+     */
+    public MqQueueBase take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                long now = System.currentTimeMillis();
+
+                //到期的定时，转为就绪
+                WakeTimer timer;
+                while ((timer = timerQueue.peek()) != null && timer.time <= now) {
+                    timerQueue.poll();
+
+                    if (timer.queue.distributeWakeTime.compareAndSet(timer.time, Long.MAX_VALUE)) {
+                        if (timer.queue.distributeReady.compareAndSet(false, true)) {
+                            readyQueue.add(timer.queue);
+                        }
+                    }
+                }
+
+                MqQueueBase queue = readyQueue.poll();
+                if (queue != null) {
+                    //先取消就绪标识（派发期间再有信号，会重新登记）
+                    queue.distributeReady.set(false);
+                    return queue;
+                }
+
+                if (timer == null) {
+                    readyCondition.await();
+                } else {
+                    readyCondition.await(timer.time - now, TimeUnit.MILLISECONDS);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 清空
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            for (MqQueueBase queue : readyQueue) {
+                queue.distributeReady.set(false);
+            }
+            for (WakeTimer timer : timerQueue) {
+                timer.queue.distributeWakeTime.set(Long.MAX_VALUE);
+            }
+
+            readyQueue.clear();
+            timerQueue.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 唤醒定时
+     */
+    static class WakeTimer implements Comparable<WakeTimer> {
+        final MqQueueBase queue;
+        final long time;
+
+        WakeTimer(MqQueueBase queue, long time) {
+            this.queue = queue;
+            this.time = time;
+        }
+
+        @Override
+        public int compareTo(WakeTimer o) {
+            return Long.compare(time, o.time);
+        }
+    }
+}
@@ -2,15 +2,22 @@ package org.noear.folkmq.broker;
 
 import org.noear.folkmq.common.MqMetasResolver;
 import org.noear.socketd.transport.core.EntityMetas;
+import org.noear.socketd.transport.core.Flags;
 import org.noear.socketd.transport.core.Message;
+import org.noear.socketd.transport.core.entity.EntityDefault;
+import org.noear.socketd.transport.core.entity.MessageBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * 消息草稿
+ * 消息草稿（元信息在这里一次解析为字段；持有人只用字段，不再反复读取元信息）
  *
  * @author noear
  * @since 1.4
  */
 public class MqDraft {
+    private static final Logger log = LoggerFactory.getLogger(MqDraft.class);
+
     public final MqMetasResolver mr;
     public final Message source;
     public final String sender;
@@ -25,6 +32,10 @@ public class MqDraft {
     public final boolean broadcast;
     public final boolean transaction;
     public final String sequenceSharding;
+    //消息体所在的存储段（-1 表示没有用存储，消息体在堆上）
+    public final long storeSegmentId;
+    //消息体所在的存储段（用于活跃计数）
+    final MqBodyStore.Segment storeSegment;
 
     /**
      * 协议版本号
@@ -62,5 +73,56 @@ public class MqDraft {
         } else {
             scheduled = scheduledTmp;
         }
+
+        storeSegmentId = -1L;
+        storeSegment = null;
+    }
+
+    private MqDraft(MqDraft from, Message source, MqBodyStore.Slot slot) {
+        this.mr = from.mr;
+        this.source = source;
+
+        sender = from.sender;
+        atName = from.atName;
+        key = from.key;
+        topic = from.topic;
+        qos = from.qos;
+        times = from.times;
+        expiration = from.expiration;
+        scheduled = from.scheduled;
+        sequence = from.sequence;
+        sequenceSharding = from.sequenceSharding;
+        broadcast = from.broadcast;
+        transaction = from.transaction;
+
+        this.storeSegmentId = slot.segmentId;
+        this.storeSegment = slot.segment;
+    }
+
+    /**
+     * 把消息体转到存储（返回新草稿，原消息不再被引用；已转过的，返回自己）
+     *
+     * @param store 消息体存储
+     */
+    public MqDraft storeTo(MqBodyStore store) {
+        if (storeSegmentId >= 0) {
+            return this;
+        }
+
+        try {
+            MqBodyStore.Slot slot = store.write(source.data());
+
+            Message message = new MessageBuilder()
+                    .flag(Flags.Message)
+                    .sid(source.sid())
+                    .entity(new EntityDefault().dataSet(slot.data).metaMapPut(source.metaMap()))
+                    .build();
+
+            return new MqDraft(this, message, slot);
+        } catch (Throwable e) {
+            //存储失败，留在堆上
+            log.warn("Broker: message body store failed, key={}", key, e);
+            return this;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,210 @@
+package org.noear.folkmq.broker;
+
+import org.noear.folkmq.common.MqMetasIterable;
+import org.noear.socketd.transport.core.Entity;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * 消息持有人的实体（写时复制：消息体与公共元信息，与原消息共享；各队列只存自己改过的元信息）
+ * <br/>
+ * 一条消息发到多个消费者组时，不再为每个队列复制整个元信息
+ *
+ * @author noear
+ * @since 1.7
+ */
+public class MqMessageEntity implements Entity, MqMetasIterable {
+    private static final String META_AT = "@";
+
+    //原消息（共享，只读）
+    private final Entity source;
+    //改过的元信息（键值交替存放；值为 null 表示已删除）
+    private String[] overlay = new String[8];
+    private int overlaySize;
+
+    public MqMessageEntity(Entity source) {
+        this.source = source;
+    }
+
+    /**
+     * 设置投放目标
+     */
+    public MqMessageEntity at(String name) {
+        putMeta(META_AT, name);
+        return this;
+    }
+
+    /**
+     * 获取元信息字符串（合并后的）
+     */
+    @Override
+    public synchronized String metaString() {
+        StringBuilder buf = new StringBuilder(256);
+
+        for (Map.Entry<String, String> kv : source.metaMap().entrySet()) {
+            if (overlayIndexOf(kv.getKey()) < 0) {
+                appendMeta(buf, kv.getKey(), kv.getValue());
+            }
+        }
+
+        for (int i = 0; i < overlaySize; i += 2) {
+            if (overlay[i + 1] != null) {
+                appendMeta(buf, overlay[i], overlay[i + 1]);
+            }
+        }
+
+        return buf.toString();
+    }
+
+    /**
+     * 遍历元信息（合并后的；不生成字典，用于编码等热点）
+     */
+    @Override
+    public synchronized void metaForEach(BiConsumer<String, String> consumer) {
+        for (Map.Entry<String, String> kv : source.metaMap().entrySet()) {
+            if (overlayIndexOf(kv.getKey()) < 0) {
+                consumer.accept(kv.getKey(), kv.getValue());
+            }
+        }
+
+        for (int i = 0; i < overlaySize; i += 2) {
+            if (overlay[i + 1] != null) {
+                consumer.accept(overlay[i], overlay[i + 1]);
+            }
+        }
+    }
+
+    /**
+     * 获取元信息字典（合并后的副本；修改它不会影响实体）
+     */
+    @Override
+    public synchronized Map<String, String> metaMap() {
+        Map<String, String> map = new LinkedHashMap<>(source.metaMap());
+
+        for (int i = 0; i < overlaySize; i += 2) {
+            if (overlay[i + 1] == null) {
+                map.remove(overlay[i]);
+            } else {
+                map.put(overlay[i], overlay[i + 1]);
+            }
+        }
+
+        return map;
+    }
+
+    @Override
+    public synchronized String meta(String name) {
+        int idx = overlayIndexOf(name);
+        if (idx < 0) {
+            return source.meta(name);
+        } else {
+            return overlay[idx + 1];
+        }
+    }
+
+    @Override
+    public String metaOrDefault(String name, String def) {
+        String val = meta(name);
+        if (val == null) {
+            return def;
+        } else {
+            return val;
+        }
+    }
+
+    @Override
+    public synchronized void putMeta(String name, String val) {
+        int idx = overlayIndexOf(name);
+        if (idx < 0) {
+            if (overlaySize == overlay.length) {
+                String[] tmp = new String[overlay.length * 2];
+                System.arraycopy(overlay, 0, tmp, 0, overlaySize);
+                overlay = tmp;
+            }
+
+            overlay[overlaySize] = name;
+            overlay[overlaySize + 1] = val;
+            overlaySize += 2;
+        } else {
+            overlay[idx + 1] = val;
+        }
+    }
+
+    @Override
+    public void delMeta(String name) {
+        //记为删除（原消息的元信息不能动）
+        putMeta(name, null);
+    }
+
+    /**
+     * 获取数据（各读取方一个视图；消息体是多个队列、多个线程共享的，不能动它的位置）
+     */
+    @Override
+    public ByteBuffer data() {
+        return source.data().duplicate();
+    }
+
+    @Override
+    public String dataAsString() {
+        if (source.data().hasArray()) {
+            return source.dataAsString();
+        } else {
+            return new String(dataAsBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Override
+    public byte[] dataAsBytes() {
+        ByteBuffer data = source.data();
+        if (data.hasArray()) {
+            return source.dataAsBytes();
+        }
+
+        //堆外的（消息体存储），从视图复制（原实现会移动共享缓冲的位置）
+        byte[] bytes = new byte[source.dataSize()];
+        ByteBuffer view = data.duplicate();
+        view.position(0);
+        view.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public int dataSize() {
+        return source.dataSize();
+    }
+
+    @Override
+    public void release() {
+        //消息体是共享的，不在这里释放
+    }
+
+    private int overlayIndexOf(String name) {
+        for (int i = 0; i < overlaySize; i += 2) {
+            if (overlay[i].equals(name)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static void appendMeta(StringBuilder buf, String name, String val) {
+        if (buf.length() > 0) {
+            buf.append('&');
+        }
+
+        buf.append(name).append('=').append(val);
+    }
+
+    @Override
+    public String toString() {
+        return "Entity{" +
+                "meta='" + metaString() + '\'' +
+                ", data=byte[" + dataSize() + ']' +
+                '}';
+    }
+}
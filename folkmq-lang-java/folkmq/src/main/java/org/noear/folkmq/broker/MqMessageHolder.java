@@ -1,10 +1,12 @@
 package org.noear.folkmq.broker;
 
 import org.noear.folkmq.common.MqMetasResolver;
+import org.noear.socketd.transport.core.Entity;
 import org.noear.socketd.transport.core.Message;
 import org.noear.socketd.transport.core.entity.EntityDefault;
 import org.noear.socketd.transport.core.entity.MessageBuilder;
 
+import java.util.Set;
 import java.util.concurrent.Delayed;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -20,7 +22,7 @@ public class MqMessageHolder implements Delayed {
     //消息草稿
     private final MqDraft draft;
     //消息实体
-    private final EntityDefault entity;
+    private final MqMessageEntity entity;
 
     //是否事务
     private boolean transaction;
@@ -35,14 +37,44 @@ public class MqMessageHolder implements Delayed {
     private volatile long distributeIdx;
     //是否完成
     private AtomicBoolean isDone;
+    //元信息待同步（派发次数与时间先记在字段上，发送或持久化取实体时才写回元信息）
+    private volatile boolean metasStale;
+
+    //队列槽位（由 MqMessageHolderQueue 维护；-1 表示不在队列中）
+    int queueIndex = -1;
+    //入队时的派发次数（由 MqMessageHolderQueue 维护；用于计数器扣减）
+    int queueCount;
+    //时间轮桶与链表指针（由 MqTimingWheel 维护）
+    MqTimingWheel.Bucket wheelBucket;
+    MqMessageHolder wheelPrev;
+    MqMessageHolder wheelNext;
+    //是否在顺序分片下等待（由 MqSequenceShards 维护）
+    boolean sequenceWaiting;
+    //派发到的消费者状态与派发时间（由 MqQueueDefault 维护；派发后到回执前占用）
+    private MqConsumerState consumerState;
+    private long consumerTime;
+    //批量派发的未回执登记（由 MqQueueDefault 维护；派发后到回执前占用）
+    private Set<MqMessageHolder> inflight;
 
     public MqMessageHolder(MqDraft draft, String queueName, String consumerGroup) {
+        this(draft, queueName, consumerGroup, null);
+    }
+
+    /**
+     * @param subscribeTopic 订阅的主题（通配订阅时，与消息主题不同）
+     */
+    public MqMessageHolder(MqDraft draft, String queueName, String consumerGroup, String subscribeTopic) {
         this.draft = draft;
         this.mr = draft.mr;
-        this.entity = new EntityDefault().dataSet(this.draft.source.data()).metaMapPut(this.draft.source.metaMap());
+        //与原消息共享消息体与公共元信息（只记本队列改过的）
+        this.entity = new MqMessageEntity(this.draft.source);
 
         this.mr.setConsumerGroup(entity, consumerGroup);
 
+        if (subscribeTopic != null && subscribeTopic.equals(this.draft.topic) == false) {
+            this.mr.setSubscribeTopic(entity, subscribeTopic);
+        }
+
         this.isDone = new AtomicBoolean();
 
         this.transaction = this.draft.transaction;
@@ -64,6 +96,53 @@ public class MqMessageHolder implements Delayed {
         }
     }
 
+    /**
+     * 派发到消费者（占用其信用）
+     */
+    synchronized void consumerAcquire(MqConsumerState consumerState) {
+        consumerState.acquire();
+
+        this.consumerState = consumerState;
+        this.consumerTime = System.nanoTime();
+    }
+
+    /**
+     * 释放消费者信用（只会释放一次；没有占用的，返回 false）
+     *
+     * @param acknowledged 是否有回执（有的，记录回执耗时）
+     */
+    synchronized boolean consumerRelease(boolean acknowledged) {
+        if (consumerState == null) {
+            return false;
+        }
+
+        consumerState.release(acknowledged ? (System.nanoTime() - consumerTime) / 1000L : -1L);
+        consumerState = null;
+        return true;
+    }
+
+    /**
+     * 登记到批量派发的未回执集合（已在别的集合中的，先移出）
+     */
+    synchronized void inflightAcquire(Set<MqMessageHolder> inflight) {
+        if (this.inflight != null) {
+            this.inflight.remove(this);
+        }
+
+        inflight.add(this);
+        this.inflight = inflight;
+    }
+
+    /**
+     * 移出批量派发的未回执集合（没有登记的，跳过）
+     */
+    synchronized void inflightRelease() {
+        if (inflight != null) {
+            inflight.remove(this);
+            inflight = null;
+        }
+    }
+
     /**
      * 发送人
      */
@@ -78,6 +157,20 @@ public class MqMessageHolder implements Delayed {
         return draft.atName;
     }
 
+    /**
+     * 获取消息体所在的存储段（-1 表示消息体在堆上）
+     */
+    public long getStoreSegmentId() {
+        return draft.storeSegmentId;
+    }
+
+    /**
+     * 获取消息体所在的存储段（null 表示消息体在堆上）
+     */
+    MqBodyStore.Segment getStoreSegment() {
+        return draft.storeSegment;
+    }
+
     /**
      * 获取消息主键
      */
@@ -86,12 +179,43 @@ public class MqMessageHolder implements Delayed {
     }
 
     /**
-     * 获取消息内容
+     * 获取消息内容（元信息为最新）
      */
-    public EntityDefault getEntity() {
+    public Entity getMessageEntity() {
+        if (metasStale) {
+            metasSync();
+        }
+
         return entity;
     }
 
+    /**
+     * 获取消息内容（副本：元信息合并，消息体共享；修改它不会影响持有人）
+     *
+     * @deprecated 1.7 （实体改为写时复制，不再是 EntityDefault）
+     */
+    @Deprecated
+    public EntityDefault getEntity() {
+        Entity tmp = getMessageEntity();
+        return new EntityDefault().metaMapPut(tmp.metaMap()).dataSet(tmp.data());
+    }
+
+    /**
+     * 同步元信息（把派发次数与时间写回）
+     */
+    private synchronized void metasSync() {
+        if (metasStale) {
+            //先清标记（同步中又有延后的，下次再同步）
+            metasStale = false;
+
+            mr.setTimes(entity, distributeCount);
+
+            if (isSequence() == false) {
+                mr.setScheduled(entity, distributeTimeRef);
+            }
+        }
+    }
+
     /**
      * 质量等级（0 或 1）
      */
@@ -114,6 +238,9 @@ public class MqMessageHolder implements Delayed {
     }
 
     public Message noTransaction() {
+        //先写回之前的延后
+        metasSync();
+
         transaction = false;
         distributeCountPre = 0;
         distributeCount = 0;
@@ -128,7 +255,7 @@ public class MqMessageHolder implements Delayed {
 
         return new MessageBuilder()
                 .sid(getKey())
-                .entity(getEntity()).build();
+                .entity(getMessageEntity()).build();
     }
 
     /**
@@ -157,10 +284,7 @@ public class MqMessageHolder implements Delayed {
      */
     public void setDistributeTime(long distributeTime) {
         this.distributeTimeRef = distributeTime;
-
-        if (isSequence() == false) {
-            this.distributeTime = distributeTimeRef;
-        }
+        this.distributeTime = distributeTimeRef;
     }
 
     /**
@@ -170,6 +294,13 @@ public class MqMessageHolder implements Delayed {
         this.distributeIdx = distributeIdx;
     }
 
+    /**
+     * 获取派发顺序位
+     */
+    public long getDistributeIdx() {
+        return distributeIdx;
+    }
+
     /**
      * 获取派发时间（单位：毫秒）
      */
@@ -225,14 +356,11 @@ public class MqMessageHolder implements Delayed {
         distributeCountPre = distributeCount;
         distributeTimeRef = newTime;
 
-        //设置新的派发次数和下次时间
-        mr.setTimes(entity, distributeCount);
+        //调整队列里的派发时间（顺序消息重试时一直占着分片，同分片后面的不会越过它）
+        distributeTime = distributeTimeRef;
 
-        if (isSequence() == false) {
-            //如果不是顺序消息，调整队列里的派发时间；否则走外部了的时间控制
-            distributeTime = distributeTimeRef;
-            mr.setScheduled(entity, distributeTimeRef);
-        }
+        //新的派发次数和下次时间，取实体时再写回元信息（避免每次延后都做字符串转换）
+        metasStale = true;
 
         return this;
     }
@@ -3,9 +3,52 @@ package org.noear.folkmq.broker;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * 消息持有人表（进出表时，增减消息体存储段的活跃计数）
+ *
  * @author noear
  * @since 1.5
  */
 public class MqMessageHolderMap extends ConcurrentHashMap<String, MqMessageHolder> {
+    @Override
+    public MqMessageHolder put(String key, MqMessageHolder value) {
+        MqMessageHolder old = super.put(key, value);
 
+        if (old != value) {
+            storeRetain(value);
+            storeRelease(old);
+        }
+
+        return old;
+    }
+
+    @Override
+    public MqMessageHolder remove(Object key) {
+        MqMessageHolder old = super.remove(key);
+        storeRelease(old);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        //逐个移除（以便释放计数）
+        for (String key : keySet()) {
+            remove(key);
+        }
+    }
+
+    private static void storeRetain(MqMessageHolder messageHolder) {
+        MqBodyStore.Segment segment = messageHolder.getStoreSegment();
+        if (segment != null) {
+            segment.liveCount.incrementAndGet();
+        }
+    }
+
+    private static void storeRelease(MqMessageHolder messageHolder) {
+        if (messageHolder != null) {
+            MqBodyStore.Segment segment = messageHolder.getStoreSegment();
+            if (segment != null) {
+                segment.liveCount.decrementAndGet();
+            }
+        }
+    }
 }
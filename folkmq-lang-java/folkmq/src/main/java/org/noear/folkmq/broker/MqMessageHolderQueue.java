@@ -1,65 +1,326 @@
 package org.noear.folkmq.broker;
 
-import java.util.concurrent.DelayQueue;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * MqMessageHolder 数据队列
+ * MqMessageHolder 数据队列（索引堆；每个消息持有人记录自己的堆槽位，移除与重排为 O(log n)）
+ * <br/>
+ * 可选时间轮：远期的定时与重试消息先挂在时间轮上，到期后才进入派发堆（避免大量未到期消息拖慢派发）
  *
  * @author noear
  * @since 1.4
  */
-public class MqMessageHolderQueue extends DelayQueue<MqMessageHolder> {
+public class MqMessageHolderQueue {
+    private static final int INITIAL_CAPACITY = 64;
+
     //消息计数器
     private final AtomicLong[] _counters = new AtomicLong[9];
+    //队列锁
+    private final ReentrantLock lock = new ReentrantLock();
+    //时间轮（可选）
+    private final MqTimingWheel timingWheel;
+
+    //堆数组（按 distributeTime, distributeIdx 排序）
+    private MqMessageHolder[] heap = new MqMessageHolder[INITIAL_CAPACITY];
+    private int size;
 
     public MqMessageHolderQueue() {
-        super();
+        this(false);
+    }
 
+    /**
+     * @param timingWheel 是否启用时间轮
+     */
+    public MqMessageHolderQueue(boolean timingWheel) {
         //初始化计数器
         for (int i = 0; i < _counters.length; i++) {
             _counters[i] = new AtomicLong();
         }
+
+        if (timingWheel) {
+            this.timingWheel = new MqTimingWheel(this::heapAdd);
+        } else {
+            this.timingWheel = null;
+        }
     }
 
-    @Override
+    /**
+     * 添加（如果已在队列中，则按新的派发时间重排）
+     */
     public boolean add(MqMessageHolder mh) {
-        countAdd(mh);
-        return super.add(mh);
+        lock.lock();
+        try {
+            //如果已在队列中，先移除（再按新的派发时间放入）
+            removeDo(mh);
+
+            countAdd(mh);
+
+            if (timingWheel != null) {
+                //先推进，确保挂轮的位置是相对当前时间的
+                timingWheel.advance(System.currentTimeMillis());
+
+                if (timingWheel.add(mh)) {
+                    return true;
+                }
+            }
+
+            heapAdd(mh);
+            return true;
+        } finally {
+            lock.unlock();
+        }
     }
 
-    @Override
+    /**
+     * 批量添加（先追加到堆尾，再整体建堆 O(n)；用于恢复等大批量场景）
+     */
+    public void addAll(Collection<MqMessageHolder> mhs) {
+        lock.lock();
+        try {
+            if (timingWheel != null) {
+                timingWheel.advance(System.currentTimeMillis());
+            }
+
+            int sizeOld = size;
+
+            for (MqMessageHolder mh : mhs) {
+                //如果已在队列中，先移除（再按新的派发时间放入）
+                removeDo(mh);
+
+                countAdd(mh);
+
+                if (timingWheel != null && timingWheel.add(mh)) {
+                    continue;
+                }
+
+                if (size == heap.length) {
+                    heap = Arrays.copyOf(heap, Math.max(size + (size >> 1), size + mhs.size()));
+                }
+
+                heap[size] = mh;
+                mh.queueIndex = size;
+                size++;
+            }
+
+            int appended = size - sizeOld;
+            if (appended > sizeOld) {
+                //追加的多，整体建堆
+                for (int i = (size >>> 1) - 1; i >= 0; i--) {
+                    siftDown(i, heap[i]);
+                }
+            } else {
+                //追加的少，逐个上浮
+                for (int i = sizeOld; i < size; i++) {
+                    siftUp(i, heap[i]);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取出已到期的头部消息（未到期时返回 null）
+     */
     public MqMessageHolder poll() {
-        MqMessageHolder mh = super.poll();
-        if (mh != null) {
-            countSub(mh);
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+
+            if (timingWheel != null) {
+                timingWheel.advance(now);
+            }
+
+            MqMessageHolder mh = (size == 0 ? null : heap[0]);
+            if (mh == null || mh.getDistributeTime() > now) {
+                return null;
+            }
+
+            countSub(mh.queueCount);
+            heapRemoveAt(0);
+            return mh;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 查看派发堆的头部消息（不管是否到期；时间轮上的远期消息不在此列）
+     */
+    public MqMessageHolder peek() {
+        lock.lock();
+        try {
+            if (timingWheel != null) {
+                timingWheel.advance(System.currentTimeMillis());
+            }
+
+            return (size == 0 ? null : heap[0]);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 时间轮上最早的到期时间（下界；没有时为 Long.MAX_VALUE）
+     */
+    public long wheelNextTime() {
+        if (timingWheel == null) {
+            return Long.MAX_VALUE;
+        }
+
+        lock.lock();
+        try {
+            return timingWheel.nextTime();
+        } finally {
+            lock.unlock();
         }
-        return mh;
     }
 
-    @Override
-    public boolean remove(Object o) {
-        boolean tmp = super.remove(o);
-        if (tmp) {
-            countSub((MqMessageHolder) o);
+    /**
+     * 移除（索引堆 O(log n)；时间轮 O(1)）
+     */
+    public boolean remove(MqMessageHolder mh) {
+        lock.lock();
+        try {
+            return removeDo(mh);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 数量
+     */
+    public int size() {
+        lock.lock();
+        try {
+            if (timingWheel == null) {
+                return size;
+            } else {
+                return size + timingWheel.size();
+            }
+        } finally {
+            lock.unlock();
         }
-        return tmp;
     }
 
-    @Override
+    /**
+     * 是否为空
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 清空
+     */
     public void clear() {
-        super.clear();
+        lock.lock();
+        try {
+            for (int i = 0; i < size; i++) {
+                heap[i].queueIndex = -1;
+                heap[i] = null;
+            }
+            size = 0;
+
+            if (timingWheel != null) {
+                timingWheel.clear();
+            }
 
-        for (AtomicLong l1 : _counters) {
-            l1.set(0L);
+            for (AtomicLong l1 : _counters) {
+                l1.set(0L);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
+    private boolean removeDo(MqMessageHolder mh) {
+        int idx = mh.queueIndex;
+        if (idx >= 0 && idx < size && heap[idx] == mh) {
+            countSub(mh.queueCount);
+            heapRemoveAt(idx);
+            return true;
+        }
+
+        if (timingWheel != null && timingWheel.remove(mh)) {
+            countSub(mh.queueCount);
+            return true;
+        }
+
+        return false;
+    }
+
+    private void heapAdd(MqMessageHolder mh) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size + (size >> 1));
+        }
+
+        siftUp(size++, mh);
+    }
+
+    private void heapRemoveAt(int idx) {
+        MqMessageHolder removed = heap[idx];
+        removed.queueIndex = -1;
+
+        int last = --size;
+        if (last == idx) {
+            heap[last] = null;
+        } else {
+            MqMessageHolder moved = heap[last];
+            heap[last] = null;
+            siftDown(idx, moved);
+            if (heap[idx] == moved) {
+                siftUp(idx, moved);
+            }
+        }
+    }
+
+    private void siftUp(int idx, MqMessageHolder mh) {
+        while (idx > 0) {
+            int parent = (idx - 1) >>> 1;
+            MqMessageHolder p = heap[parent];
+            if (mh.compareTo(p) >= 0) {
+                break;
+            }
+            heap[idx] = p;
+            p.queueIndex = idx;
+            idx = parent;
+        }
+        heap[idx] = mh;
+        mh.queueIndex = idx;
+    }
+
+    private void siftDown(int idx, MqMessageHolder mh) {
+        int half = size >>> 1;
+        while (idx < half) {
+            int child = (idx << 1) + 1;
+            MqMessageHolder c = heap[child];
+            int right = child + 1;
+            if (right < size && c.compareTo(heap[right]) > 0) {
+                child = right;
+                c = heap[child];
+            }
+            if (mh.compareTo(c) <= 0) {
+                break;
+            }
+            heap[idx] = c;
+            c.queueIndex = idx;
+            idx = child;
+        }
+        heap[idx] = mh;
+        mh.queueIndex = idx;
+    }
+
     /**
-     * 计数加数
+     * 计数加数（记下入队时的次数，出队时按它扣减）
      */
     private void countAdd(MqMessageHolder mh) {
         int n = mh.getDistributeCount();
+        mh.queueCount = n;
 
         if (n > 7) {
             _counters[8].incrementAndGet();
@@ -71,9 +332,7 @@ public class MqMessageHolderQueue extends DelayQueue<MqMessageHolder> {
     /**
      * 计数减数
      */
-    private void countSub(MqMessageHolder mh) {
-        int n = mh.getDistributeCount();
-
+    private void countSub(int n) {
         if (n > 7) {
             _counters[8].decrementAndGet();
         } else {
@@ -91,4 +350,4 @@ public class MqMessageHolderQueue extends DelayQueue<MqMessageHolder> {
             return _counters[n].longValue();
         }
     }
-}
\ No newline at end of file
+}
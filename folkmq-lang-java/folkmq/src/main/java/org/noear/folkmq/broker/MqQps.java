@@ -35,6 +35,13 @@ public class MqQps {
         counter.incrementAndGet();
     }
 
+    /**
+     * 记录（批量）
+     */
+    public void record(int count) {
+        counter.addAndGet(count);
+    }
+
     /**
      * 重置
      */
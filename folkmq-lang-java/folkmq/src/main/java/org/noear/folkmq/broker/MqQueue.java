@@ -30,11 +30,38 @@ public interface MqQueue {
      */
     String getQueueName();
 
+    /**
+     * 获取每轮派发数量（0 表示跟随服务端配置）
+     */
+    int getDistributeBatchSize();
+
+    /**
+     * 设置每轮派发数量（0 表示跟随服务端配置）
+     */
+    void setDistributeBatchSize(int distributeBatchSize);
+
+    /**
+     * 获取消费者选择器（为 null 时，跟随服务端配置）
+     */
+    MqConsumerSelector getConsumerSelector();
+
+    /**
+     * 设置消费者选择器（为 null 时，跟随服务端配置）
+     */
+    void setConsumerSelector(MqConsumerSelector consumerSelector);
+
     /**
      * 添加消费者会话
      */
     void sessionAdd(Session session);
 
+    /**
+     * 添加消费者会话
+     *
+     * @param prefetch 预取数量（未回执的消息上限；0 表示不限）
+     */
+    void sessionAdd(Session session, int prefetch);
+
     /**
      * 移除消费者会话
      */
@@ -55,6 +82,11 @@ public interface MqQueue {
      */
     void add(MqMessageHolder messageHolder);
 
+    /**
+     * 批量添加消息（用于恢复等大批量场景）
+     */
+    void addAll(Collection<MqMessageHolder> messageHolders);
+
     /**
      * 移除消息
      */
@@ -75,6 +107,16 @@ public interface MqQueue {
      */
     boolean distribute();
 
+    /**
+     * 派发刷新（把本轮批量派发的缓冲发出）
+     */
+    void distributeFlush();
+
+    /**
+     * 下次可派发的时间（没有时，为 Long.MAX_VALUE）
+     */
+    long distributeNextTime();
+
     /**
      * 强制清空
      */
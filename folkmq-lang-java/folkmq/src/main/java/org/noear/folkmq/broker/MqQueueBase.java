@@ -2,11 +2,16 @@ package org.noear.folkmq.broker;
 
 import org.noear.socketd.cluster.LoadBalancer;
 import org.noear.socketd.transport.core.Session;
+import org.noear.socketd.utils.SessionUtils;
 import org.noear.socketd.utils.StrUtils;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -28,12 +33,75 @@ public abstract class MqQueueBase implements MqQueue {
     //消息添加锁（公平锁）
     protected final ReentrantLock messageAddLock = new ReentrantLock(true);
 
+    //派发就绪标识（由派发调度器维护）
+    protected final AtomicBoolean distributeReady = new AtomicBoolean(false);
+    //派发唤醒时间（由派发调度器维护）
+    protected final AtomicLong distributeWakeTime = new AtomicLong(Long.MAX_VALUE);
+    //每轮派发数量（0 表示跟随服务端配置）
+    private volatile int distributeBatchSize;
+
     //消费者会话列表
     private final List<Session> consumerSessions = new CopyOnWriteArrayList<>();
+    //消费者会话的状态
+    private final Map<Session, MqConsumerState> consumerStates = new ConcurrentHashMap<>();
+    //是否有会话声明了预取数量
+    private volatile boolean consumerPrefetched;
+    //消费者选择器（为 null 时，跟随服务端配置）
+    private volatile MqConsumerSelector consumerSelector;
+    //消费者轮询计数
+    private final AtomicInteger consumerRoundCounter = new AtomicInteger();
+    //信用耗尽的时间（所有会话都达到预取数量时；0 表示没有耗尽）
+    protected volatile long creditStarvedTime;
 
     public MqQueueBase() {
+        this(false);
+    }
+
+    /**
+     * @param timingWheel 是否启用时间轮（远期的定时与重试消息，到期后才进入派发堆）
+     */
+    public MqQueueBase(boolean timingWheel) {
         this.messageMap = new MqMessageHolderMap();
-        this.messageQueue = new MqMessageHolderQueue();
+        this.messageQueue = new MqMessageHolderQueue(timingWheel);
+    }
+
+    /**
+     * 获取每轮派发数量（0 表示跟随服务端配置）
+     */
+    @Override
+    public int getDistributeBatchSize() {
+        return distributeBatchSize;
+    }
+
+    /**
+     * 设置每轮派发数量（0 表示跟随服务端配置）
+     */
+    @Override
+    public void setDistributeBatchSize(int distributeBatchSize) {
+        this.distributeBatchSize = Math.max(distributeBatchSize, 0);
+    }
+
+    /**
+     * 获取消费者选择器（为 null 时，跟随服务端配置）
+     */
+    @Override
+    public MqConsumerSelector getConsumerSelector() {
+        return consumerSelector;
+    }
+
+    /**
+     * 设置消费者选择器（为 null 时，跟随服务端配置）
+     */
+    @Override
+    public void setConsumerSelector(MqConsumerSelector consumerSelector) {
+        this.consumerSelector = consumerSelector;
+    }
+
+    /**
+     * 服务端配置的消费者选择器
+     */
+    protected MqConsumerSelector consumerSelectorDefault() {
+        return MqConsumerSelector.POLL;
     }
 
     /**
@@ -56,6 +124,24 @@ public abstract class MqQueueBase implements MqQueue {
      */
     @Override
     public void sessionAdd(Session session) {
+        sessionAdd(session, 0);
+    }
+
+    /**
+     * 添加消费者会话
+     *
+     * @param prefetch 预取数量（未回执的消息上限；0 表示不限）
+     */
+    @Override
+    public void sessionAdd(Session session, int prefetch) {
+        prefetch = Math.max(prefetch, 0);
+
+        MqConsumerState state = consumerStates.get(session);
+        if (state == null || state.getPrefetch() != prefetch) {
+            consumerStates.put(session, new MqConsumerState(prefetch));
+            consumerPrefetchedUpdate();
+        }
+
         if (consumerSessions.contains(session) == false) {
             consumerSessions.add(session);
         }
@@ -67,6 +153,22 @@ public abstract class MqQueueBase implements MqQueue {
     @Override
     public void sessionRemove(Session session) {
         consumerSessions.remove(session);
+
+        if (consumerStates.remove(session) != null) {
+            consumerPrefetchedUpdate();
+        }
+    }
+
+    private void consumerPrefetchedUpdate() {
+        boolean prefetched = false;
+        for (MqConsumerState state : consumerStates.values()) {
+            if (state.getPrefetch() > 0) {
+                prefetched = true;
+                break;
+            }
+        }
+
+        consumerPrefetched = prefetched;
     }
 
     @Override
@@ -85,7 +187,90 @@ public abstract class MqQueueBase implements MqQueue {
                 return LoadBalancer.getAnyByHash(consumerSessions, messageHolder.getSequenceSharding());
             }
         } else {
-            return LoadBalancer.getAnyByPoll(consumerSessions);
+            MqConsumerSelector selector = consumerSelector;
+            if (selector == null) {
+                selector = consumerSelectorDefault();
+            }
+
+            if (selector == MqConsumerSelector.POLL && consumerPrefetched == false) {
+                return LoadBalancer.getAnyByPoll(consumerSessions);
+            } else {
+                return sessionGetOneBySelector(selector);
+            }
+        }
+    }
+
+    /**
+     * 获取评分最小的会话（跳过未回执已达预取数量的会话；分数相同的轮流）
+     */
+    private Session sessionGetOneBySelector(MqConsumerSelector selector) {
+        //先标记耗尽，再检查（回执释放信用时，看到标记就会唤醒；避免唤醒丢失）
+        creditStarvedTime = System.currentTimeMillis();
+
+        int size = consumerSessions.size();
+        int start = consumerRoundCounter.incrementAndGet() & Integer.MAX_VALUE;
+        boolean hasActive = false;
+        Session selected = null;
+        long selectedScore = Long.MAX_VALUE;
+
+        for (int i = 0; i < size; i++) {
+            Session s1;
+            try {
+                s1 = consumerSessions.get((start + i) % size);
+            } catch (IndexOutOfBoundsException e) {
+                //遍历时有会话移除
+                break;
+            }
+
+            if (SessionUtils.isActive(s1) == false) {
+                continue;
+            }
+
+            hasActive = true;
+
+            MqConsumerState state = consumerStates.get(s1);
+            if (state == null) {
+                //刚加入（状态还没建好），当作最优
+                selected = s1;
+                break;
+            }
+
+            if (state.hasCredit() == false) {
+                continue;
+            }
+
+            long score = selector.score(state);
+            if (score < selectedScore) {
+                selected = s1;
+                selectedScore = score;
+
+                if (score <= 0L) {
+                    break;
+                }
+            }
+        }
+
+        if (selected != null || hasActive == false) {
+            creditStarvedTime = 0L;
+        }
+
+        return selected;
+    }
+
+    /**
+     * 获取会话的状态
+     */
+    public MqConsumerState consumerStateOf(Session session) {
+        return consumerStates.get(session);
+    }
+
+    /**
+     * 重置所有信用（耗尽太久，可能有回执丢失）
+     */
+    protected void creditReset() {
+        for (Map.Entry<Session, MqConsumerState> kv : consumerStates.entrySet()) {
+            //换新的（未回执的消息，释放时只会扣到旧的上）
+            kv.setValue(new MqConsumerState(kv.getValue().getPrefetch()));
         }
     }
 
@@ -108,8 +293,9 @@ public abstract class MqQueueBase implements MqQueue {
     @Override
     public void close() {
         consumerSessions.clear();
+        consumerStates.clear();
 
         messageQueue.clear();
         messageMap.clear();
     }
-}
\ No newline at end of file
+}
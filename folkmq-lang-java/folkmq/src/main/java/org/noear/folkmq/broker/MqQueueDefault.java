@@ -1,15 +1,19 @@
 package org.noear.folkmq.broker;
 
+import org.noear.folkmq.common.MqBatchUtils;
 import org.noear.folkmq.common.MqConstants;
+import org.noear.folkmq.common.MqUtils;
+import org.noear.socketd.transport.core.Entity;
 import org.noear.socketd.transport.core.Message;
 import org.noear.socketd.transport.core.Session;
+import org.noear.socketd.transport.core.entity.EntityDefault;
 import org.noear.socketd.utils.SessionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 队列默认实现
@@ -19,13 +23,16 @@ import java.util.concurrent.atomic.AtomicReference;
  */
 public class MqQueueDefault extends MqQueueBase implements MqQueue {
     private static final Logger log = LoggerFactory.getLogger(MqQueueDefault.class);
+    //批量派发的最大字节数（超出则先发出）
+    private static final int DISTRIBUTE_BATCH_MAX_BYTES = 1024 * 1024;
 
     //服务监听器
     private final MqBorkerListener serviceListener;
 
     //是否为事务缓存队列
     private final boolean transaction;
-    private final AtomicReference<Boolean> sequenceLock = new AtomicReference<>(false);
+    //顺序消息分片（同分片的顺序消息，一次只派发一条）
+    private final MqSequenceShards sequenceShards;
     //主题
     private final String topic;
     //消费者组
@@ -36,8 +43,13 @@ public class MqQueueDefault extends MqQueueBase implements MqQueue {
     //观察者（由上层传入）
     private final MqWatcher watcher;
 
+    //批量派发缓冲（只在派发线程上使用）
+    private final Map<Session, DistributeBatch> distributeBatchMap = new LinkedHashMap<>();
+    //批量派发后未回执的消息（批量帧没有请求超时；会话关闭时，要主动重新派发）
+    private final Map<Session, Set<MqMessageHolder>> distributeInflightMap = new ConcurrentHashMap<>();
+
     public MqQueueDefault(MqBorkerListener serviceListener, MqWatcher watcher, String topic, String consumerGroup, String queueName) {
-        super();
+        super(serviceListener.timingWheel);
 
         this.serviceListener = serviceListener;
         this.topic = topic;
@@ -45,6 +57,7 @@ public class MqQueueDefault extends MqQueueBase implements MqQueue {
         this.queueName = queueName;
 
         this.transaction = MqConstants.MQ_TRAN_CONSUMER_GROUP.equals(consumerGroup);
+        this.sequenceShards = new MqSequenceShards(serviceListener.sequenceShards);
 
         this.watcher = watcher;
     }
@@ -108,6 +121,58 @@ public class MqQueueDefault extends MqQueueBase implements MqQueue {
         } finally {
             messageAddLock.unlock();
         }
+
+        //唤醒派发（定时消息，到时再唤醒）
+        distributeWakeup(messageHolder.getDistributeTime());
+    }
+
+    /**
+     * 批量添加消息（整体建堆，而不是逐个插入）
+     */
+    @Override
+    public void addAll(Collection<MqMessageHolder> messageHolders) {
+        if (messageHolders.isEmpty()) {
+            return;
+        }
+
+        long distributeTimeMin = Long.MAX_VALUE;
+
+        messageAddLock.lock();
+
+        try {
+            for (MqMessageHolder messageHolder : messageHolders) {
+                if (messageHolder.getDistributeTime() != messageDistributeTime.get()) {
+                    //如果超过1秒的，理解为定时消息
+                    if (messageHolder.getDistributeTime() < System.currentTimeMillis() + 1_000) {
+                        messageDistributeTime.set(messageHolder.getDistributeTime());
+                        messageIndexer.set(0L);
+                    }
+                }
+
+                messageHolder.setDistributeIdx(messageIndexer.incrementAndGet());
+
+                messageMap.put(messageHolder.getKey(), messageHolder);
+                distributeTimeMin = Math.min(distributeTimeMin, messageHolder.getDistributeTime());
+            }
+
+            messageQueue.addAll(messageHolders);
+        } finally {
+            messageAddLock.unlock();
+        }
+
+        //唤醒派发（定时消息，到时再唤醒）
+        distributeWakeup(distributeTimeMin);
+    }
+
+    /**
+     * 添加消费者会话
+     */
+    @Override
+    public void sessionAdd(Session session, int prefetch) {
+        super.sessionAdd(session, prefetch);
+
+        //有新会话了，唤醒派发
+        distributeWakeup(0L);
     }
 
     /**
@@ -115,9 +180,10 @@ public class MqQueueDefault extends MqQueueBase implements MqQueue {
      */
     @Override
     public boolean distribute() {
-        if (sequenceLock.get()) {
-            //如果有顺序锁，暂停派送
-            return true;
+        if (creditStarvedTime > 0L && System.currentTimeMillis() - creditStarvedTime > MqNextTime.maxConsumeMillis()) {
+            //信用耗尽太久（可能有回执丢失），重置信用
+            creditReset();
+            creditStarvedTime = 0L;
         }
 
         MqMessageHolder messageHolder;
@@ -155,6 +221,57 @@ public class MqQueueDefault extends MqQueueBase implements MqQueue {
         }
     }
 
+    /**
+     * 下次可派发的时间
+     */
+    @Override
+    public long distributeNextTime() {
+        long creditStarvedTimeRef = creditStarvedTime;
+        if (creditStarvedTimeRef > 0L) {
+            //如果信用耗尽，等回执后再唤醒（太久没回执的，到时重置信用）
+            return creditStarvedTimeRef + MqNextTime.maxConsumeMillis();
+        }
+
+        //先查看头部（会推进时间轮），再取时间轮的到期时间
+        MqMessageHolder messageHolder = messageQueue.peek();
+        long nextTime = messageQueue.wheelNextTime();
+
+        if (messageHolder != null) {
+            if (targetSessionCount() == 0) {
+                //如果没有会话，只关注过期时间（会话加入时会再唤醒）//过期后，还要等到派发时间才能取出
+                if (messageHolder.getExpiration() > 0) {
+                    nextTime = Math.min(nextTime, Math.max(messageHolder.getExpiration() + 1, messageHolder.getDistributeTime()));
+                }
+            } else {
+                if (messageHolder.isSequence()) {
+                    //顺序消息，以外部时间为准
+                    nextTime = Math.min(nextTime, Math.max(messageHolder.getDistributeTime(), messageHolder.getDistributeTimeRef()));
+                } else {
+                    nextTime = Math.min(nextTime, messageHolder.getDistributeTime());
+                }
+            }
+        }
+
+        return nextTime;
+    }
+
+    /**
+     * 唤醒派发
+     *
+     * @param time 可派发的时间
+     */
+    protected void distributeWakeup(long time) {
+        serviceListener.distributeWakeup(this, time);
+    }
+
+    /**
+     * 服务端配置的消费者选择器
+     */
+    @Override
+    protected MqConsumerSelector consumerSelectorDefault() {
+        return serviceListener.consumerSelector;
+    }
+
     /**
      * 目标会话数量
      */
@@ -174,6 +291,11 @@ public class MqQueueDefault extends MqQueueBase implements MqQueue {
         MqMessageHolder messageHolder = messageMap.remove(key);
         if (messageHolder != null) {
             internalRemove(messageHolder);
+            distributeInflightRemove(messageHolder);
+
+            if (messageHolder.isSequence()) {
+                sequenceRelease(messageHolder);
+            }
         }
     }
 
@@ -202,6 +324,14 @@ public class MqQueueDefault extends MqQueueBase implements MqQueue {
         }
     }
 
+    /**
+     * 消息总量2（用于做校验；含在顺序分片下等待的）
+     */
+    @Override
+    public int messageTotal2() {
+        return super.messageTotal2() + sequenceShards.waitingSize();
+    }
+
     private void internalAdd(MqMessageHolder mh) {
         messageQueue.add(mh);
     }
@@ -221,6 +351,8 @@ public class MqQueueDefault extends MqQueueBase implements MqQueue {
 
             messageMap.clear();
             messageQueue.clear();
+            sequenceShards.clear();
+            distributeInflightMap.clear();
 
             //清空后 gc 下
             System.gc();
@@ -258,6 +390,10 @@ public class MqQueueDefault extends MqQueueBase implements MqQueue {
             msg.delayed(System.currentTimeMillis());
             messageQueue.add(msg);
         }
+
+        if (msgList.size() > 0) {
+            distributeWakeup(0L);
+        }
     }
 
     /**
@@ -295,7 +431,7 @@ public class MqQueueDefault extends MqQueueBase implements MqQueue {
             try {
                 //开始请求确认
                 serviceListener.qpsDistribute.record();
-                s1.sendAndRequest(MqConstants.MQ_EVENT_REQUEST, messageHolder.getEntity(), MqNextTime.maxConsumeMillis()).thenReply(r -> {
+                s1.sendAndRequest(MqConstants.MQ_EVENT_REQUEST, MqUtils.adaptOf(s1, messageHolder.getMessageEntity()), MqNextTime.maxConsumeMillis()).thenReply(r -> {
                     //进入正常队列
                     int ack = Integer.parseInt(r.metaOrDefault(MqConstants.MQ_META_ACK, "0"));
                     if (ack == 1) {
@@ -308,6 +444,7 @@ public class MqQueueDefault extends MqQueueBase implements MqQueue {
                 }).thenError(err -> {
                     //进入延后队列
                     internalAdd(messageHolder.delayed());
+                    distributeWakeup(messageHolder.getDistributeTime());
 
                     if (log.isDebugEnabled()) {
                         log.debug("Queue: request then error, key={}",
@@ -356,6 +493,10 @@ public class MqQueueDefault extends MqQueueBase implements MqQueue {
      * 执行派发
      */
     protected boolean distribute0(MqMessageHolder messageHolder) {
+        //超时未回执又被取出的，先释放信用
+        creditRelease(messageHolder, false);
+        distributeInflightRemove(messageHolder);
+
         if (messageHolder.isDone()) {
             //已完成
             messageMap.remove(messageHolder.getKey());
@@ -366,6 +507,10 @@ public class MqQueueDefault extends MqQueueBase implements MqQueue {
             //已过期
             messageMap.remove(messageHolder.getKey());
 
+            if (messageHolder.isSequence()) {
+                sequenceRelease(messageHolder);
+            }
+
             if (log.isWarnEnabled()) {
                 log.warn("Queue: message have expired, key={}", messageHolder.getKey());
             }
@@ -373,14 +518,16 @@ public class MqQueueDefault extends MqQueueBase implements MqQueue {
         }
 
         if (messageHolder.isSequence()) {
+            //如果是顺序消息，先占分片（占不到的，在分片下等待；不影响其它分片与普通消息）
+            if (sequenceShards.tryAcquire(messageHolder) == false) {
+                return true;
+            }
+
             if (messageHolder.getDistributeTimeRef() > System.currentTimeMillis()) {
                 //如果未到，提前结束
                 internalAdd(messageHolder);
                 return false;
             }
-
-            //如果是顺序消息
-            sequenceLock.set(true);
         }
 
         //如果有会话
@@ -391,9 +538,14 @@ public class MqQueueDefault extends MqQueueBase implements MqQueue {
             //::派发
             try {
                 if (s1 == null) {
+                    if (creditStarvedTime > 0L) {
+                        //会话的信用都耗尽了（未回执的已达预取数量），放回去等回执
+                        internalAdd(messageHolder);
+                        return false;
+                    }
+
                     //进入延后队列
                     internalAdd(messageHolder.delayed());
-                    sequenceLock.set(false);
                 } else {
                     distributeDo(s1, messageHolder);
                 }
@@ -403,9 +555,10 @@ public class MqQueueDefault extends MqQueueBase implements MqQueue {
                     sessionRemove(s1);
                 }
 
-                //进入延后队列
+                //进入延后队列（派发时已先入队，要先移出再改派发时间；否则会在堆外改了排序键）
+                creditRelease(messageHolder, false);
+                internalRemove(messageHolder);
                 internalAdd(messageHolder.delayed());
-                sequenceLock.set(false);
 
                 //记日志
                 if (log.isWarnEnabled()) {
@@ -416,7 +569,6 @@ public class MqQueueDefault extends MqQueueBase implements MqQueue {
         } else {
             //::进入延后队列
             internalAdd(messageHolder.delayed());
-            sequenceLock.set(false);
 
             //记日志
             if (log.isDebugEnabled()) {
@@ -440,36 +592,136 @@ public class MqQueueDefault extends MqQueueBase implements MqQueue {
         if (messageHolder.getQos() > 0 && messageHolder.isBroadcast() == false) {
             //::Qos1
 
-            //1.给会话发送消息 //如果有异步，上面会加入队列
+            //1.添加保险延时任务：如果没有回执就重发 //重新入队列，是避免重启时数据丢失
+            //（先入队再发送；避免回执先到时，移除落空又被加回队列）
+            messageHolder.preDelayed(System.currentTimeMillis() + MqNextTime.maxConsumeMillis());
+            internalAdd(messageHolder);
+
+            //占用会话信用（回执时释放；用于预取限流与消费者选择）
+            MqConsumerState consumerState = consumerStateOf(s1);
+            if (consumerState != null) {
+                messageHolder.consumerAcquire(consumerState);
+            }
+
+            if (distributeBatchable(s1)) {
+                //2.放入批量派发缓冲（本轮派发结束时，一帧发出）
+                distributeBatchAdd(s1, messageHolder);
+                return;
+            }
+
+            //2.给会话发送消息 //如果发送失败，上层会重排队列位置
             serviceListener.qpsDistribute.record();
-            s1.sendAndRequest(MqConstants.MQ_EVENT_DISTRIBUTE, messageHolder.getEntity(), MqNextTime.maxConsumeMillis()).thenReply(r -> {
+            s1.sendAndRequest(MqConstants.MQ_EVENT_DISTRIBUTE, MqUtils.adaptOf(s1, messageHolder.getMessageEntity()), MqNextTime.maxConsumeMillis()).thenReply(r -> {
                 int ack = Integer.parseInt(r.metaOrDefault(MqConstants.MQ_META_ACK, "0"));
                 acknowledgeDo(messageHolder, ack, true);
             }).thenError(err -> {
                 acknowledgeDo(messageHolder, 0, true);
             });
-
-            //2.添加保险延时任务：如果没有回执就重发 //重新入队列，是避免重启时数据丢失
-            messageHolder.preDelayed(System.currentTimeMillis() + MqNextTime.maxConsumeMillis());
-            internalAdd(messageHolder);
         } else {
             //::Qos0
             if (messageHolder.isBroadcast()) {
                 for (Session s0 : sessionAll()) {
                     if (SessionUtils.isActive(s0)) {
                         serviceListener.qpsDistribute.record();
-                        s0.send(MqConstants.MQ_EVENT_DISTRIBUTE, messageHolder.getEntity());
+                        s0.send(MqConstants.MQ_EVENT_DISTRIBUTE, MqUtils.adaptOf(s0, messageHolder.getMessageEntity()));
                     }
                 }
             } else {
                 serviceListener.qpsDistribute.record();
-                s1.send(MqConstants.MQ_EVENT_DISTRIBUTE, messageHolder.getEntity());
+                s1.send(MqConstants.MQ_EVENT_DISTRIBUTE, MqUtils.adaptOf(s1, messageHolder.getMessageEntity()));
             }
 
             acknowledgeDo(messageHolder, 1, false);
         }
     }
 
+    /**
+     * 是否可批量派发（直连的客户端，且版本支持）
+     */
+    private boolean distributeBatchable(Session s1) {
+        if (serviceListener.proxyMode) {
+            return false;
+        }
+
+        return MqUtils.versionOf(s1) >= MqConstants.FOLKMQ_VERSION_DISTRIBUTE_BATCH;
+    }
+
+    /**
+     * 添加到批量派发缓冲
+     */
+    private void distributeBatchAdd(Session s1, MqMessageHolder messageHolder) {
+        DistributeBatch batch = distributeBatchMap.computeIfAbsent(s1, k -> new DistributeBatch());
+        batch.messages.add(messageHolder);
+        batch.bytes += MqBatchUtils.sizeOf(messageHolder.getMessageEntity());
+
+        if (batch.bytes >= DISTRIBUTE_BATCH_MAX_BYTES) {
+            //缓冲满了，先发出
+            distributeBatchMap.remove(s1);
+            distributeBatchDo(s1, batch.messages);
+        }
+    }
+
+    /**
+     * 派发刷新（把批量派发缓冲发出）
+     */
+    @Override
+    public void distributeFlush() {
+        if (distributeBatchMap.isEmpty()) {
+            return;
+        }
+
+        for (Map.Entry<Session, DistributeBatch> kv : distributeBatchMap.entrySet()) {
+            distributeBatchDo(kv.getKey(), kv.getValue().messages);
+        }
+
+        distributeBatchMap.clear();
+    }
+
+    /**
+     * 批量派发执行
+     */
+    private void distributeBatchDo(Session s1, List<MqMessageHolder> messages) {
+        try {
+            List<Entity> entities = new ArrayList<>(messages.size());
+            for (MqMessageHolder messageHolder : messages) {
+                entities.add(MqUtils.adaptOf(s1, messageHolder.getMessageEntity()));
+                serviceListener.qpsDistribute.record();
+            }
+
+            //先登记再发送（避免回执先到时，移除落空）
+            Set<MqMessageHolder> inflight = distributeInflightMap.computeIfAbsent(s1, k -> ConcurrentHashMap.newKeySet());
+            for (MqMessageHolder messageHolder : messages) {
+                messageHolder.inflightAcquire(inflight);
+            }
+
+            try {
+                s1.send(MqConstants.MQ_EVENT_DISTRIBUTE_BATCH, new EntityDefault().dataSet(MqBatchUtils.encode(entities)));
+            } catch (Throwable e) {
+                for (MqMessageHolder messageHolder : messages) {
+                    messageHolder.inflightRelease();
+                }
+                throw e;
+            }
+        } catch (Throwable e) {
+            //如果无效，则移掉
+            if (s1.isValid() == false) {
+                sessionRemove(s1);
+            }
+
+            //进入延后队列
+            for (MqMessageHolder messageHolder : messages) {
+                creditRelease(messageHolder, false);
+                internalRemove(messageHolder);
+                internalAdd(messageHolder.delayed());
+            }
+
+            //记日志
+            if (log.isWarnEnabled()) {
+                log.warn("Queue: distribute batch error, size={}", messages.size(), e);
+            }
+        }
+    }
+
     @Override
     public void acknowledgeAt(String key, int ack) {
         MqMessageHolder messageHolder = messageMap.get(key);
@@ -479,6 +731,10 @@ public class MqQueueDefault extends MqQueueBase implements MqQueue {
     }
 
     private void acknowledgeDo(MqMessageHolder messageHolder, int ack, boolean removeQueue) {
+        //有回执了，释放信用（并记录回执耗时）
+        creditRelease(messageHolder, true);
+        distributeInflightRemove(messageHolder);
+
         try {
             if (messageMap.containsKey(messageHolder.getKey()) == false) {
                 //广播消息，会有多次回调；可能已结束了
@@ -496,13 +752,89 @@ public class MqQueueDefault extends MqQueueBase implements MqQueue {
                 }
                 //移除前，不要改移性
                 messageHolder.setDone(true);
+
+                if (messageHolder.isSequence()) {
+                    //顺序消息成功后，才让出分片（失败重试时，仍占着分片）
+                    sequenceRelease(messageHolder);
+                }
             } else {
                 //no （尝试移除，再添加）//否则排序可能不会触发
                 internalRemove(messageHolder);
                 internalAdd(messageHolder.delayed());
             }
         } finally {
-            sequenceLock.set(false);
+            if (ack < 1) {
+                distributeWakeup(messageHolder.getDistributeTime());
+            }
+        }
+    }
+
+    /**
+     * 释放顺序分片（有同分片的消息在等待时，接着派发）
+     */
+    private void sequenceRelease(MqMessageHolder messageHolder) {
+        MqMessageHolder next = sequenceShards.release(messageHolder);
+        if (next != null) {
+            internalAdd(next);
+            distributeWakeup(next.getDistributeTime());
+        }
+    }
+
+    /**
+     * 释放信用（信用耗尽时，唤醒派发）
+     */
+    private void creditRelease(MqMessageHolder messageHolder, boolean acknowledged) {
+        if (messageHolder.consumerRelease(acknowledged)) {
+            if (creditStarvedTime > 0L) {
+                creditStarvedTime = 0L;
+                distributeWakeup(0L);
+            }
+        }
+    }
+
+    /**
+     * 移除消费者会话（批量派发给它、还没回执的，重新派发）
+     */
+    @Override
+    public void sessionRemove(Session session) {
+        super.sessionRemove(session);
+
+        Set<MqMessageHolder> inflight = distributeInflightMap.remove(session);
+        if (inflight == null || inflight.isEmpty()) {
+            return;
+        }
+
+        for (MqMessageHolder messageHolder : inflight) {
+            if (messageHolder.isDone() || messageMap.get(messageHolder.getKey()) != messageHolder) {
+                //已完成或已移除
+                continue;
+            }
+
+            //进入延后队列（不用等最大消费时间）
+            creditRelease(messageHolder, false);
+            internalRemove(messageHolder);
+            internalAdd(messageHolder.delayed());
+            distributeWakeup(messageHolder.getDistributeTime());
         }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Queue: session removed, redistribute inflight={}, sessionId={}",
+                    inflight.size(), session.sessionId());
+        }
+    }
+
+    /**
+     * 移除批量派发的未回执登记（消息记着所在的集合，不用逐个会话查找）
+     */
+    private void distributeInflightRemove(MqMessageHolder messageHolder) {
+        messageHolder.inflightRelease();
+    }
+
+    /**
+     * 批量派发缓冲
+     */
+    static class DistributeBatch {
+        final List<MqMessageHolder> messages = new ArrayList<>();
+        int bytes;
     }
-}
\ No newline at end of file
+}
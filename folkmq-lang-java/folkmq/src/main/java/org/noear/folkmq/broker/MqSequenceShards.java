@@ -0,0 +1,161 @@
+package org.noear.folkmq.broker;
+
+import org.noear.socketd.utils.StrUtils;
+
+import java.util.*;
+
+/**
+ * 顺序消息分片（按分片标识各自加锁；不同分片可并行派发，同一分片严格先进先出）
+ * <br/>
+ * 一条顺序消息从首次派发到回执成功（或移除、过期）一直占着分片；占不到的，按到达顺序在分片下等待
+ *
+ * @author noear
+ * @since 1.7
+ */
+class MqSequenceShards {
+    //分片占用(shard=>holder)
+    private final Map<String, MqMessageHolder> inflightMap = new HashMap<>();
+    //分片等待(shard=>[holder]) //按插入顺序轮流
+    private final LinkedHashMap<String, ArrayDeque<MqMessageHolder>> waitingMap = new LinkedHashMap<>();
+    //等待数量
+    private int waitingSize;
+    //最多同时派发的分片数
+    private volatile int maxShards;
+
+    MqSequenceShards(int maxShards) {
+        this.maxShards = Math.max(maxShards, 1);
+    }
+
+    /**
+     * 获取分片标识（没有分片标识的，同队列为一个分片）
+     */
+    static String shardOf(MqMessageHolder messageHolder) {
+        String sharding = messageHolder.getSequenceSharding();
+        if (StrUtils.isEmpty(sharding)) {
+            return "";
+        } else {
+            return sharding;
+        }
+    }
+
+    /**
+     * 设置最多同时派发的分片数
+     */
+    void setMaxShards(int maxShards) {
+        this.maxShards = Math.max(maxShards, 1);
+    }
+
+    /**
+     * 等待数量
+     */
+    synchronized int waitingSize() {
+        return waitingSize;
+    }
+
+    /**
+     * 尝试占用分片（占不到的，放入分片等待，返回 false）
+     */
+    synchronized boolean tryAcquire(MqMessageHolder messageHolder) {
+        if (messageHolder.sequenceWaiting) {
+            //已在等待中（强制派发等情况会再入队），不重复放
+            return false;
+        }
+
+        String shard = shardOf(messageHolder);
+        MqMessageHolder holder = inflightMap.get(shard);
+
+        if (holder == messageHolder) {
+            //已占着（重试，或释放时轮到的）
+            return true;
+        }
+
+        if (holder == null && waitingMap.containsKey(shard) == false && inflightMap.size() < maxShards) {
+            inflightMap.put(shard, messageHolder);
+            return true;
+        }
+
+        //分片在用、有先到的在等，或分片数已满
+        waitingMap.computeIfAbsent(shard, k -> new ArrayDeque<>()).addLast(messageHolder);
+        messageHolder.sequenceWaiting = true;
+        waitingSize++;
+        return false;
+    }
+
+    /**
+     * 释放分片（回执成功、移除或过期时）
+     *
+     * @return 轮到的下一条（已占好分片，由调用方放回派发队列；没有为 null）
+     */
+    synchronized MqMessageHolder release(MqMessageHolder messageHolder) {
+        if (messageHolder.sequenceWaiting) {
+            //还在等待中的（被移除了）
+            ArrayDeque<MqMessageHolder> waiting = waitingMap.get(shardOf(messageHolder));
+            if (waiting != null && waiting.remove(messageHolder)) {
+                waitingSize--;
+                if (waiting.isEmpty()) {
+                    waitingMap.remove(shardOf(messageHolder));
+                }
+            }
+
+            messageHolder.sequenceWaiting = false;
+            return null;
+        }
+
+        String shard = shardOf(messageHolder);
+        if (inflightMap.get(shard) != messageHolder) {
+            return null;
+        }
+
+        inflightMap.remove(shard);
+
+        return nextOrNull();
+    }
+
+    /**
+     * 取出下一条可占用分片的等待消息（分片轮流，避免热点分片独占）
+     */
+    private MqMessageHolder nextOrNull() {
+        if (inflightMap.size() >= maxShards) {
+            return null;
+        }
+
+        Iterator<Map.Entry<String, ArrayDeque<MqMessageHolder>>> iterator = waitingMap.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, ArrayDeque<MqMessageHolder>> kv = iterator.next();
+            if (inflightMap.containsKey(kv.getKey())) {
+                continue;
+            }
+
+            ArrayDeque<MqMessageHolder> waiting = kv.getValue();
+            MqMessageHolder next = waiting.pollFirst();
+            iterator.remove();
+
+            if (waiting.isEmpty() == false) {
+                //还有的，排到最后
+                waitingMap.put(kv.getKey(), waiting);
+            }
+
+            waitingSize--;
+            next.sequenceWaiting = false;
+            inflightMap.put(kv.getKey(), next);
+            return next;
+        }
+
+        return null;
+    }
+
+    /**
+     * 清空
+     */
+    synchronized void clear() {
+        for (ArrayDeque<MqMessageHolder> waiting : waitingMap.values()) {
+            for (MqMessageHolder holder : waiting) {
+                holder.sequenceWaiting = false;
+            }
+        }
+
+        inflightMap.clear();
+        waitingMap.clear();
+        waitingSize = 0;
+    }
+}
@@ -0,0 +1,259 @@
+package org.noear.folkmq.broker;
+
+import java.util.function.Consumer;
+
+/**
+ * 分层时间轮（秒、分、时三层，外加一个溢出桶）
+ * <br/>
+ * 远期的定时与重试消息先挂在轮上，到期（精确到秒）才提升到派发堆；增删为 O(1)，每条消息最多降级 3 次。
+ * 非线程安全，由 MqMessageHolderQueue 加锁使用
+ *
+ * @author noear
+ * @since 1.7
+ */
+public class MqTimingWheel {
+    private static final int SECOND_SLOTS = 60;
+    private static final int MINUTE_SLOTS = 60;
+    private static final int HOUR_SLOTS = 24;
+
+    //秒轮（1s * 60）
+    private final Bucket[] secondBuckets = newBuckets(SECOND_SLOTS);
+    //分轮（1m * 60）
+    private final Bucket[] minuteBuckets = newBuckets(MINUTE_SLOTS);
+    //时轮（1h * 24）
+    private final Bucket[] hourBuckets = newBuckets(HOUR_SLOTS);
+    //溢出桶（超过 24h 的；每小时检查一次）
+    private final Bucket overflowBucket = new Bucket();
+
+    //到期处理（提升到派发堆）
+    private final Consumer<MqMessageHolder> expiredHandler;
+
+    //当前秒（已推进到的位置）
+    private long currentSecond;
+    //消息数量
+    private int size;
+
+    public MqTimingWheel(Consumer<MqMessageHolder> expiredHandler) {
+        this(expiredHandler, System.currentTimeMillis());
+    }
+
+    /**
+     * @param expiredHandler 到期处理
+     * @param timeMillis     起始时间
+     */
+    public MqTimingWheel(Consumer<MqMessageHolder> expiredHandler, long timeMillis) {
+        this.expiredHandler = expiredHandler;
+        this.currentSecond = timeMillis / 1000;
+    }
+
+    /**
+     * 消息数量
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 添加
+     *
+     * @return 如果已到期（不需要挂轮），返回 false
+     */
+    public boolean add(MqMessageHolder mh) {
+        long second = mh.getDistributeTime() / 1000;
+        long delta = second - currentSecond;
+
+        if (delta <= 0) {
+            return false;
+        }
+
+        Bucket bucket;
+        if (delta < SECOND_SLOTS) {
+            bucket = secondBuckets[(int) (second % SECOND_SLOTS)];
+        } else if ((second / 60) - (currentSecond / 60) < MINUTE_SLOTS) {
+            bucket = minuteBuckets[(int) ((second / 60) % MINUTE_SLOTS)];
+        } else if ((second / 3600) - (currentSecond / 3600) < HOUR_SLOTS) {
+            bucket = hourBuckets[(int) ((second / 3600) % HOUR_SLOTS)];
+        } else {
+            bucket = overflowBucket;
+        }
+
+        bucket.link(mh);
+        size++;
+        return true;
+    }
+
+    /**
+     * 移除
+     */
+    public boolean remove(MqMessageHolder mh) {
+        Bucket bucket = mh.wheelBucket;
+        if (bucket == null) {
+            return false;
+        }
+
+        bucket.unlink(mh);
+        size--;
+        return true;
+    }
+
+    /**
+     * 推进到指定时间（到期的消息交给到期处理）
+     */
+    public void advance(long timeMillis) {
+        long targetSecond = timeMillis / 1000;
+
+        while (currentSecond < targetSecond) {
+            if (size == 0) {
+                //空轮，直接跳到位
+                currentSecond = targetSecond;
+                return;
+            }
+
+            long second = ++currentSecond;
+
+            //先高层降级，再处理秒轮（降级下来的可能就是当前秒）
+            if (second % 3600 == 0) {
+                cascade(hourBuckets[(int) ((second / 3600) % HOUR_SLOTS)]);
+                cascade(overflowBucket);
+            }
+
+            if (second % 60 == 0) {
+                cascade(minuteBuckets[(int) ((second / 60) % MINUTE_SLOTS)]);
+            }
+
+            cascade(secondBuckets[(int) (second % SECOND_SLOTS)]);
+        }
+    }
+
+    /**
+     * 下次需要推进的时间（最早到期时间的下界；空轮时返回 Long.MAX_VALUE）
+     */
+    public long nextTime() {
+        if (size == 0) {
+            return Long.MAX_VALUE;
+        }
+
+        for (int i = 1; i < SECOND_SLOTS; i++) {
+            long second = currentSecond + i;
+            if (secondBuckets[(int) (second % SECOND_SLOTS)].head != null) {
+                return second * 1000;
+            }
+        }
+
+        long currentMinute = currentSecond / 60;
+        for (int i = 1; i < MINUTE_SLOTS; i++) {
+            long minute = currentMinute + i;
+            if (minuteBuckets[(int) (minute % MINUTE_SLOTS)].head != null) {
+                return minute * 60_000;
+            }
+        }
+
+        long currentHour = currentSecond / 3600;
+        for (int i = 1; i < HOUR_SLOTS; i++) {
+            long hour = currentHour + i;
+            if (hourBuckets[(int) (hour % HOUR_SLOTS)].head != null) {
+                return hour * 3600_000;
+            }
+        }
+
+        //溢出桶在整点时检查
+        return (currentHour + 1) * 3600_000;
+    }
+
+    /**
+     * 清空
+     */
+    public void clear() {
+        for (Bucket bucket : secondBuckets) {
+            bucket.clear();
+        }
+        for (Bucket bucket : minuteBuckets) {
+            bucket.clear();
+        }
+        for (Bucket bucket : hourBuckets) {
+            bucket.clear();
+        }
+        overflowBucket.clear();
+
+        size = 0;
+    }
+
+    /**
+     * 降级（取出整个桶，重新挂轮；已到期的交给到期处理）
+     */
+    private void cascade(Bucket bucket) {
+        MqMessageHolder mh = bucket.head;
+        if (mh == null) {
+            return;
+        }
+
+        bucket.head = null;
+
+        while (mh != null) {
+            MqMessageHolder next = mh.wheelNext;
+            mh.wheelBucket = null;
+            mh.wheelPrev = null;
+            mh.wheelNext = null;
+            size--;
+
+            if (add(mh) == false) {
+                expiredHandler.accept(mh);
+            }
+
+            mh = next;
+        }
+    }
+
+    private static Bucket[] newBuckets(int slots) {
+        Bucket[] buckets = new Bucket[slots];
+        for (int i = 0; i < slots; i++) {
+            buckets[i] = new Bucket();
+        }
+        return buckets;
+    }
+
+    /**
+     * 时间桶（侵入式双向链表）
+     */
+    static class Bucket {
+        MqMessageHolder head;
+
+        void link(MqMessageHolder mh) {
+            mh.wheelBucket = this;
+            mh.wheelPrev = null;
+            mh.wheelNext = head;
+            if (head != null) {
+                head.wheelPrev = mh;
+            }
+            head = mh;
+        }
+
+        void unlink(MqMessageHolder mh) {
+            if (mh.wheelPrev == null) {
+                head = mh.wheelNext;
+            } else {
+                mh.wheelPrev.wheelNext = mh.wheelNext;
+            }
+
+            if (mh.wheelNext != null) {
+                mh.wheelNext.wheelPrev = mh.wheelPrev;
+            }
+
+            mh.wheelBucket = null;
+            mh.wheelPrev = null;
+            mh.wheelNext = null;
+        }
+
+        void clear() {
+            MqMessageHolder mh = head;
+            while (mh != null) {
+                MqMessageHolder next = mh.wheelNext;
+                mh.wheelBucket = null;
+                mh.wheelPrev = null;
+                mh.wheelNext = null;
+                mh = next;
+            }
+            head = null;
+        }
+    }
+}
@@ -3,6 +3,8 @@ package org.noear.folkmq.broker;
 import org.noear.socketd.transport.core.Message;
 import org.noear.socketd.transport.core.Session;
 
+import java.util.List;
+
 /**
  * 消息观察者
  *
@@ -65,6 +67,17 @@ public interface MqWatcher {
      */
     void onPublish(Message message);
 
+    /**
+     * 批量发布时（默认逐个转给 onPublish）
+     *
+     * @param messages 消息
+     */
+    default void onPublishBatch(List<Message> messages) {
+        for (Message message : messages) {
+            onPublish(message);
+        }
+    }
+
     /**
      * 取消发布时
      *
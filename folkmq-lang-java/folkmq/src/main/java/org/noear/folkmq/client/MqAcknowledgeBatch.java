@@ -0,0 +1,134 @@
+package org.noear.folkmq.client;
+
+import org.noear.folkmq.common.MqBatchUtils;
+import org.noear.folkmq.common.MqConstants;
+import org.noear.socketd.transport.core.Entity;
+import org.noear.socketd.transport.core.Session;
+import org.noear.socketd.transport.core.entity.EntityDefault;
+import org.noear.socketd.utils.RunUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量回执（一个批量派发帧的回执，合并成批量回执帧发出）
+ * <br/>
+ * 攒够数量、或等够时间、或批内消息都处理完时发出（不等整批处理完，避免慢消息拖住已完成的回执）
+ *
+ * @author noear
+ * @since 1.7
+ */
+class MqAcknowledgeBatch {
+    private static final Logger log = LoggerFactory.getLogger(MqAcknowledgeBatch.class);
+    //攒够数量即发出
+    static final int FLUSH_SIZE = 32;
+    //等够时间即发出（毫秒）
+    static final long FLUSH_MILLIS = 100L;
+
+    private final Session session;
+    private final int size;
+    //已处理数量
+    private int received;
+    //待发的回执
+    private List<Entity> acks;
+    //是否已安排定时发出
+    private boolean flushScheduled;
+
+    public MqAcknowledgeBatch(Session session, int size) {
+        this.session = session;
+        this.size = size;
+        this.acks = new ArrayList<>(Math.min(size, FLUSH_SIZE));
+    }
+
+    /**
+     * 添加回执
+     */
+    public void ack(Entity entity) {
+        List<Entity> tmp;
+
+        synchronized (this) {
+            acks.add(entity);
+
+            if (received >= size || acks.size() >= FLUSH_SIZE) {
+                tmp = take();
+            } else {
+                tmp = null;
+                flushSchedule();
+            }
+        }
+
+        flush(tmp);
+    }
+
+    /**
+     * 标记一条消息处理完成
+     */
+    public void received() {
+        List<Entity> tmp;
+
+        synchronized (this) {
+            received++;
+
+            if (received >= size) {
+                tmp = take();
+            } else {
+                tmp = null;
+            }
+        }
+
+        flush(tmp);
+    }
+
+    /**
+     * 安排定时发出（有待发的回执，又没攒够时）
+     */
+    private void flushSchedule() {
+        if (flushScheduled) {
+            return;
+        }
+
+        flushScheduled = true;
+        RunUtils.delay(() -> {
+            List<Entity> tmp;
+            synchronized (this) {
+                flushScheduled = false;
+                tmp = take();
+            }
+
+            flush(tmp);
+        }, FLUSH_MILLIS);
+    }
+
+    /**
+     * 取出待发的回执（在锁内）
+     */
+    private List<Entity> take() {
+        if (acks.isEmpty()) {
+            return null;
+        }
+
+        List<Entity> tmp = acks;
+        acks = new ArrayList<>();
+        return tmp;
+    }
+
+    /**
+     * 发出（在锁外，不阻塞其它消息的回执）
+     */
+    private void flush(List<Entity> tmp) {
+        if (tmp == null) {
+            return;
+        }
+
+        try {
+            if (session.isValid()) {
+                session.send(MqConstants.MQ_EVENT_ACKNOWLEDGE_BATCH, new EntityDefault().dataSet(MqBatchUtils.encode(tmp)));
+            }
+        } catch (Throwable e) {
+            //没回执的，服务端会重新派发
+            log.warn("Client acknowledge batch error, size={}", tmp.size(), e);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import org.noear.socketd.transport.stream.RequestStream;
 import org.noear.socketd.utils.StrUtils;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 
@@ -57,6 +58,20 @@ public interface MqClient {
      */
     MqClient consumeExecutor(ExecutorService consumeExecutor);
 
+    /**
+     * 虚拟线程消费（JDK 21+ 每条消息一个虚拟线程，低版本退回到平台线程池；即设置 MqVirtualExecutor 为消费执行器）
+     * <br/>
+     * 没有设置预取时，预取数量默认为并发数的 2 倍（要在订阅前调用）；排队超出并发数的 4 倍时，回执失败，由服务端延后重发
+     *
+     * @param maxConcurrency 最大并发数（0 表示不限；达到上限时，排队等待，回执随之延后）
+     */
+    MqClient consumeVirtual(int maxConcurrency);
+
+    /**
+     * 顺序消费执行器（同一主题与分片的顺序消息，在同一通道里按序消费；默认按 CPU 核数创建通道）
+     */
+    MqClient sequenceExecutor(MqSequenceExecutor sequenceExecutor);
+
     /**
      * 自动回执
      *
@@ -69,6 +84,26 @@ public interface MqClient {
      */
     boolean autoAcknowledge();
 
+    /**
+     * 预取数量（订阅时声明；服务端给每个订阅最多派发这么多未回执的消息，回执后再补）
+     *
+     * @param prefetch 数量（0 表示不限；默认为 0）
+     */
+    MqClient prefetch(int prefetch);
+
+    /**
+     * 预取数量
+     */
+    int prefetch();
+
+    /**
+     * 发布等待（异步发布时，同一分流标识的消息攒批后一帧发出，一次确认；默认不等待）
+     *
+     * @param lingerMillis 最多等待毫秒数（0 表示不等待）
+     * @param batchSize    批量数量（攒满则立即发出）
+     */
+    MqClient publishLinger(long lingerMillis, int batchSize);
+
     /**
      * 接口调用
      */
@@ -150,6 +185,22 @@ public interface MqClient {
      */
     CompletableFuture<Boolean> publishAsync(String topic, MqMessage message) throws IOException;
 
+    /**
+     * 同步批量发布消息（同一分流标识的消息，一帧发出，一次确认）
+     *
+     * @param topic    主题
+     * @param messages 消息集合
+     */
+    void publishBatch(String topic, List<MqMessage> messages) throws IOException;
+
+    /**
+     * 异步批量发布消息（同一分流标识的消息，一帧发出，一次确认）
+     *
+     * @param topic    主题
+     * @param messages 消息集合
+     */
+    CompletableFuture<Boolean> publishBatchAsync(String topic, List<MqMessage> messages) throws IOException;
+
     /**
      * 取消发布
      *
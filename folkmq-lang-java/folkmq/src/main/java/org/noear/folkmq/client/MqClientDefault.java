@@ -2,7 +2,9 @@ package org.noear.folkmq.client;
 
 import org.noear.folkmq.FolkMQ;
 import org.noear.folkmq.common.MqAssert;
+import org.noear.folkmq.common.MqBatchUtils;
 import org.noear.folkmq.common.MqConstants;
+import org.noear.folkmq.common.MqMetasResolver;
 import org.noear.folkmq.common.MqMetasV2;
 import org.noear.folkmq.common.MqUtils;
 import org.noear.folkmq.exception.FolkmqException;
@@ -26,6 +28,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -44,6 +47,10 @@ public class MqClientDefault implements MqClientInternal {
     protected MqConsumeHandler listenHandler;
     //消费执行器
     protected ExecutorService consumeExecutor;
+    private boolean consumeExecutorDefault;
+    //顺序消费执行器（为 null 时，首次用到时创建默认的）
+    private volatile MqSequenceExecutor sequenceExecutor;
+    private boolean sequenceExecutorDefault;
     //服务端地址
     private final String[] urls;
     //客户端会话
@@ -62,6 +69,10 @@ public class MqClientDefault implements MqClientInternal {
 
     //自动回执
     protected boolean autoAcknowledge = true;
+    //预取数量（0 表示不限）
+    protected int prefetch;
+    //发布累积器（异步发布时攒批）
+    protected MqPublishAccumulator publishAccumulator;
 
     public MqClientDefault(String[] urls) {
         this(urls, null);
@@ -163,7 +174,28 @@ public class MqClientDefault implements MqClientInternal {
 
     @Override
     public void disconnect() throws IOException {
+        if (publishAccumulator != null) {
+            //先发出攒着的消息（并停掉等待调度）
+            publishAccumulator.close();
+        }
+
         clientSession.close();
+
+        synchronized (this) {
+            if (sequenceExecutorDefault) {
+                //默认创建的，由客户端关闭
+                sequenceExecutor.shutdown();
+                sequenceExecutor = null;
+                sequenceExecutorDefault = false;
+            }
+
+            if (consumeExecutorDefault) {
+                //虚拟线程消费的，由客户端关闭
+                consumeExecutor.shutdown();
+                consumeExecutor = null;
+                consumeExecutorDefault = false;
+            }
+        }
     }
 
     @Override
@@ -173,11 +205,52 @@ public class MqClientDefault implements MqClientInternal {
     }
 
     @Override
-    public MqClient consumeExecutor(ExecutorService consumeExecutor) {
+    public synchronized MqClient consumeExecutor(ExecutorService consumeExecutor) {
         this.consumeExecutor = consumeExecutor;
+        this.consumeExecutorDefault = false;
+        return this;
+    }
+
+    @Override
+    public synchronized MqClient consumeVirtual(int maxConcurrency) {
+        this.consumeExecutor = new MqVirtualExecutor(maxConcurrency);
+        this.consumeExecutorDefault = true;
+
+        //没有设置预取时，按并发数预取（服务端不再多推，执行器里的排队也就有了上限）
+        if (prefetch == 0 && maxConcurrency > 0) {
+            this.prefetch = maxConcurrency * 2;
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized MqClient sequenceExecutor(MqSequenceExecutor sequenceExecutor) {
+        this.sequenceExecutor = sequenceExecutor;
+        this.sequenceExecutorDefault = false;
         return this;
     }
 
+    /**
+     * 获取顺序消费执行器
+     */
+    protected MqSequenceExecutor sequenceExecutor() {
+        MqSequenceExecutor executor = sequenceExecutor;
+
+        if (executor == null) {
+            synchronized (this) {
+                executor = sequenceExecutor;
+
+                if (executor == null) {
+                    executor = new MqSequenceExecutor(Runtime.getRuntime().availableProcessors());
+                    sequenceExecutor = executor;
+                    sequenceExecutorDefault = true;
+                }
+            }
+        }
+
+        return executor;
+    }
+
     /**
      * 自动回执
      */
@@ -192,6 +265,38 @@ public class MqClientDefault implements MqClientInternal {
         return autoAcknowledge;
     }
 
+    /**
+     * 预取数量
+     */
+    @Override
+    public MqClient prefetch(int prefetch) {
+        this.prefetch = Math.max(prefetch, 0);
+        return this;
+    }
+
+    @Override
+    public int prefetch() {
+        return prefetch;
+    }
+
+    /**
+     * 发布等待
+     */
+    @Override
+    public MqClient publishLinger(long lingerMillis, int batchSize) {
+        if (publishAccumulator != null) {
+            publishAccumulator.close();
+        }
+
+        if (lingerMillis > 0 && batchSize > 1) {
+            publishAccumulator = new MqPublishAccumulator(d -> clientSession.getSessionAny(d), lingerMillis, batchSize);
+        } else {
+            publishAccumulator = null;
+        }
+
+        return this;
+    }
+
     @Override
     public CompletableFuture<String> call(String apiName, String apiToken, String topic, String consumerGroup) throws IOException {
         MqAssert.requireNonNull(apiName, "Param 'apiName' can't be null");
@@ -240,7 +345,7 @@ public class MqClientDefault implements MqClientInternal {
         MqAssert.requireNonNull(consumerGroup, "Param 'consumerGroup' can't be null");
         MqAssert.requireNonNull(consumerHandler, "Param 'consumerHandler' can't be null");
 
-        MqAssert.assertMeta(topic, "topic");
+        MqAssert.assertTopicPattern(topic, "topic");
         MqAssert.assertMeta(consumerGroup, "consumerGroup");
 
         //支持命名空间
@@ -259,6 +364,10 @@ public class MqClientDefault implements MqClientInternal {
                         .metaPut(EntityMetas.META_X_UNLIMITED, "1")
                         .at(MqConstants.PROXY_AT_BROKER_ALL);
 
+                if (prefetch > 0) {
+                    entity.putMeta(MqConstants.MQ_META_PREFETCH, String.valueOf(prefetch));
+                }
+
                 //使用 Qos1
                 session.sendAndRequest(MqConstants.MQ_EVENT_SUBSCRIBE, entity, 30_000).await();
 
@@ -272,7 +381,7 @@ public class MqClientDefault implements MqClientInternal {
         MqAssert.requireNonNull(topic, "Param 'topic' can't be null");
         MqAssert.requireNonNull(consumerGroup, "Param 'consumerGroup' can't be null");
 
-        MqAssert.assertMeta(topic, "topic");
+        MqAssert.assertTopicPattern(topic, "topic");
         MqAssert.assertMeta(consumerGroup, "consumerGroup");
 
         //支持命名空间
@@ -354,17 +463,120 @@ public class MqClientDefault implements MqClientInternal {
         //支持命名空间
         topic = MqTopicHelper.getFullTopic(namespace, topic);
 
-        ClientSession session = clientSession.getSessionAny(diversionOrNull(topic, message));
+        String diversion = diversionOrNull(topic, message);
+        ClientSession session = clientSession.getSessionAny(diversion);
         if (session == null || session.isValid() == false) {
             throw new SocketDException("No session is available!");
         }
 
-        CompletableFuture<Boolean> future = new CompletableFuture<>();
         Entity entity = MqUtils.getOf((Session) session).publishEntityBuild(topic, message);
 
-        if (message.getQos() > 0) {
+        if (publishAccumulator != null && MqUtils.versionOf((Session) session) >= MqConstants.FOLKMQ_VERSION_PUBLISH_BATCH) {
+            //::攒批发布（同一分流标识的，进同一批）
+            return publishAccumulator.add(diversion, entity, message.getQos());
+        }
+
+        return publishDo(session, MqConstants.MQ_EVENT_PUBLISH, entity, message.getQos() > 0);
+    }
+
+    @Override
+    public void publishBatch(String topic, List<MqMessage> messages) throws IOException {
+        try {
+            publishBatchAsync(topic, messages).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else {
+                throw new FolkmqException(e.getCause());
+            }
+        } catch (InterruptedException e) {
+            throw new FolkmqException(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> publishBatchAsync(String topic, List<MqMessage> messages) throws IOException {
+        MqAssert.requireNonNull(topic, "Param 'topic' can't be null");
+        MqAssert.requireNonNull(messages, "Param 'messages' can't be null");
+
+        MqAssert.assertMeta(topic, "topic");
+
+        if (clientSession == null) {
+            throw new SocketDConnectionException("Not connected!");
+        }
+
+        //支持命名空间
+        topic = MqTopicHelper.getFullTopic(namespace, topic);
+
+        //按分流标识分组（同一分流标识的，进同一批，并保持顺序）
+        Map<String, List<MqMessage>> messageGroups = new LinkedHashMap<>();
+        for (MqMessage message : messages) {
+            MqAssert.requireNonNull(message, "Param 'message' can't be null");
+
+            String diversion = diversionOrNull(topic, message);
+            messageGroups.computeIfAbsent(diversion == null ? "" : diversion, k -> new ArrayList<>()).add(message);
+        }
+
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+
+        for (List<MqMessage> messageGroup : messageGroups.values()) {
+            ClientSession session = clientSession.getSessionAny(diversionOrNull(topic, messageGroup.get(0)));
+            if (session == null || session.isValid() == false) {
+                throw new SocketDException("No session is available!");
+            }
+
+            MqMetasResolver mr = MqUtils.getOf((Session) session);
+
+            if (MqUtils.versionOf((Session) session) < MqConstants.FOLKMQ_VERSION_PUBLISH_BATCH) {
+                //::服务端不支持批量发布，逐个发
+                for (MqMessage message : messageGroup) {
+                    Entity entity = mr.publishEntityBuild(topic, message);
+                    futures.add(publishDo(session, MqConstants.MQ_EVENT_PUBLISH, entity, message.getQos() > 0));
+                }
+                continue;
+            }
+
+            //::批量发布（超出最大字节数的，分成多帧）
+            List<Entity> entities = new ArrayList<>();
+            boolean requireConfirm = false;
+            int bytes = 0;
+
+            for (MqMessage message : messageGroup) {
+                Entity entity = mr.publishEntityBuild(topic, message);
+                entities.add(entity);
+                requireConfirm |= message.getQos() > 0;
+                bytes += MqBatchUtils.sizeOf(entity);
+
+                if (bytes >= MqPublishAccumulator.BATCH_MAX_BYTES) {
+                    futures.add(publishDo(session, MqConstants.MQ_EVENT_PUBLISH_BATCH, MqBatchUtils.publishEntityBuild(entities), requireConfirm));
+                    entities = new ArrayList<>();
+                    requireConfirm = false;
+                    bytes = 0;
+                }
+            }
+
+            if (entities.size() > 0) {
+                futures.add(publishDo(session, MqConstants.MQ_EVENT_PUBLISH_BATCH, MqBatchUtils.publishEntityBuild(entities), requireConfirm));
+            }
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> true);
+    }
+
+    /**
+     * 执行发布
+     *
+     * @param session        会话
+     * @param event          事件
+     * @param entity         消息实体（或批量实体）
+     * @param requireConfirm 是否需要确认（即 Qos1）
+     */
+    protected CompletableFuture<Boolean> publishDo(ClientSession session, String event, Entity entity, boolean requireConfirm) throws IOException {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        if (requireConfirm) {
             //::Qos1
-            session.sendAndRequest(MqConstants.MQ_EVENT_PUBLISH, entity, -1).thenReply(r -> {
+            session.sendAndRequest(event, entity, -1).thenReply(r -> {
                 int confirm = Integer.parseInt(r.metaOrDefault(MqConstants.MQ_META_CONFIRM, "0"));
                 if (confirm == 1) {
                     future.complete(true);
@@ -378,7 +590,7 @@ public class MqClientDefault implements MqClientInternal {
             });
         } else {
             //::Qos0
-            session.send(MqConstants.MQ_EVENT_PUBLISH, entity);
+            session.send(event, entity);
             future.complete(true);
         }
 
@@ -599,10 +811,20 @@ public class MqClientDefault implements MqClientInternal {
 
                 entity.putMeta(MqMetasV2.MQ_META_VID, FolkMQ.versionCodeAsString());
                 entity.putMeta(MqMetasV2.MQ_META_TOPIC, message.getFullTopic());
+                if (message.getFullSubscribeTopic().equals(message.getFullTopic()) == false) {
+                    //通配订阅的（服务端按订阅的主题找队列）
+                    entity.putMeta(MqMetasV2.MQ_META_SUBSCRIBE_TOPIC, message.getFullSubscribeTopic());
+                }
                 entity.putMeta(MqMetasV2.MQ_META_CONSUMER_GROUP, message.getConsumerGroup());
                 entity.putMeta(MqMetasV2.MQ_META_KEY, message.getKey());
 
-                if (entity instanceof MqAlarm) {
+                if (message.getAcknowledgeBatch() != null) {
+                    //批量派发的，合并回执（只要元信息；告警按失败回执）
+                    Entity ackEntity = new EntityDefault()
+                            .metaMapPut(entity.metaMap())
+                            .metaPut(MqConstants.MQ_META_ACK, (isOk && entity instanceof MqAlarm == false) ? "1" : "0");
+                    message.getAcknowledgeBatch().ack(ackEntity);
+                } else if (entity instanceof MqAlarm) {
                     session.sendAlarm(message.getSource(), entity);
                 } else {
                     entity.putMeta(MqConstants.MQ_META_ACK, isOk ? "1" : "0");
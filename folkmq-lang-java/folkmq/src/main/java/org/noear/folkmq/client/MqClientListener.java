@@ -1,5 +1,6 @@
 package org.noear.folkmq.client;
 
+import org.noear.folkmq.common.MqBatchUtils;
 import org.noear.folkmq.common.MqConstants;
 import org.noear.snack.ONode;
 import org.noear.socketd.exception.SocketDAlarmException;
@@ -7,6 +8,7 @@ import org.noear.socketd.transport.core.Entity;
 import org.noear.socketd.transport.core.EntityMetas;
 import org.noear.socketd.transport.core.Message;
 import org.noear.socketd.transport.core.Session;
+import org.noear.socketd.transport.core.entity.MessageBuilder;
 import org.noear.socketd.transport.core.entity.StringEntity;
 import org.noear.socketd.transport.core.listener.EventListener;
 import org.noear.socketd.utils.RunUtils;
@@ -15,6 +17,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 /**
  * 客户端监听器
@@ -35,23 +38,35 @@ public class MqClientListener extends EventListener {
         doOn(MqConstants.MQ_EVENT_DISTRIBUTE, (s, m) -> {
             try {
                 MqMessageReceivedImpl message = new MqMessageReceivedImpl(client, s, m);
+                onDistribute(s, m, message);
+            } catch (Throwable e) {
+                log.warn("Client consume handle error, sid={}", m.sid(), e);
+            }
+        });
 
-                try {
-                    if (message.isSequence()) {
-                        RunUtils.single(() -> onReceive(s, m, message, false));
-                    } else {
-                        if (client.consumeExecutor == null) {
-                            RunUtils.async(() -> onReceive(s, m, message, false));
-                        } else {
-                            client.consumeExecutor.submit(() -> onReceive(s, m, message, false));
-                        }
+        //接收批量派发指令
+        doOn(MqConstants.MQ_EVENT_DISTRIBUTE_BATCH, (s, m) -> {
+            try {
+                List<Entity> entities = MqBatchUtils.decode(m);
+                MqAcknowledgeBatch acknowledgeBatch = new MqAcknowledgeBatch(s, entities.size());
+
+                for (Entity entity : entities) {
+                    Message m1 = new MessageBuilder()
+                            .sid(m.sid())
+                            .event(MqConstants.MQ_EVENT_DISTRIBUTE)
+                            .entity(entity)
+                            .build();
+
+                    try {
+                        MqMessageReceivedImpl message = new MqMessageReceivedImpl(client, s, m1, acknowledgeBatch);
+                        onDistribute(s, m1, message);
+                    } catch (Throwable e) {
+                        acknowledgeBatch.received();
+                        log.warn("Client consume handle error, sid={}", m.sid(), e);
                     }
-                } catch (Throwable e) {
-                    log.warn("Client consume handle error, sid={}", m.sid(), e);
-                    client.reply(s, message, false, new MqAlarm(e.getMessage()));
                 }
             } catch (Throwable e) {
-                log.warn("Client consume handle error, sid={}", m.sid(), e);
+                log.warn("Client consume batch handle error, sid={}", m.sid(), e);
             }
         });
 
@@ -60,10 +75,11 @@ public class MqClientListener extends EventListener {
                 MqMessageReceivedImpl message = new MqMessageReceivedImpl(client, s, m);
 
                 try {
-                    if (client.consumeExecutor == null) {
+                    ExecutorService consumeExecutor = client.consumeExecutor;
+                    if (consumeExecutor == null) {
                         RunUtils.async(() -> onReceive(s, m, message, true));
                     } else {
-                        client.consumeExecutor.submit(() -> onReceive(s, m, message, true));
+                        consumeExecutor.submit(() -> onReceive(s, m, message, true));
                     }
                 }catch (Throwable e) {
                     log.warn("Client consume handle error, sid={}", m.sid(), e);
@@ -75,6 +91,43 @@ public class MqClientListener extends EventListener {
         });
     }
 
+    /**
+     * 派发时（安排消费线程）
+     */
+    protected void onDistribute(Session s, Message m, MqMessageReceivedImpl message) throws IOException {
+        try {
+            if (message.isSequence()) {
+                //同一主题与分片的，在同一通道里按序消费（不同分片可并行）
+                client.sequenceExecutor().execute(message.getFullTopic(), message.getSequenceSharding(), () -> onReceiveDo(s, m, message));
+            } else {
+                ExecutorService consumeExecutor = client.consumeExecutor;
+                if (consumeExecutor == null) {
+                    RunUtils.async(() -> onReceiveDo(s, m, message));
+                } else {
+                    consumeExecutor.submit(() -> onReceiveDo(s, m, message));
+                }
+            }
+        } catch (Throwable e) {
+            log.warn("Client consume handle error, sid={}", m.sid(), e);
+            client.reply(s, message, false, new MqAlarm(e.getMessage()));
+
+            if (message.getAcknowledgeBatch() != null) {
+                message.getAcknowledgeBatch().received();
+            }
+        }
+    }
+
+    private void onReceiveDo(Session s, Message m, MqMessageReceivedImpl message) {
+        try {
+            onReceive(s, m, message, false);
+        } finally {
+            if (message.getAcknowledgeBatch() != null) {
+                //批量派发的，标记处理完成（全部完成时，发出余下的回执）
+                message.getAcknowledgeBatch().received();
+            }
+        }
+    }
+
     /**
      * 接收时
      */
@@ -105,7 +158,7 @@ public class MqClientListener extends EventListener {
                 }
             }
         } else {
-            MqSubscription subscription = client.getSubscription(message.getFullTopic(), message.getConsumerGroup());
+            MqSubscription subscription = client.getSubscription(message.getFullSubscribeTopic(), message.getConsumerGroup());
 
             try {
                 if (subscription != null) {
@@ -166,6 +219,10 @@ public class MqClientListener extends EventListener {
                 .metaPut(EntityMetas.META_X_UNLIMITED, "1")
                 .at(MqConstants.PROXY_AT_BROKER);
 
+        if (client.prefetch() > 0) {
+            entity.putMeta(MqConstants.MQ_META_PREFETCH, String.valueOf(client.prefetch()));
+        }
+
         session.sendAndRequest(MqConstants.MQ_EVENT_SUBSCRIBE, entity, 30_000).await();
 
         log.info("Client onOpen batch subscribe successfully, sessionId={}", session.sessionId());
@@ -3,6 +3,7 @@ package org.noear.folkmq.client;
 import org.noear.folkmq.FolkMQ;
 import org.noear.folkmq.common.*;
 import org.noear.socketd.transport.core.Entity;
+import org.noear.socketd.transport.core.EntityMetas;
 import org.noear.socketd.transport.core.Message;
 import org.noear.socketd.transport.core.Session;
 import org.noear.socketd.transport.core.entity.EntityDefault;
@@ -21,16 +22,20 @@ public class MqMessageReceivedImpl implements MqMessageReceived {
     private final transient MqClientInternal clientInternal;
     private final transient Message source;
     private final transient Session session;
+    //批量回执（批量派发时才有）
+    private final transient MqAcknowledgeBatch acknowledgeBatch;
 
     private final String sender;
     private final String key;
     private final String tag;
     private final String topic;
     private final String fullTopic;
+    private final String fullSubscribeTopic;
     private final String consumerGroup;
     private final Date expiration;
     private final boolean broadcast;
     private final boolean sequence;
+    private final String sequenceSharding;
     private final boolean transaction;
     private final int qos;
     private final int times;
@@ -53,9 +58,14 @@ public class MqMessageReceivedImpl implements MqMessageReceived {
     }
 
     public MqMessageReceivedImpl(MqClientInternal clientInternal, Session session, Message source) {
+        this(clientInternal, session, source, null);
+    }
+
+    protected MqMessageReceivedImpl(MqClientInternal clientInternal, Session session, Message source, MqAcknowledgeBatch acknowledgeBatch) {
         this.clientInternal = clientInternal;
         this.session = session;
         this.source = source;
+        this.acknowledgeBatch = acknowledgeBatch;
 
         MqMetasResolver mr = MqUtils.getOf(source);
 
@@ -65,12 +75,14 @@ public class MqMessageReceivedImpl implements MqMessageReceived {
         this.tag = mr.getTag(source);
         this.fullTopic = mr.getTopic(source);
         this.topic = MqTopicHelper.getTopic(fullTopic);
+        this.fullSubscribeTopic = mr.getSubscribeTopic(source);
         this.consumerGroup = mr.getConsumerGroup(source);
 
         this.qos = mr.getQos(source);
         this.times = mr.getTimes(source);
         this.broadcast = mr.isBroadcast(source);
         this.sequence = mr.isSequence(source);
+        this.sequenceSharding = source.meta(EntityMetas.META_X_HASH);
         this.transaction = mr.isTransaction(source);
 
         long expirationL = mr.getExpiration(source);
@@ -81,6 +93,13 @@ public class MqMessageReceivedImpl implements MqMessageReceived {
         }
     }
 
+    /**
+     * 获取批量回执（批量派发时才有）
+     */
+    protected MqAcknowledgeBatch getAcknowledgeBatch() {
+        return acknowledgeBatch;
+    }
+
     /**
      * 获取消息源
      */
@@ -127,6 +146,13 @@ public class MqMessageReceivedImpl implements MqMessageReceived {
         return fullTopic;
     }
 
+    /**
+     * 订阅的全名主题（通配订阅时，与全名主题不同）
+     */
+    public String getFullSubscribeTopic() {
+        return fullSubscribeTopic;
+    }
+
     /**
      * 消费者组
      */
@@ -190,6 +216,13 @@ public class MqMessageReceivedImpl implements MqMessageReceived {
         return sequence;
     }
 
+    /**
+     * 顺序分片（没有时为 null）
+     */
+    public String getSequenceSharding() {
+        return sequenceSharding;
+    }
+
     /**
      * 已派发次数
      */
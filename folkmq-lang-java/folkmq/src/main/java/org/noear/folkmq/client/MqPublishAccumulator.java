@@ -0,0 +1,273 @@
+package org.noear.folkmq.client;
+
+import org.noear.folkmq.common.MqBatchUtils;
+import org.noear.folkmq.common.MqConstants;
+import org.noear.folkmq.exception.FolkmqException;
+import org.noear.socketd.transport.client.ClientSession;
+import org.noear.socketd.transport.core.Entity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 发布累积器（按分流标识分组，攒满数量或等够时间后，一帧批量发布）
+ * <br/>
+ * 同一分流标识（顺序分片、事务）的消息进同一批，并按添加顺序发出（批次在锁内取出、按序号在锁外发送）
+ *
+ * @author noear
+ * @since 1.7
+ */
+class MqPublishAccumulator {
+    //批量发布的最大字节数（超出则先发出）
+    static final int BATCH_MAX_BYTES = 1024 * 1024;
+
+    //会话选择（按分流标识）
+    private final Function<String, ClientSession> sessionSelector;
+    //等待时间（毫秒）
+    private final long lingerMillis;
+    //批量数量
+    private final int batchSize;
+    //分流标识的状态（分流标识=>状态）
+    private final Map<String, KeyState> stateMap = new HashMap<>();
+    //等待调度（独立线程，不受共享调度器的繁忙影响）
+    private ScheduledExecutorService lingerScheduler;
+
+    public MqPublishAccumulator(Function<String, ClientSession> sessionSelector, long lingerMillis, int batchSize) {
+        this.sessionSelector = sessionSelector;
+        this.lingerMillis = lingerMillis;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 添加
+     *
+     * @param diversion 分流标识（可为 null）
+     * @param entity    消息实体
+     * @param qos       质量等级
+     */
+    public CompletableFuture<Boolean> add(String diversion, Entity entity, int qos) {
+        String batchKey = (diversion == null ? "" : diversion);
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        Batch ready = null;
+
+        synchronized (this) {
+            KeyState state = stateMap.computeIfAbsent(batchKey, k -> new KeyState());
+            Batch batch = state.batch;
+            if (batch == null) {
+                batch = new Batch(batchKey, diversion);
+                state.batch = batch;
+
+                //到时间后发出（如果没有先攒满）
+                Batch batchRef = batch;
+                lingerSchedulerGet().schedule(() -> flush(batchRef), lingerMillis, TimeUnit.MILLISECONDS);
+            }
+
+            batch.entities.add(entity);
+            batch.bytes += MqBatchUtils.sizeOf(entity);
+
+            if (qos > 0) {
+                batch.futures.add(future);
+            } else {
+                //Qos0 不需要确认
+                future.complete(true);
+            }
+
+            if (batch.entities.size() >= batchSize || batch.bytes >= BATCH_MAX_BYTES) {
+                //攒满了，先取出
+                ready = take(state, batch);
+            }
+        }
+
+        if (ready != null) {
+            send(ready);
+        }
+
+        return future;
+    }
+
+    /**
+     * 发出所有批次
+     */
+    public void flushAll() {
+        List<Batch> readyList = new ArrayList<>();
+
+        synchronized (this) {
+            for (KeyState state : stateMap.values()) {
+                if (state.batch != null) {
+                    readyList.add(take(state, state.batch));
+                }
+            }
+        }
+
+        for (Batch batch : readyList) {
+            send(batch);
+        }
+    }
+
+    /**
+     * 关闭（发出所有批次，并停掉等待调度；之后再添加时，会重新创建）
+     */
+    public void close() {
+        flushAll();
+
+        synchronized (this) {
+            if (lingerScheduler != null) {
+                lingerScheduler.shutdown();
+                lingerScheduler = null;
+            }
+        }
+    }
+
+    private ScheduledExecutorService lingerSchedulerGet() {
+        if (lingerScheduler == null) {
+            lingerScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "folkmq-publish-linger");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return lingerScheduler;
+    }
+
+    /**
+     * 到时间后发出批次
+     */
+    private void flush(Batch batch) {
+        Batch ready = null;
+
+        synchronized (this) {
+            KeyState state = stateMap.get(batch.key);
+            if (state != null && state.batch == batch) {
+                ready = take(state, batch);
+            }
+        }
+
+        if (ready != null) {
+            send(ready);
+        }
+    }
+
+    /**
+     * 取出批次（在锁内；按取出的顺序，分配发送序号）
+     */
+    private Batch take(KeyState state, Batch batch) {
+        state.batch = null;
+        batch.state = state;
+        batch.seq = state.takeSeq++;
+        return batch;
+    }
+
+    /**
+     * 发送批次（在锁外；同一分流标识的，按序号依次发送）
+     */
+    private void send(Batch batch) {
+        KeyState state = batch.state;
+
+        boolean interrupted = false;
+
+        synchronized (state) {
+            while (state.sendSeq != batch.seq) {
+                try {
+                    state.wait();
+                } catch (InterruptedException e) {
+                    //不能跳过（否则后面的序号都等不到）
+                    interrupted = true;
+                }
+            }
+
+            try {
+                sendDo(batch);
+            } finally {
+                state.sendSeq++;
+                state.notifyAll();
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            if (state.batch == null && state.sendSeq == state.takeSeq && stateMap.get(batch.key) == state) {
+                //没有待发的了，移除状态（分流标识可能很多）
+                stateMap.remove(batch.key);
+            }
+        }
+    }
+
+    private void sendDo(Batch batch) {
+        try {
+            ClientSession session = sessionSelector.apply(batch.diversion);
+            if (session == null || session.isValid() == false) {
+                throw new FolkmqException("No session is available!");
+            }
+
+            Entity entity = MqBatchUtils.publishEntityBuild(batch.entities);
+
+            if (batch.futures.isEmpty()) {
+                //::Qos0
+                session.send(MqConstants.MQ_EVENT_PUBLISH_BATCH, entity);
+            } else {
+                //::Qos1（一次确认，逐个完成）
+                session.sendAndRequest(MqConstants.MQ_EVENT_PUBLISH_BATCH, entity, -1).thenReply(r -> {
+                    int confirm = Integer.parseInt(r.metaOrDefault(MqConstants.MQ_META_CONFIRM, "0"));
+                    if (confirm == 1) {
+                        for (CompletableFuture<Boolean> future : batch.futures) {
+                            future.complete(true);
+                        }
+                    } else {
+                        batch.completeExceptionally("Client message publish confirm failed: " + r.dataAsString());
+                    }
+                }).thenError(err -> {
+                    batch.completeExceptionally("Client message publish confirm failed: " + err.getMessage());
+                });
+            }
+        } catch (Throwable e) {
+            batch.completeExceptionally("Client message publish failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 分流标识的状态
+     */
+    static class KeyState {
+        //攒批中的批次
+        Batch batch;
+        //下一个取出的序号
+        long takeSeq;
+        //下一个发送的序号
+        long sendSeq;
+    }
+
+    /**
+     * 批次
+     */
+    static class Batch {
+        final String key;
+        final String diversion;
+        final List<Entity> entities = new ArrayList<>();
+        final List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        int bytes;
+        KeyState state;
+        long seq;
+
+        Batch(String key, String diversion) {
+            this.key = key;
+            this.diversion = diversion;
+        }
+
+        void completeExceptionally(String message) {
+            for (CompletableFuture<Boolean> future : futures) {
+                future.completeExceptionally(new FolkmqException(message));
+            }
+        }
+    }
+}
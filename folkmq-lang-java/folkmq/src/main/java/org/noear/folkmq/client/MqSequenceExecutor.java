@@ -0,0 +1,76 @@
+package org.noear.folkmq.client;
+
+import org.noear.socketd.utils.NamedThreadFactory;
+import org.noear.socketd.utils.StrUtils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 顺序消费执行器（多个单线程通道；同一主题与分片的消息，总在同一个通道里按序执行）
+ *
+ * @author noear
+ * @since 1.7
+ */
+public class MqSequenceExecutor {
+    //单线程通道（线程在首次执行时才创建）
+    private final ExecutorService[] lanes;
+
+    /**
+     * @param threads 通道数量（即线程数）
+     */
+    public MqSequenceExecutor(int threads) {
+        this.lanes = new ExecutorService[Math.max(threads, 1)];
+
+        NamedThreadFactory threadFactory = new NamedThreadFactory("folkmq-sequence-").daemon(true);
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = Executors.newSingleThreadExecutor(threadFactory);
+        }
+    }
+
+    /**
+     * 通道数量
+     */
+    public int getThreads() {
+        return lanes.length;
+    }
+
+    /**
+     * 执行
+     *
+     * @param fullTopic 全名主题
+     * @param sharding  顺序分片（可以为空）
+     * @param task      任务
+     */
+    public void execute(String fullTopic, String sharding, Runnable task) {
+        laneOf(fullTopic, sharding).execute(task);
+    }
+
+    /**
+     * 获取通道（按主题与分片哈希）
+     */
+    protected ExecutorService laneOf(String fullTopic, String sharding) {
+        if (lanes.length == 1) {
+            return lanes[0];
+        }
+
+        int hash = fullTopic.hashCode();
+        if (StrUtils.isNotEmpty(sharding)) {
+            hash = hash * 31 + sharding.hashCode();
+        }
+
+        //打散高位（分片常是连续的数字串）
+        hash ^= (hash >>> 16);
+
+        return lanes[(hash & Integer.MAX_VALUE) % lanes.length];
+    }
+
+    /**
+     * 关闭
+     */
+    public void shutdown() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+    }
+}
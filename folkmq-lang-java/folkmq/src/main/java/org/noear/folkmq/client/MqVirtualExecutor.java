@@ -0,0 +1,302 @@
+package org.noear.folkmq.client;
+
+import org.noear.socketd.utils.RunUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 虚拟线程消费执行器（JDK 21+ 每条消息一个虚拟线程；低版本退回到平台线程池）
+ * <br/>
+ * 并发数达到上限时，消息在执行器里排队（不阻塞派发线程）；排队也有上限，超出的拒绝执行（客户端会回执失败，由服务端延后重发）
+ *
+ * @author noear
+ * @since 1.7
+ */
+public class MqVirtualExecutor extends AbstractExecutorService {
+    private static final Logger log = LoggerFactory.getLogger(MqVirtualExecutor.class);
+    //默认排队上限（最大并发数的倍数）
+    public static final int PENDING_FACTOR = 4;
+
+    //虚拟线程执行器（低版本时为 null）
+    private final ExecutorService virtualExecutor;
+    //最大并发数（0 表示不限）
+    private final int maxConcurrency;
+    //最大排队数
+    private final int maxPending;
+    //并发许可（为 null 时，不限）
+    private final Semaphore permits;
+    //等待许可的任务
+    private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    //已接收未结束的任务（排队的与执行中的；用于判断是否已终止）
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private volatile boolean shutdown;
+
+    /**
+     * @param maxConcurrency 最大并发数（0 表示不限；排队上限为它的 PENDING_FACTOR 倍）
+     */
+    public MqVirtualExecutor(int maxConcurrency) {
+        this(maxConcurrency, Math.max(maxConcurrency, 0) * PENDING_FACTOR);
+    }
+
+    /**
+     * @param maxConcurrency 最大并发数（0 表示不限）
+     * @param maxPending     最大排队数（达到并发上限后，超出它的拒绝执行）
+     */
+    public MqVirtualExecutor(int maxConcurrency, int maxPending) {
+        this.virtualExecutor = virtualExecutorCreate();
+        this.maxConcurrency = Math.max(maxConcurrency, 0);
+        this.maxPending = Math.max(maxPending, 0);
+
+        if (maxConcurrency > 0) {
+            this.permits = new Semaphore(maxConcurrency);
+        } else {
+            this.permits = null;
+        }
+    }
+
+    /**
+     * 是否使用了虚拟线程
+     */
+    public boolean isVirtual() {
+        return virtualExecutor != null;
+    }
+
+    /**
+     * 最大并发数（0 表示不限）
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * 最大排队数
+     */
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    /**
+     * 当前排队数
+     */
+    public int getPending() {
+        return pendingCount.get();
+    }
+
+    /**
+     * 当前并发数（不限时为 -1）
+     */
+    public int getConcurrency() {
+        if (permits == null) {
+            return -1;
+        } else {
+            return maxConcurrency - permits.availablePermits();
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("The executor is shutdown");
+        }
+
+        if (permits == null) {
+            activeCount.incrementAndGet();
+            executeDo(task);
+            return;
+        }
+
+        //排队已满时，拒绝（不阻塞调用线程；由调用方回执失败，服务端延后重发）
+        if (pendingCount.incrementAndGet() > maxPending && permits.availablePermits() == 0) {
+            pendingCount.decrementAndGet();
+            throw new RejectedExecutionException("The executor is full, maxPending=" + maxPending);
+        }
+
+        //达到上限时，排队（回执随之延后，即为背压）
+        activeCount.incrementAndGet();
+        pendingTasks.offer(task);
+        pendingDrain();
+    }
+
+    /**
+     * 有许可时，取出排队的任务执行
+     */
+    private void pendingDrain() {
+        while (pendingTasks.isEmpty() == false && permits.tryAcquire()) {
+            Runnable task = pendingTasks.poll();
+            if (task == null) {
+                //被别的线程取走了
+                permits.release();
+                continue;
+            }
+
+            pendingCount.decrementAndGet();
+
+            executeDo(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                    pendingDrain();
+                }
+            }, permits::release);
+        }
+    }
+
+    private void executeDo(Runnable task) {
+        executeDo(task, null);
+    }
+
+    /**
+     * 执行（任务结束时，扣减活动数）
+     *
+     * @param onError 未能执行时的处理
+     */
+    private void executeDo(Runnable task, Runnable onError) {
+        Runnable taskWrap = () -> {
+            try {
+                task.run();
+            } finally {
+                activeDone();
+            }
+        };
+
+        try {
+            if (virtualExecutor == null) {
+                RunUtils.async(taskWrap);
+            } else {
+                virtualExecutor.execute(taskWrap);
+            }
+        } catch (Throwable e) {
+            if (onError != null) {
+                onError.run();
+            }
+            activeDone();
+
+            //没执行的消息没有回执，服务端会重新派发
+            if (shutdown == false && log.isWarnEnabled()) {
+                log.warn("Client virtual execute error", e);
+            }
+        }
+    }
+
+    /**
+     * 任务结束（关闭后，全部结束时即终止）
+     */
+    private void activeDone() {
+        if (activeCount.decrementAndGet() == 0 && shutdown) {
+            terminateDo();
+        }
+    }
+
+    private void terminateDo() {
+        if (virtualExecutor != null) {
+            virtualExecutor.shutdown();
+        }
+
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+
+        //排队的任务仍会执行完
+        if (activeCount.get() == 0) {
+            terminateDo();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+
+        List<Runnable> tasks = new ArrayList<>();
+        for (Runnable task; (task = pendingTasks.poll()) != null; ) {
+            pendingCount.decrementAndGet();
+            tasks.add(task);
+        }
+
+        if (virtualExecutor != null) {
+            tasks.addAll(virtualExecutor.shutdownNow());
+        }
+
+        //没执行的，不再计入活动数
+        if (activeCount.addAndGet(-tasks.size()) == 0) {
+            terminateDo();
+        }
+
+        return tasks;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        if (shutdown == false || activeCount.get() > 0) {
+            return false;
+        }
+
+        if (virtualExecutor != null) {
+            return virtualExecutor.isTerminated();
+        } else {
+            return true;
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        synchronized (this) {
+            while (shutdown == false || activeCount.get() > 0) {
+                long waitNanos = deadline - System.nanoTime();
+                if (waitNanos <= 0) {
+                    return false;
+                }
+
+                TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+            }
+        }
+
+        if (virtualExecutor != null) {
+            return virtualExecutor.awaitTermination(Math.max(deadline - System.nanoTime(), 0L), TimeUnit.NANOSECONDS);
+        } else {
+            return true;
+        }
+    }
+
+    /**
+     * 创建虚拟线程执行器（通过反射，兼容 Java 8 编译）
+     */
+    private static ExecutorService virtualExecutorCreate() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClz = Class.forName("java.lang.Thread$Builder");
+            builder = builderClz.getMethod("name", String.class, long.class).invoke(builder, "folkmq-consume-", 1L);
+            ThreadFactory threadFactory = (ThreadFactory) builderClz.getMethod("factory").invoke(builder);
+
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (NoSuchMethodException | ClassNotFoundException e) {
+            //低版本 JDK
+            return null;
+        } catch (Throwable e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Client virtual threads are not available, use platform threads", e);
+            }
+            return null;
+        }
+    }
+}
@@ -33,6 +33,17 @@ public class MqAssert {
         assertMetaSymbols(str, paramName, ':', ":");
     }
 
+    /**
+     * 断言订阅的主题（可以有通配符 '*'，见 MqTopicMatcher）
+     */
+    public static void assertTopicPattern(String str, String paramName) {
+        assertMeta(str.replace("*", ""), paramName);
+
+        if (MqTopicMatcher.isPatternValid(str) == false) {
+            throw new IllegalArgumentException("Param '" + paramName + "' wildcard must be a whole segment: '*' or '**'");
+        }
+    }
+
     public static void assertMetaSymbols(String str, String paramName, char c, String cS) {
         if (str.indexOf(c) >= 0) {
             throw new IllegalArgumentException("Param '" + paramName + "' can't have symbols: '" + cS + "'");
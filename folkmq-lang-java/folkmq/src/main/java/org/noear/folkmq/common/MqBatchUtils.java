@@ -0,0 +1,143 @@
+package org.noear.folkmq.common;
+
+import org.noear.socketd.transport.core.Entity;
+import org.noear.socketd.transport.core.EntityMetas;
+import org.noear.socketd.transport.core.entity.EntityDefault;
+import org.noear.socketd.utils.StrUtils;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * 批量实体编解码工具（把多个实体打包到一个帧里传输）
+ * <br/>
+ * 格式：[count] { [metaCount] { [keyLen][key][valLen][val] } [dataLen][data] }
+ *
+ * @author noear
+ * @since 1.7
+ */
+public class MqBatchUtils {
+    /**
+     * 估算实体的编码大小
+     */
+    public static int sizeOf(Entity entity) {
+        int[] size = {8 + entity.dataSize()};
+        metaForEach(entity, (k, v) -> {
+            //按 utf8 最坏情况估算
+            size[0] += 8 + (k.length() + v.length()) * 3;
+        });
+        return size[0];
+    }
+
+    /**
+     * 遍历元信息（可直接遍历的实体，不合并出字典）
+     */
+    private static void metaForEach(Entity entity, BiConsumer<String, String> consumer) {
+        if (entity instanceof MqMetasIterable) {
+            ((MqMetasIterable) entity).metaForEach(consumer);
+        } else {
+            for (Map.Entry<String, String> kv : entity.metaMap().entrySet()) {
+                consumer.accept(kv.getKey(), kv.getValue());
+            }
+        }
+    }
+
+    /**
+     * 编码
+     */
+    public static ByteBuffer encode(List<? extends Entity> entities) {
+        //元信息先转为字节（一次遍历，避免编码期间元信息变化导致数量不一致）
+        List<List<byte[]>> metaBytesList = new ArrayList<>(entities.size());
+        int[] size = {4};
+
+        for (Entity entity : entities) {
+            List<byte[]> metaBytes = new ArrayList<>();
+            metaForEach(entity, (k0, v0) -> {
+                byte[] k = k0.getBytes(StandardCharsets.UTF_8);
+                byte[] v = v0.getBytes(StandardCharsets.UTF_8);
+                metaBytes.add(k);
+                metaBytes.add(v);
+                size[0] += 8 + k.length + v.length;
+            });
+
+            metaBytesList.add(metaBytes);
+            size[0] += 8 + entity.data().remaining();
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(size[0]);
+        buf.putInt(entities.size());
+
+        for (int i = 0; i < entities.size(); i++) {
+            List<byte[]> metaBytes = metaBytesList.get(i);
+            buf.putInt(metaBytes.size() / 2);
+            for (byte[] b1 : metaBytes) {
+                buf.putInt(b1.length).put(b1);
+            }
+
+            //不改变原数据的读取位置
+            ByteBuffer data = entities.get(i).data().duplicate();
+            buf.putInt(data.remaining());
+            buf.put(data);
+        }
+
+        ((Buffer) buf).flip(); //兼容 java8 运行时
+        return buf;
+    }
+
+    /**
+     * 构建批量发布实体（路由信息与第一条消息保持一致；同一批的分流标识相同）
+     */
+    public static EntityDefault publishEntityBuild(List<? extends Entity> entities) {
+        Entity first = entities.get(0);
+        EntityDefault entity = new EntityDefault().dataSet(encode(entities));
+        entity.metaPut(MqMetasV2.MQ_META_VID, first.meta(MqMetasV2.MQ_META_VID));
+        entity.at(first.meta("@"));
+
+        String hash = first.meta(EntityMetas.META_X_HASH);
+        if (StrUtils.isNotEmpty(hash)) {
+            entity.metaPut(EntityMetas.META_X_HASH, hash);
+        }
+
+        return entity;
+    }
+
+    /**
+     * 解码
+     */
+    public static List<Entity> decode(Entity batch) {
+        ByteBuffer buf = batch.data().duplicate();
+
+        int count = buf.getInt();
+        List<Entity> entities = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            EntityDefault entity = new EntityDefault();
+
+            int metaCount = buf.getInt();
+            for (int j = 0; j < metaCount; j++) {
+                String k = readString(buf);
+                String v = readString(buf);
+                entity.putMeta(k, v);
+            }
+
+            byte[] data = new byte[buf.getInt()];
+            buf.get(data);
+            entity.dataSet(data);
+
+            entities.add(entity);
+        }
+
+        return entities;
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -11,6 +11,18 @@ public interface MqConstants {
      * 版本号
      */
     String FOLKMQ_VERSION = "folkmq-version";
+    /**
+     * 版本号：支持批量派发
+     */
+    int FOLKMQ_VERSION_DISTRIBUTE_BATCH = 4;
+    /**
+     * 版本号：支持批量发布
+     */
+    int FOLKMQ_VERSION_PUBLISH_BATCH = 4;
+    /**
+     * 版本号：支持紧凑元信息（v4）
+     */
+    int FOLKMQ_VERSION_METAS_V4 = 5;
     /**
      * 命名空间
      */
@@ -46,6 +58,10 @@ public interface MqConstants {
      * 元信息：执行回滚
      */
     String MQ_META_ROLLBACK = "mq.rollback";
+    /**
+     * 元信息：预取数量（订阅时声明；每个会话未回执的消息上限）
+     */
+    String MQ_META_PREFETCH = "mq.prefetch";
     /**
      * 事件：订阅
      */
@@ -59,6 +75,11 @@ public interface MqConstants {
      */
     String MQ_EVENT_PUBLISH = "mq.event.publish";
 
+    /**
+     * 事件：批量发布（一帧携带多条消息；需要版本号 >= 4）
+     */
+    String MQ_EVENT_PUBLISH_BATCH = "mq.event.publish.batch";
+
     /**
      * 事件：发布二次提交
      */
@@ -72,6 +93,14 @@ public interface MqConstants {
      * 事件：派发
      */
     String MQ_EVENT_DISTRIBUTE = "mq.event.distribute";
+    /**
+     * 事件：批量派发（一帧携带多条消息；需要版本号 >= 4）
+     */
+    String MQ_EVENT_DISTRIBUTE_BATCH = "mq.event.distribute.batch";
+    /**
+     * 事件：批量回执
+     */
+    String MQ_EVENT_ACKNOWLEDGE_BATCH = "mq.event.acknowledge.batch";
     /**
      * 事件：请求
      */
@@ -0,0 +1,16 @@
+package org.noear.folkmq.common;
+
+import java.util.function.BiConsumer;
+
+/**
+ * 元信息可遍历的（不合并出字典；编码时直接遍历）
+ *
+ * @author noear
+ * @since 1.7
+ */
+public interface MqMetasIterable {
+    /**
+     * 遍历元信息
+     */
+    void metaForEach(BiConsumer<String, String> consumer);
+}
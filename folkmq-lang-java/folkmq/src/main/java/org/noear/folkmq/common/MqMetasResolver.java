@@ -37,6 +37,16 @@ public interface MqMetasResolver {
      */
     String getTopic(Entity m);
 
+    /**
+     * 获取订阅的主题（通配订阅时，与消息主题不同）
+     */
+    String getSubscribeTopic(Entity m);
+
+    /**
+     * 设置订阅的主题
+     */
+    void setSubscribeTopic(Entity m, String subscribeTopic);
+
     /**
      * 获取消费者组
      */
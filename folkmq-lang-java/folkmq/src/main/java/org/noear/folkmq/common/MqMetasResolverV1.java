@@ -41,6 +41,14 @@ public class MqMetasResolverV1 implements MqMetasResolver {
         return m.metaOrDefault(MqMetasV1.MQ_META_TOPIC, "");
     }
 
+    public String getSubscribeTopic(Entity m) {
+        return m.metaOrDefault(MqMetasV2.MQ_META_SUBSCRIBE_TOPIC, getTopic(m));
+    }
+
+    public void setSubscribeTopic(Entity m, String subscribeTopic) {
+        m.putMeta(MqMetasV2.MQ_META_SUBSCRIBE_TOPIC, subscribeTopic);
+    }
+
     public String getConsumerGroup(Entity m) {
         return m.metaOrDefault(MqMetasV1.MQ_META_CONSUMER_GROUP, "");
     }
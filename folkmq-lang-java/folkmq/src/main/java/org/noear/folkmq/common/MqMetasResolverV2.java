@@ -1,6 +1,5 @@
 package org.noear.folkmq.common;
 
-import org.noear.folkmq.FolkMQ;
 import org.noear.folkmq.client.MqMessage;
 import org.noear.socketd.transport.core.*;
 import org.noear.socketd.transport.core.entity.EntityDefault;
@@ -41,6 +40,16 @@ public class MqMetasResolverV2 implements MqMetasResolver {
         return m.metaOrDefault(MqMetasV2.MQ_META_TOPIC, "");
     }
 
+    @Override
+    public String getSubscribeTopic(Entity m) {
+        return m.metaOrDefault(MqMetasV2.MQ_META_SUBSCRIBE_TOPIC, getTopic(m));
+    }
+
+    @Override
+    public void setSubscribeTopic(Entity m, String subscribeTopic) {
+        m.putMeta(MqMetasV2.MQ_META_SUBSCRIBE_TOPIC, subscribeTopic);
+    }
+
     @Override
     public String getConsumerGroup(Entity m) {
         return m.metaOrDefault(MqMetasV2.MQ_META_CONSUMER_GROUP, "");
@@ -203,7 +212,8 @@ public class MqMetasResolverV2 implements MqMetasResolver {
             entity.at(MqConstants.PROXY_AT_BROKER);
         }
 
-        entity.metaPut(MqMetasV2.MQ_META_VID, String.valueOf(FolkMQ.versionCode()));
+        //记录元信息的版本（不用产品版本号；v4 起版本号对应紧凑元信息）
+        entity.metaPut(MqMetasV2.MQ_META_VID, String.valueOf(version()));
 
         //用户属性
         for (Map.Entry<String, String> kv : message.getAttrMap().entrySet()) {
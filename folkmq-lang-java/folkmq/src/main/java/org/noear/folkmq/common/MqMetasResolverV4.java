@@ -0,0 +1,252 @@
+package org.noear.folkmq.common;
+
+import org.noear.folkmq.FolkMQ;
+import org.noear.folkmq.client.MqMessage;
+import org.noear.socketd.transport.core.Entity;
+import org.noear.socketd.transport.core.entity.EntityDefault;
+
+/**
+ * 消息元信息分析器 v4（数字与标记合并为紧凑头，见 MqMetasV4）
+ *
+ * @author noear
+ * @since 1.7
+ */
+public class MqMetasResolverV4 extends MqMetasResolverV3 {
+    private static final int RADIX = 36;
+    private static final char SEPARATOR = '.';
+
+    private static final int IDX_FLAGS = 0;
+    private static final int IDX_TIMES = 1;
+    private static final int IDX_SCHEDULED = 2;
+    private static final int IDX_EXPIRATION = 3;
+    private static final int HEADER_SIZE = 4;
+
+    @Override
+    public int version() {
+        return 4;
+    }
+
+    @Override
+    public int getQos(Entity m) {
+        return hasFlag(m, MqMetasV4.FLAG_QOS0) ? 0 : 1;
+    }
+
+    @Override
+    public int getTimes(Entity m) {
+        return (int) headerOf(m)[IDX_TIMES];
+    }
+
+    @Override
+    public void setTimes(Entity m, int times) {
+        headerSet(m, IDX_TIMES, times);
+    }
+
+    @Override
+    public long getExpiration(Entity m) {
+        return headerOf(m)[IDX_EXPIRATION];
+    }
+
+    @Override
+    public void setExpiration(Entity m, Long expiration) {
+        headerSet(m, IDX_EXPIRATION, (expiration == null ? 0L : expiration));
+    }
+
+    @Override
+    public void bakExpiration(Entity m, boolean isBak) {
+        if (isBak) {
+            long tmp = getExpiration(m);
+            if (tmp != 0L) {
+                m.putMeta(MqMetasV2.MQ_META_EXPIRATION_BAK, String.valueOf(tmp));
+            }
+        } else {
+            String tmp = m.meta(MqMetasV2.MQ_META_EXPIRATION_BAK);
+            if (tmp != null) {
+                setExpiration(m, Long.parseLong(tmp));
+                m.delMeta(MqMetasV2.MQ_META_EXPIRATION_BAK);
+            }
+        }
+    }
+
+    @Override
+    public long getScheduled(Entity m) {
+        return headerOf(m)[IDX_SCHEDULED];
+    }
+
+    @Override
+    public void setScheduled(Entity m, long scheduled) {
+        headerSet(m, IDX_SCHEDULED, scheduled);
+    }
+
+    @Override
+    public void bakScheduled(Entity m, boolean isBak) {
+        if (isBak) {
+            m.putMeta(MqMetasV2.MQ_META_SCHEDULED_BAK, String.valueOf(getScheduled(m)));
+        } else {
+            String tmp = m.meta(MqMetasV2.MQ_META_SCHEDULED_BAK);
+            if (tmp != null) {
+                setScheduled(m, Long.parseLong(tmp));
+                m.delMeta(MqMetasV2.MQ_META_SCHEDULED_BAK);
+            }
+        }
+    }
+
+    @Override
+    public boolean isSequence(Entity m) {
+        return hasFlag(m, MqMetasV4.FLAG_SEQUENCE);
+    }
+
+    @Override
+    public boolean isBroadcast(Entity m) {
+        return hasFlag(m, MqMetasV4.FLAG_BROADCAST);
+    }
+
+    @Override
+    public boolean isTransaction(Entity m) {
+        return hasFlag(m, MqMetasV4.FLAG_TRANSACTION);
+    }
+
+    @Override
+    public void setTransaction(Entity m, boolean isTransaction) {
+        long[] header = headerOf(m);
+        if (isTransaction) {
+            header[IDX_FLAGS] |= MqMetasV4.FLAG_TRANSACTION;
+        } else {
+            header[IDX_FLAGS] &= ~MqMetasV4.FLAG_TRANSACTION;
+        }
+        headerPut(m, header);
+    }
+
+    /**
+     * 发布实体构建
+     *
+     * @param topic   主题
+     * @param message 消息
+     */
+    @Override
+    public EntityDefault publishEntityBuild(String topic, MqMessage message) {
+        EntityDefault entity = super.publishEntityBuild(topic, message);
+
+        //把 v2 的数字与标记元信息，合并为紧凑头
+        long flags = 0L;
+        if ("0".equals(entity.meta(MqMetasV2.MQ_META_QOS))) {
+            flags |= MqMetasV4.FLAG_QOS0;
+        }
+        if ("1".equals(entity.meta(MqMetasV2.MQ_META_SEQUENCE))) {
+            flags |= MqMetasV4.FLAG_SEQUENCE;
+        }
+        if ("1".equals(entity.meta(MqMetasV2.MQ_META_BROADCAST))) {
+            flags |= MqMetasV4.FLAG_BROADCAST;
+        }
+        if ("1".equals(entity.meta(MqMetasV2.MQ_META_TRANSACTION))) {
+            flags |= MqMetasV4.FLAG_TRANSACTION;
+        }
+
+        long[] header = new long[HEADER_SIZE];
+        header[IDX_FLAGS] = flags;
+        header[IDX_SCHEDULED] = Long.parseLong(entity.metaOrDefault(MqMetasV2.MQ_META_SCHEDULED, "0"));
+        header[IDX_EXPIRATION] = Long.parseLong(entity.metaOrDefault(MqMetasV2.MQ_META_EXPIRATION, "0"));
+
+        entity.delMeta(MqMetasV2.MQ_META_QOS);
+        entity.delMeta(MqMetasV2.MQ_META_SEQUENCE);
+        entity.delMeta(MqMetasV2.MQ_META_BROADCAST);
+        entity.delMeta(MqMetasV2.MQ_META_TRANSACTION);
+        entity.delMeta(MqMetasV2.MQ_META_SCHEDULED);
+        entity.delMeta(MqMetasV2.MQ_META_EXPIRATION);
+
+        headerPut(entity, header);
+        entity.metaPut(MqMetasV2.MQ_META_VID, FolkMQ.versionCodeAsString());
+
+        return entity;
+    }
+
+    /**
+     * 是否为紧凑元信息
+     */
+    public static boolean isCompact(Entity m) {
+        return m.meta(MqMetasV4.MQ_META_HEADER) != null;
+    }
+
+    /**
+     * 展开为 v3 元信息（给老版本的会话）
+     */
+    public static void expand(Entity m) {
+        long[] header = headerOf(m);
+        long flags = header[IDX_FLAGS];
+
+        m.delMeta(MqMetasV4.MQ_META_HEADER);
+
+        m.putMeta(MqMetasV2.MQ_META_QOS, (flags & MqMetasV4.FLAG_QOS0) != 0 ? "0" : "1");
+        m.putMeta(MqMetasV2.MQ_META_TIMES, String.valueOf(header[IDX_TIMES]));
+        m.putMeta(MqMetasV2.MQ_META_SCHEDULED, String.valueOf(header[IDX_SCHEDULED]));
+
+        if (header[IDX_EXPIRATION] != 0L) {
+            m.putMeta(MqMetasV2.MQ_META_EXPIRATION, String.valueOf(header[IDX_EXPIRATION]));
+        }
+
+        if ((flags & MqMetasV4.FLAG_SEQUENCE) != 0) {
+            m.putMeta(MqMetasV2.MQ_META_SEQUENCE, "1");
+        }
+
+        if ((flags & MqMetasV4.FLAG_BROADCAST) != 0) {
+            m.putMeta(MqMetasV2.MQ_META_BROADCAST, "1");
+        }
+
+        if ((flags & MqMetasV4.FLAG_TRANSACTION) != 0) {
+            m.putMeta(MqMetasV2.MQ_META_TRANSACTION, "1");
+        }
+
+        m.putMeta(MqMetasV2.MQ_META_VID, "3");
+    }
+
+    private static boolean hasFlag(Entity m, int flag) {
+        return (headerOf(m)[IDX_FLAGS] & flag) != 0;
+    }
+
+    private static void headerSet(Entity m, int index, long value) {
+        long[] header = headerOf(m);
+        header[index] = value;
+        headerPut(m, header);
+    }
+
+    /**
+     * 解析紧凑头（没有时，各项为 0）
+     */
+    private static long[] headerOf(Entity m) {
+        long[] header = new long[HEADER_SIZE];
+        String tmp = m.meta(MqMetasV4.MQ_META_HEADER);
+
+        if (tmp != null) {
+            int idx = 0;
+            for (int i = 0, len = tmp.length(); i < len && idx < HEADER_SIZE; i++) {
+                char c = tmp.charAt(i);
+                if (c == SEPARATOR) {
+                    idx++;
+                } else {
+                    int digit = Character.digit(c, RADIX);
+                    if (digit < 0) {
+                        throw new NumberFormatException("Invalid folkmq header: " + tmp);
+                    }
+
+                    header[idx] = header[idx] * RADIX + digit;
+                }
+            }
+        }
+
+        return header;
+    }
+
+    private static void headerPut(Entity m, long[] header) {
+        StringBuilder buf = new StringBuilder(32);
+        for (int i = 0; i < header.length; i++) {
+            if (i > 0) {
+                buf.append(SEPARATOR);
+            }
+
+            if (header[i] != 0L) {
+                buf.append(Long.toString(header[i], RADIX));
+            }
+        }
+
+        m.putMeta(MqMetasV4.MQ_META_HEADER, buf.toString());
+    }
+}
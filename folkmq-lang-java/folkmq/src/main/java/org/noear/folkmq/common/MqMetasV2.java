@@ -76,4 +76,8 @@ public interface MqMetasV2 {
      * 元信息：标签
      */
     String MQ_META_TAG = "t5";
+    /**
+     * 元信息：订阅的主题（通配订阅时，与消息主题不同）
+     */
+    String MQ_META_SUBSCRIBE_TOPIC = "t6";
 }
\ No newline at end of file
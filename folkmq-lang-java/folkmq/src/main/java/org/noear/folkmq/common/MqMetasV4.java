@@ -0,0 +1,33 @@
+package org.noear.folkmq.common;
+
+/**
+ * 消息元信息 v4（定长的数字与标记，合并为一个紧凑头；字符串类的仍用 v2 元信息）
+ * <br/>
+ * 紧凑头格式：[标记].[派发次数].[定时时间].[过期时间]（36 进制，0 为空）
+ *
+ * @author noear
+ * @since 1.7
+ */
+public interface MqMetasV4 extends MqMetasV2 {
+    /**
+     * 元信息：紧凑头
+     */
+    String MQ_META_HEADER = "h0";
+
+    /**
+     * 标记：质量等级为 0（默认为 1）
+     */
+    int FLAG_QOS0 = 1;
+    /**
+     * 标记：有序
+     */
+    int FLAG_SEQUENCE = 2;
+    /**
+     * 标记：广播
+     */
+    int FLAG_BROADCAST = 4;
+    /**
+     * 标记：事务
+     */
+    int FLAG_TRANSACTION = 8;
+}
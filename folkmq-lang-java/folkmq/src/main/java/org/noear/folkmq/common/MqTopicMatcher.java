@@ -0,0 +1,241 @@
+package org.noear.folkmq.common;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 主题匹配器（通配符订阅；按段构建的前缀树，匹配结果按具体主题缓存）
+ * <br/>
+ * 主题按 '.' 分段：'*' 匹配一段，'**' 匹配零或多段。例：'order.*' 匹配 'order.created'；'order.**' 还匹配 'order.created.vip'。
+ * 命名空间（'ns:' 前缀）要完全一致，通配符不跨命名空间
+ *
+ * @author noear
+ * @since 1.7
+ */
+public class MqTopicMatcher {
+    private static final String WILDCARD_ONE = "*";
+    private static final String WILDCARD_ANY = "**";
+    private static final char SEPARATOR_SEGMENT = '.';
+    private static final char SEPARATOR_NAMESPACE = ':';
+    //缓存的最大数量（超出时清空重来）
+    private static final int CACHE_MAX_SIZE = 10_000;
+    private static final String[] EMPTY = new String[0];
+
+    //根（命名空间=>节点）
+    private final Map<String, Node> rootMap = new ConcurrentHashMap<>();
+    //匹配缓存（具体主题=>匹配到的通配主题）
+    private final Map<String, String[]> cacheMap = new ConcurrentHashMap<>();
+    //通配主题数量
+    private volatile int size;
+    //版本（有变化时递增；用于丢弃变化前算出的缓存）
+    private volatile long version;
+
+    /**
+     * 是否为通配主题（有整段的 '*' 或 '**'）
+     */
+    public static boolean isPattern(String topic) {
+        if (topic.indexOf('*') < 0) {
+            return false;
+        }
+
+        for (String segment : segmentsOf(topic)) {
+            if (WILDCARD_ONE.equals(segment) || WILDCARD_ANY.equals(segment)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * 通配符是否都是整段的（例：'order.*' 可以；'order*'、'order.*x'、'order.***' 不行）
+     */
+    public static boolean isPatternValid(String topic) {
+        if (topic.indexOf('*') < 0) {
+            return true;
+        }
+
+        for (String segment : segmentsOf(topic)) {
+            if (segment.indexOf('*') >= 0 && WILDCARD_ONE.equals(segment) == false && WILDCARD_ANY.equals(segment) == false) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * 是否没有通配主题
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 添加通配主题
+     */
+    public synchronized void add(String pattern) {
+        Node node = rootMap.computeIfAbsent(namespaceOf(pattern), k -> new Node());
+
+        for (String segment : segmentsOf(pattern)) {
+            if (WILDCARD_ANY.equals(segment)) {
+                if (node.any == null) {
+                    node.any = new Node();
+                }
+                node = node.any;
+            } else if (WILDCARD_ONE.equals(segment)) {
+                if (node.one == null) {
+                    node.one = new Node();
+                }
+                node = node.one;
+            } else {
+                node = node.children.computeIfAbsent(segment, k -> new Node());
+            }
+        }
+
+        if (node.pattern == null) {
+            node.pattern = pattern;
+            size++;
+            changed();
+        }
+    }
+
+    /**
+     * 移除通配主题（空的节点保留，数量有限）
+     */
+    public synchronized void remove(String pattern) {
+        Node node = rootMap.get(namespaceOf(pattern));
+
+        for (String segment : segmentsOf(pattern)) {
+            if (node == null) {
+                return;
+            }
+
+            if (WILDCARD_ANY.equals(segment)) {
+                node = node.any;
+            } else if (WILDCARD_ONE.equals(segment)) {
+                node = node.one;
+            } else {
+                node = node.children.get(segment);
+            }
+        }
+
+        if (node != null && node.pattern != null) {
+            node.pattern = null;
+            size--;
+            changed();
+        }
+    }
+
+    /**
+     * 匹配（返回匹配到的通配主题）
+     *
+     * @param topic 具体主题
+     */
+    public String[] match(String topic) {
+        if (size == 0) {
+            return EMPTY;
+        }
+
+        String[] patterns = cacheMap.get(topic);
+        if (patterns != null) {
+            return patterns;
+        }
+
+        long versionRef = version;
+
+        Node node = rootMap.get(namespaceOf(topic));
+        if (node == null) {
+            patterns = EMPTY;
+        } else {
+            Set<String> patternSet = new LinkedHashSet<>();
+            List<String> segments = segmentsOf(topic);
+            matchDo(node, segments, 0, patternSet);
+            patterns = patternSet.toArray(EMPTY);
+        }
+
+        if (cacheMap.size() >= CACHE_MAX_SIZE) {
+            cacheMap.clear();
+        }
+
+        cacheMap.put(topic, patterns);
+
+        if (versionRef != version) {
+            //算的时候有变化，不留缓存
+            cacheMap.remove(topic);
+        }
+
+        return patterns;
+    }
+
+    private void matchDo(Node node, List<String> segments, int index, Set<String> patternSet) {
+        if (node.any != null) {
+            //'**' 匹配零或多段
+            for (int i = index; i <= segments.size(); i++) {
+                matchDo(node.any, segments, i, patternSet);
+            }
+        }
+
+        if (index == segments.size()) {
+            if (node.pattern != null) {
+                patternSet.add(node.pattern);
+            }
+            return;
+        }
+
+        Node child = node.children.get(segments.get(index));
+        if (child != null) {
+            matchDo(child, segments, index + 1, patternSet);
+        }
+
+        if (node.one != null) {
+            matchDo(node.one, segments, index + 1, patternSet);
+        }
+    }
+
+    private void changed() {
+        version++;
+        cacheMap.clear();
+    }
+
+    private static String namespaceOf(String topic) {
+        int idx = topic.indexOf(SEPARATOR_NAMESPACE);
+        if (idx > 0) {
+            return topic.substring(0, idx);
+        } else {
+            return "";
+        }
+    }
+
+    private static List<String> segmentsOf(String topic) {
+        List<String> segments = new ArrayList<>();
+
+        int start = topic.indexOf(SEPARATOR_NAMESPACE) + 1;
+        for (int i = start; i <= topic.length(); i++) {
+            if (i == topic.length() || topic.charAt(i) == SEPARATOR_SEGMENT) {
+                segments.add(topic.substring(start, i));
+                start = i + 1;
+            }
+        }
+
+        return segments;
+    }
+
+    /**
+     * 节点
+     */
+    static class Node {
+        //具体段
+        final Map<String, Node> children = new ConcurrentHashMap<>();
+        //'*' 段
+        volatile Node one;
+        //'**' 段
+        volatile Node any;
+        //到此结束的通配主题
+        volatile String pattern;
+    }
+}
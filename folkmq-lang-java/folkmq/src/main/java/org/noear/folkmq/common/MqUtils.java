@@ -2,6 +2,7 @@ package org.noear.folkmq.common;
 
 import org.noear.socketd.transport.core.Entity;
 import org.noear.socketd.transport.core.Session;
+import org.noear.socketd.transport.core.entity.EntityDefault;
 
 /**
  * 消息工具类
@@ -14,9 +15,13 @@ public class MqUtils {
     private static MqMetasResolver v1 = new MqMetasResolverV1();
     private static MqMetasResolver v2 = new MqMetasResolverV2();
     private static MqMetasResolver v3 = new MqMetasResolverV3();
+    private static MqMetasResolver v4 = new MqMetasResolverV4();
 
+    /**
+     * 获取最新的通用版本（不依赖会话协商，新老节点都认识）
+     */
     public static MqMetasResolver getLast() {
-        return v2;
+        return v3;
     }
 
     public static MqMetasResolver getOf(Session s) {
@@ -25,6 +30,19 @@ public class MqUtils {
         return resolve(ver);
     }
 
+    /**
+     * 获取会话的版本号（握手时协商）
+     */
+    public static int versionOf(Session s) {
+        String ver = s.handshake().paramOrDefault(MqConstants.FOLKMQ_VERSION, "1");
+
+        try {
+            return Integer.parseInt(ver);
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
     public static MqMetasResolver getOf(Entity m) {
         if (m == null) {
             return getLast();
@@ -35,12 +53,36 @@ public class MqUtils {
         return resolve(ver);
     }
 
-    private static MqMetasResolver resolve(String ver){
+    /**
+     * 按会话的版本适配实体（老版本的会话不认识 v4 紧凑元信息，复制一份展开为 v3 元信息）
+     */
+    public static Entity adaptOf(Session s, Entity m) {
+        if (MqMetasResolverV4.isCompact(m) == false || versionOf(s) >= MqConstants.FOLKMQ_VERSION_METAS_V4) {
+            return m;
+        }
+
+        EntityDefault entity = new EntityDefault().dataSet(m.data()).metaMapPut(m.metaMap());
+        MqMetasResolverV4.expand(entity);
+        return entity;
+    }
+
+    private static MqMetasResolver resolve(String ver) {
         if ("1".equals(ver)) {
             return v1;
         } else if ("2".equals(ver)) {
             return v2;
+        } else if ("3".equals(ver) || "4".equals(ver)) {
+            //v3 与 v4（产品版本号）都是 v3 元信息
+            return v3;
         } else {
+            try {
+                if (Integer.parseInt(ver) >= MqConstants.FOLKMQ_VERSION_METAS_V4) {
+                    return v4;
+                }
+            } catch (NumberFormatException e) {
+                //不认识的，按 v3 处理
+            }
+
             return v3;
         }
     }